@@ -0,0 +1,27 @@
+package com.sjl.async.benchmarks;
+
+import org.openjdk.jmh.profile.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * Runs the benchmarks (all of them, or those matching the regular expressions given as
+ * arguments) with the GC profiler, so that allocation per operation is reported alongside
+ * time. Use org.openjdk.jmh.Main instead for the full set of JMH options.
+ * 
+ * @author steve
+ */
+public class Benchmarks
+{
+    public static void main(String[] anArgs) throws RunnerException
+    {
+        ChainedOptionsBuilder _options = new OptionsBuilder()
+            .addProfiler(GCProfiler.class)
+            .shouldFailOnError(true);
+        
+        for (String _include : anArgs)
+            _options.include(_include);
+        
+        new Runner(_options.build()).run();
+    }
+}
@@ -0,0 +1,142 @@
+package com.sjl.async.benchmarks;
+
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+
+import com.sjl.async.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The cost of making an implicit future: wrapping an already completed Future in a proxy, and
+ * promising or attempting a Fulfilment which runs on the calling thread - so that what is 
+ * measured is the library, not the hand-off to another thread. Only the library's public API
+ * is used, as any other caller would.
+ * 
+ * @author steve
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CreationBenchmark
+{
+    private ExecutorService direct;
+    private PromissoryService dynamic;
+    private PromissoryService generated;
+    private Future<Subject> completed;
+    
+    @Setup
+    public void setup()
+    {
+        direct = new DirectExecutorService();
+        dynamic = new DynamicProxyPromissoryService(direct);
+        generated = new GeneratedProxyPromissoryService(direct);
+        
+        FutureTask<Subject> _task = new FutureTask<Subject>(new Callable<Subject>()
+        {
+            @Override
+            public Subject call()
+            {
+                return new Subject.Value(1);
+            }
+        });
+        _task.run();
+        completed = _task;
+    }
+    
+    @Benchmark
+    public Subject wrapFuture()
+    {
+        return ImplicitFuture.create(completed, Subject.class);
+    }
+    
+    @Benchmark
+    public Subject promiseDynamic()
+    {
+        return dynamic.promise(new Subject.Lookup(1));
+    }
+    
+    /**
+     * A promise put together much as DynamicProxyPromissoryService once did it, from a Callable, 
+     * a FutureTask, a FutureWithSLA and an InvocationHandler, as a baseline for promiseDynamic
+     */
+    @Benchmark
+    public Subject composeDynamic()
+    {
+        final Fulfilment<Subject> _promise = new Subject.Lookup(1);
+        final PromiseStatistics _stats = PromiseMetrics.NULL_OBJECT.of(_promise);
+        final RunnableFuture<Subject> _task = new FutureTask<Subject>(new Callable<Subject>()
+        {
+            @Override
+            public Subject call() throws Exception
+            {
+                return _promise.execute();
+            }
+        });
+        final FutureWithSLA<Subject> _f = new FutureWithSLA<Subject>(_task, ServiceLevelAgreement.NULL_OBJECT)
+        {
+            @Override
+            protected void whenPending()
+            {
+                helpOut(_task);
+            }
+            
+            @Override
+            protected void whenExecutionException(Throwable anExc)
+            {
+                _stats.recordException();
+                _promise.onException(anExc);
+            }
+            
+            @Override
+            protected Subject createDefaultResult()
+            {
+                _stats.recordDefault();
+                return _promise.createDefaultResult();
+            }
+            
+            @Override
+            protected void whenBlocked(long aNanos)
+            {
+                _stats.recordBlocked(aNanos);
+            }
+        };
+        _f.start();
+        direct.execute(_task);
+        return (Subject) Proxy.newProxyInstance(
+            Subject.class.getClassLoader(), new Class<?>[]{ Subject.class }, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable
+            {
+                return aMethod.invoke(_f.get(), anArgs);
+            }
+        });
+    }
+    
+    private void helpOut(RunnableFuture<?> aTask)
+    {
+        aTask.run();
+    }
+    
+    @Benchmark
+    public Subject promiseGenerated()
+    {
+        return generated.promise(new Subject.Lookup(1));
+    }
+    
+    @Benchmark
+    public Subject attemptGenerated()
+    {
+        return generated.attempt(new Subject.Lookup(1), ServiceLevelAgreement.NULL_OBJECT);
+    }
+    
+    @Benchmark
+    public Subject attemptGeneratedWithDeadline()
+    {
+        return generated.attempt(new Subject.Lookup(1), ResponseTimeSLA.nanosFromNow(Nanoseconds.fromSeconds(1)));
+    }
+}
@@ -0,0 +1,52 @@
+package com.sjl.async.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs each task on the submitting thread, so that benchmarks can measure the cost of the
+ * library without the noise of a thread hand-off.
+ * 
+ * @author steve
+ */
+class DirectExecutorService extends AbstractExecutorService
+{
+    private volatile boolean shutdown;
+    
+    @Override
+    public void execute(Runnable aCommand)
+    {
+        aCommand.run();
+    }
+
+    @Override
+    public void shutdown()
+    {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        shutdown = true;
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown()
+    {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+        return shutdown;
+    }
+
+    @Override
+    public boolean awaitTermination(long aTimeout, TimeUnit aUnit)
+    {
+        return shutdown;
+    }
+}
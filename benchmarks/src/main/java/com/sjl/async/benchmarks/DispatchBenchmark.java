@@ -0,0 +1,71 @@
+package com.sjl.async.benchmarks;
+
+import java.util.concurrent.*;
+
+import com.sjl.async.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+/**
+ * The cost of calling a method on an implicit future whose value is already realised, compared
+ * with calling the value directly.
+ * 
+ * @author steve
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark
+{
+    private Subject direct;
+    private Subject dynamic;
+    private Subject generated;
+    private int amount = 3;
+    
+    @Setup
+    public void setup()
+    {
+        ExecutorService _direct = new DirectExecutorService();
+        direct = new Subject.Value(1);
+        dynamic = new DynamicProxyPromissoryService(_direct).promise(new Subject.Lookup(1));
+        generated = new GeneratedProxyPromissoryService(_direct).promise(new Subject.Lookup(1));
+        
+        // realise both, so that only dispatch is measured
+        dynamic.getValue();
+        generated.getValue();
+    }
+    
+    @Benchmark
+    public int direct()
+    {
+        return direct.add(amount);
+    }
+    
+    @Benchmark
+    public int dynamicProxy()
+    {
+        return dynamic.add(amount);
+    }
+    
+    @Benchmark
+    public int generatedProxy()
+    {
+        return generated.add(amount);
+    }
+    
+    @Benchmark
+    public void dynamicProxyNoArgs(Blackhole aBlackhole)
+    {
+        aBlackhole.consume(dynamic.getValue());
+    }
+    
+    @Benchmark
+    public void generatedProxyNoArgs(Blackhole aBlackhole)
+    {
+        aBlackhole.consume(generated.getValue());
+    }
+}
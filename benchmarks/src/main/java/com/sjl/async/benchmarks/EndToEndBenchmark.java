@@ -0,0 +1,93 @@
+package com.sjl.async.benchmarks;
+
+import java.util.concurrent.*;
+
+import com.sjl.async.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The latency of handing a computation to a thread pool and using its result, by way of an
+ * implicit future, a raw Future, and a CompletableFuture.
+ * 
+ * @author steve
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark
+{
+    private ExecutorService pool;
+    private PromissoryService dynamic;
+    private PromissoryService generated;
+    private PromissoryService helpingOut;
+    
+    @Setup
+    public void setup()
+    {
+        pool = Executors.newFixedThreadPool(2);
+        dynamic = new DynamicProxyPromissoryService(pool);
+        generated = new GeneratedProxyPromissoryService(pool);
+        helpingOut = new GeneratedProxyPromissoryService(pool, ExecutionMode.HELP_OUT);
+    }
+    
+    @TearDown
+    public void teardown()
+    {
+        pool.shutdownNow();
+    }
+    
+    @Benchmark
+    public int future() throws Exception
+    {
+        return pool.submit(new Callable<Subject>()
+        {
+            @Override
+            public Subject call()
+            {
+                return new Subject.Value(1);
+            }
+        }).get().getValue();
+    }
+    
+    @Benchmark
+    public int completableFuture()
+    {
+        return CompletableFuture.supplyAsync(new java.util.function.Supplier<Subject>()
+        {
+            @Override
+            public Subject get()
+            {
+                return new Subject.Value(1);
+            }
+        }, pool).join().getValue();
+    }
+    
+    @Benchmark
+    public int promiseDynamic()
+    {
+        return dynamic.promise(new Subject.Lookup(1)).getValue();
+    }
+    
+    @Benchmark
+    public int promiseGenerated()
+    {
+        return generated.promise(new Subject.Lookup(1)).getValue();
+    }
+    
+    @Benchmark
+    public int promiseGeneratedHelpingOut()
+    {
+        return helpingOut.promise(new Subject.Lookup(1)).getValue();
+    }
+    
+    @Benchmark
+    public int attemptGenerated()
+    {
+        return generated.attempt(new Subject.Lookup(1), 
+            ResponseTimeSLA.nanosFromNow(Nanoseconds.fromSeconds(1))).getValue();
+    }
+}
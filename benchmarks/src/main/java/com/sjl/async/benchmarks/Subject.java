@@ -0,0 +1,58 @@
+package com.sjl.async.benchmarks;
+
+import com.sjl.async.*;
+
+/**
+ * The result-type promised by the benchmarks.
+ * 
+ * @author steve
+ */
+public interface Subject
+{
+    public int getValue();
+    
+    public int add(int anAmount);
+    
+    public static class Value implements Subject
+    {
+        private int value;
+        
+        public Value()
+        {
+        }
+        
+        public Value(int aValue)
+        {
+            value = aValue;
+        }
+        
+        @Override
+        public int getValue()
+        {
+            return value;
+        }
+        
+        @Override
+        public int add(int anAmount)
+        {
+            return value + anAmount;
+        }
+    }
+    
+    public static class Lookup extends FulfilmentAdapter<Subject>
+    {
+        private int value;
+        
+        public Lookup(int aValue)
+        {
+            super(Subject.class);
+            value = aValue;
+        }
+        
+        @Override
+        public Subject execute()
+        {
+            return new Value(value);
+        }
+    }
+}
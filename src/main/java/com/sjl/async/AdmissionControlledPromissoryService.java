@@ -0,0 +1,153 @@
+package com.sjl.async;
+
+import java.lang.ref.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Decorates a PromissoryService with a ConcurrencyLimit, so that under overload work is shed 
+ * rather than queued. An attempt which would exceed the limit is not executed at all: it returns 
+ * an implicit future which realises the fulfilment's default result straight away. Promises have
+ * no SLA to honour, so they are always admitted, but they count towards the limit.
+ * 
+ * The time from admission until a fulfilment completes (or fails, or is cancelled by a breach of
+ * its SLA) is fed back to the limit, which can use it to adapt to the capacity of whatever the 
+ * fulfilments depend on. The delegate's implicit futures must be ones created by this library for
+ * that to work. A LAZY implicit future which is abandoned, or dropped, before anything needs it
+ * gives its place back without teaching the limit anything.
+ * 
+ * @author steve
+ */
+public class AdmissionControlledPromissoryService implements PromissoryService
+{
+    private static final Cleaner UNUSED = Cleaner.create();
+    
+    private PromissoryService delegate;
+    private ConcurrencyLimit limit;
+    private AtomicLong shed;
+    
+    public AdmissionControlledPromissoryService(PromissoryService aDelegate, ConcurrencyLimit aLimit)
+    {
+        delegate = aDelegate;
+        limit = aLimit;
+        shed = new AtomicLong();
+    }
+
+    @Override
+    public <T> T promise(Fulfilment<T> aPromise)
+    throws RejectedExecutionException
+    {
+        limit.acquire();
+        
+        long _admitted = System.nanoTime();
+        try
+        {
+            return admitted(delegate.promise(aPromise), _admitted);
+        }
+        catch (RejectedExecutionException anExc)
+        {
+            limit.release(System.nanoTime() - _admitted, true);
+            throw anExc;
+        }
+    }
+
+    @Override
+    public <T> T attempt(Fulfilment<T> aPromise, ServiceLevelAgreement anSLA)
+    throws RejectedExecutionException
+    {
+        if (!limit.tryAcquire())
+        {
+            shed.incrementAndGet();
+            return Promises.defaulted(aPromise);
+        }
+        
+        long _admitted = System.nanoTime();
+        try
+        {
+            return admitted(delegate.attempt(aPromise, anSLA), _admitted);
+        }
+        catch (RejectedExecutionException anExc)
+        {
+            limit.release(System.nanoTime() - _admitted, true);
+            throw anExc;
+        }
+    }
+    
+    /**
+     * @return the number of attempts which were not admitted
+     */
+    public long getShed()
+    {
+        return shed.get();
+    }
+    
+    private <T> T admitted(T anImplicit, final long anAdmitted)
+    {
+        final FutureWithSLA<T> _f = Promises.futureOf(anImplicit);
+        if (_f == null)
+        {
+            // nothing to watch, so nothing to learn
+            limit.release(System.nanoTime() - anAdmitted, false);
+            return anImplicit;
+        }
+        
+        if (!_f.isDeferred())
+        {
+            _f.whenReady(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    limit.release(System.nanoTime() - anAdmitted, !_f.isNestedSuccessful());
+                }
+            });
+            return anImplicit;
+        }
+        
+        // nothing may ever need it, and then it never becomes ready
+        final Slot _slot = new Slot(limit, anAdmitted);
+        UNUSED.register(_f, _slot);
+        _f.whenReady(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (_f.isDeferred())
+                    _slot.run();
+                else
+                    _slot.release(!_f.isNestedSuccessful());
+            }
+        });
+        return anImplicit;
+    }
+    
+    /**
+     * The place of a deferred fulfilment in the limit, given back just once - when it is ready, or
+     * when it becomes unreachable without having been used. Must not refer to the implicit future.
+     */
+    private static class Slot implements Runnable
+    {
+        private final ConcurrencyLimit limit;
+        private final long admitted;
+        private final AtomicBoolean released = new AtomicBoolean();
+        
+        Slot(ConcurrencyLimit aLimit, long anAdmitted)
+        {
+            limit = aLimit;
+            admitted = anAdmitted;
+        }
+        
+        void release(boolean aDropped)
+        {
+            if (released.compareAndSet(false, true))
+                limit.release(System.nanoTime() - admitted, aDropped);
+        }
+        
+        @Override
+        public void run()
+        {
+            if (released.compareAndSet(false, true))
+                limit.forget();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.sjl.async;
+
+/**
+ * A ConcurrencyLimit which grows additively while fulfilments complete promptly and the limit is
+ * being used, and shrinks multiplicatively when they are dropped or their latency rises well 
+ * above the lowest seen - a sign that they are queueing rather than running.
+ * 
+ * The limit shrinks at most once for each congestion event: fulfilments still in flight when it 
+ * last shrank saw the same congestion, so their samples don't shrink it again. The lowest latency is 
+ * allowed to creep upwards by a little with every sample, so that the limit adapts if the work 
+ * genuinely becomes slower.
+ * 
+ * @author steve
+ */
+public class AimdConcurrencyLimit implements ConcurrencyLimit
+{
+    private final int min;
+    private final int max;
+    private final double backoff;
+    private final double tolerance;
+    
+    private double limit;
+    private int inFlight;
+    private long minLatency = Long.MAX_VALUE;
+    private int recovering; // samples still to come from those in flight when the limit last shrank
+    
+    public AimdConcurrencyLimit(int anInitial, int aMin, int aMax)
+    {
+        this(anInitial, aMin, aMax, 0.9, 2.0);
+    }
+    
+    /**
+     * @param the limit to start with
+     * @param the least the limit may shrink to
+     * @param the most the limit may grow to
+     * @param the factor, less than 1, by which to shrink the limit
+     * @param the multiple of the lowest latency above which the limit is shrunk
+     */
+    public AimdConcurrencyLimit(int anInitial, int aMin, int aMax, double aBackoff, double aTolerance)
+    {
+        limit = anInitial;
+        min = aMin;
+        max = aMax;
+        backoff = aBackoff;
+        tolerance = aTolerance;
+    }
+    
+    @Override
+    public synchronized boolean tryAcquire()
+    {
+        if (inFlight >= (int) limit)
+            return false;
+        
+        inFlight++;
+        return true;
+    }
+    
+    @Override
+    public synchronized void acquire()
+    {
+        inFlight++;
+    }
+    
+    @Override
+    public synchronized void release(long aNanos, boolean aDropped)
+    {
+        inFlight--;
+        
+        if (!aDropped)
+            minLatency = (minLatency == Long.MAX_VALUE) ? 
+                aNanos : Math.min(aNanos, minLatency + (minLatency >>> 10));
+        
+        if (recovering > 0)
+            recovering--;
+        else if (aDropped || aNanos > minLatency * tolerance)
+        {
+            limit = Math.max(min, limit * backoff);
+            recovering = inFlight;
+        }
+        else if (inFlight * 2 >= (int) limit)
+            limit = Math.min(max, limit + 1);
+    }
+    
+    @Override
+    public synchronized void forget()
+    {
+        inFlight--;
+        recovering = Math.min(recovering, inFlight);
+    }
+    
+    @Override
+    public synchronized int getLimit()
+    {
+        return (int) limit;
+    }
+    
+    @Override
+    public synchronized int getInFlight()
+    {
+        return inFlight;
+    }
+}
@@ -0,0 +1,64 @@
+package com.sjl.async;
+
+import java.util.*;
+
+/**
+ * The realised results of PromissoryService.attemptAll, including the default results of any 
+ * fulfilments that breached their SLA.
+ * 
+ * @author steve
+ */
+public class Attempts
+{
+    private List<Object> results;
+    private Map<Fulfilment<?>, Object> byFulfilment;
+    private Set<Fulfilment<?>> breached;
+    
+    Attempts()
+    {
+        results = new ArrayList<Object>();
+        byFulfilment = new IdentityHashMap<Fulfilment<?>, Object>();
+        breached = Collections.newSetFromMap(new IdentityHashMap<Fulfilment<?>, Boolean>());
+    }
+    
+    void add(Fulfilment<?> aFulfilment, Object aResult, boolean aBreached)
+    {
+        results.add(aResult);
+        byFulfilment.put(aFulfilment, aResult);
+        if (aBreached)
+            breached.add(aFulfilment);
+    }
+    
+    /**
+     * @return the realised (or default) result of aFulfilment
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Fulfilment<T> aFulfilment)
+    {
+        if (!byFulfilment.containsKey(aFulfilment))
+            throw new IllegalArgumentException("not attempted: " + aFulfilment);
+        
+        return (T) byFulfilment.get(aFulfilment);
+    }
+    
+    /**
+     * @return the realised (or default) results in the order their fulfilments were given
+     */
+    public List<Object> getResults()
+    {
+        return Collections.unmodifiableList(results);
+    }
+    
+    public boolean isBreached(Fulfilment<?> aFulfilment)
+    {
+        return breached.contains(aFulfilment);
+    }
+    
+    /**
+     * @return the fulfilments which did not complete within the SLA
+     */
+    public Set<Fulfilment<?>> getBreached()
+    {
+        return Collections.unmodifiableSet(breached);
+    }
+}
@@ -0,0 +1,16 @@
+package com.sjl.async;
+
+/**
+ * A Fulfilment which a BatchingPromissoryService may realise together with others for the same 
+ * BatchLoader. Fulfilments are batched together only if they return the same BatchLoader instance.
+ * 
+ * execute() is used by services which do not batch.
+ * 
+ * @author steve
+ */
+public interface BatchFulfilment<K, T> extends Fulfilment<T>
+{
+    public K getBatchKey();
+    
+    public BatchLoader<K, T> getBatchLoader();
+}
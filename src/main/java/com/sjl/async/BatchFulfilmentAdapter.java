@@ -0,0 +1,44 @@
+package com.sjl.async;
+
+import java.util.*;
+
+/**
+ * A BatchFulfilment of one key, which if it is not batched loads that key alone.
+ * 
+ * @author steve
+ */
+public class BatchFulfilmentAdapter<K, T> extends FulfilmentAdapter<T> implements BatchFulfilment<K, T>
+{
+    private K key;
+    private BatchLoader<K, T> loader;
+    
+    public BatchFulfilmentAdapter(Class<T> aResultType, K aKey, BatchLoader<K, T> aLoader)
+    {
+        this(aResultType, aKey, aLoader, null);
+    }
+    
+    public BatchFulfilmentAdapter(Class<T> aResultType, K aKey, BatchLoader<K, T> aLoader, T aDefaultResult)
+    {
+        super(aResultType, aDefaultResult);
+        key = aKey;
+        loader = aLoader;
+    }
+    
+    @Override
+    public K getBatchKey()
+    {
+        return key;
+    }
+    
+    @Override
+    public BatchLoader<K, T> getBatchLoader()
+    {
+        return loader;
+    }
+    
+    @Override
+    public T execute() throws Exception
+    {
+        return loader.load(Collections.singletonList(key)).get(key);
+    }
+}
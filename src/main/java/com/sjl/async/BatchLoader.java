@@ -0,0 +1,18 @@
+package com.sjl.async;
+
+import java.util.*;
+
+/**
+ * Loads the results for many keys in one go, for example with a single round-trip to a backend.
+ * 
+ * @author steve
+ */
+public interface BatchLoader<K, T>
+{
+    /**
+     * @param some distinct keys to load
+     * @return the results for those keys; keys which are missing from the map realise the 
+     * default result of their Fulfilment.
+     */
+    public Map<K, T> load(List<K> aKeys) throws Exception;
+}
@@ -0,0 +1,286 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A PromissoryService which collects BatchFulfilments that share a BatchLoader for up to a 
+ * given window of time, or until a maximum batch size is reached, and then realises them all 
+ * with one call to the BatchLoader. Each caller still receives its own implicit future, which
+ * respects its own SLA, and is recorded by PromiseMetrics and flight recorder events just like 
+ * any other - the time taken by the BatchLoader counts as the execution time of each fulfilment 
+ * in the batch.
+ * 
+ * Fulfilments which are not BatchFulfilments are executed individually, as by a
+ * GeneratedProxyPromissoryService.
+ * 
+ * @author steve
+ */
+public class BatchingPromissoryService implements PromissoryService
+{
+    private ScheduledExecutorService executor;
+    private long window;
+    private int maxBatchSize;
+    private PromiseMetrics metrics;
+    
+    private PromissoryService unbatched;
+    private GeneratedProxyFactory proxies;
+    private ConcurrentMap<BatchLoader<?, ?>, Batch> batches;
+    
+    /**
+     * @param an executor on which to time windows and run BatchLoaders
+     * @param the time in nanoseconds to wait for further fulfilments after the first of a batch 
+     * @param the number of fulfilments at which a batch is loaded without waiting any longer
+     */
+    public BatchingPromissoryService(ScheduledExecutorService anExecutor, long aWindowNanos, int aMaxBatchSize)
+    {
+        this(anExecutor, aWindowNanos, aMaxBatchSize, PromiseMetrics.NULL_OBJECT);
+    }
+    
+    /**
+     * @param an executor on which to time windows and run BatchLoaders
+     * @param the time in nanoseconds to wait for further fulfilments after the first of a batch 
+     * @param the number of fulfilments at which a batch is loaded without waiting any longer
+     * @param records statistics of batched and unbatched fulfilments alike
+     */
+    public BatchingPromissoryService(
+        ScheduledExecutorService anExecutor, long aWindowNanos, int aMaxBatchSize, PromiseMetrics aMetrics)
+    {
+        executor = anExecutor;
+        window = aWindowNanos;
+        maxBatchSize = aMaxBatchSize;
+        metrics = aMetrics;
+        
+        unbatched = new GeneratedProxyPromissoryService(anExecutor, ExecutionMode.SUBMIT, aMetrics);
+        proxies = new GeneratedProxyFactory();
+        batches = new ConcurrentHashMap<BatchLoader<?, ?>, Batch>();
+    }
+
+    @Override
+    public <T> T promise(Fulfilment<T> aPromise)
+    throws RejectedExecutionException
+    {
+        return attempt(aPromise, ServiceLevelAgreement.NULL_OBJECT);
+    }
+
+    @Override
+    public <T> T attempt(final Fulfilment<T> aPromise, final ServiceLevelAgreement anSLA)
+    throws RejectedExecutionException
+    {
+        if (!(aPromise instanceof BatchFulfilment<?, ?>))
+            return (anSLA == ServiceLevelAgreement.NULL_OBJECT) ? 
+                unbatched.promise(aPromise) : unbatched.attempt(aPromise, anSLA);
+        
+        checkSatisfiable(aPromise);
+        
+        // the PromiseTask is never run, but completed with the rest of its batch
+        final BatchFulfilment<?, T> _batched = (BatchFulfilment<?, T>) aPromise;
+        Executor _batcher = new Executor() 
+        {
+            @Override
+            public void execute(Runnable aTask)
+            {
+                enqueue(new Entry(_batched, (PromiseTask<?>) aTask));
+            }
+        };
+        
+        return proxies.create(PromiseTask.create(
+            aPromise, anSLA, _batcher, ExecutionMode.SUBMIT, metrics), aPromise.getResultType());
+    }
+
+    private void enqueue(Entry anEntry)
+    {
+        BatchLoader<?, ?> _loader = anEntry.fulfilment.getBatchLoader();
+        while (true)
+        {
+            Batch _batch = batches.get(_loader);
+            if (_batch == null)
+            {
+                Batch _new = new Batch(_loader);
+                _batch = batches.putIfAbsent(_loader, _new);
+                if (_batch == null)
+                {
+                    _batch = _new;
+                    try
+                    {
+                        schedule(_batch);
+                    }
+                    catch (RejectedExecutionException anExc)
+                    {
+                        // nothing will ever load the batch, so fail whatever joined it meanwhile
+                        batches.remove(_loader, _batch);
+                        fail(_batch.drain(), anExc);
+                        throw anExc;
+                    }
+                }
+            }
+            
+            int _size = _batch.add(anEntry);
+            if (_size < 0)
+            {
+                // lost a race with dispatch of that batch, start another
+                batches.remove(_loader, _batch);
+                continue;
+            }
+            
+            if (_size >= maxBatchSize)
+                dispatch(_batch);
+            return;
+        }
+    }
+    
+    private void schedule(final Batch aBatch)
+    {
+        aBatch.setTimer(executor.schedule(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                dispatch(aBatch);
+            }
+        }, window, TimeUnit.NANOSECONDS));
+    }
+    
+    private void dispatch(final Batch aBatch)
+    {
+        batches.remove(aBatch.loader, aBatch);
+        
+        final List<Entry> _entries = aBatch.drain();
+        if (_entries == null)
+            return;
+        
+        try
+        {
+            executor.execute(new Runnable() 
+            {
+                @Override
+                public void run()
+                {
+                    load(aBatch.loader, _entries);
+                }
+            });
+        }
+        catch (RejectedExecutionException anExc)
+        {
+            fail(_entries, anExc);
+        }
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void load(BatchLoader aLoader, List<Entry> anEntries)
+    {
+        Set<Object> _keys = new LinkedHashSet<Object>();
+        for (Entry _e : anEntries)
+            _keys.add(_e.fulfilment.getBatchKey());
+        
+        long _start = System.nanoTime();
+        try
+        {
+            Map<?, ?> _results = aLoader.load(new ArrayList<Object>(_keys));
+            recordExecution(anEntries, System.nanoTime() - _start);
+            for (Entry _e : anEntries)
+                _e.task.complete(_results.get(_e.fulfilment.getBatchKey()));
+        }
+        catch (Throwable anExc)
+        {
+            recordExecution(anEntries, System.nanoTime() - _start);
+            fail(anEntries, anExc);
+        }
+    }
+    
+    private void fail(List<Entry> anEntries, Throwable anExc)
+    {
+        if (anEntries == null)
+            return;
+        
+        for (Entry _e : anEntries)
+            _e.task.fail(anExc);
+    }
+    
+    private void recordExecution(List<Entry> anEntries, long aNanos)
+    {
+        if (!metrics.isEnabled())
+            return;
+        
+        for (Entry _e : anEntries)
+            metrics.of(_e.fulfilment).recordExecution(aNanos);
+    }
+    
+    private <T> void checkSatisfiable(final Fulfilment<T> aTask)
+    throws RejectedExecutionException
+    {
+        if (!proxies.canProxy(aTask.getResultType()))
+            throw new RejectedExecutionException(
+                "this implementation is only able to satisfy interfaces and non-final classes " +
+                "with a no-arg constructor as return-types");
+        
+        // before the fulfilment joins a batch, whose window would otherwise be closing while the
+        // proxy class is generated
+        proxies.prepare(aTask.getResultType());
+    }
+    
+    @SuppressWarnings("rawtypes")
+    private static class Entry
+    {
+        final BatchFulfilment<?, ?> fulfilment;
+        final PromiseTask task;
+        
+        Entry(BatchFulfilment<?, ?> aFulfilment, PromiseTask<?> aTask)
+        {
+            fulfilment = aFulfilment;
+            task = aTask;
+        }
+    }
+    
+    private static class Batch
+    {
+        final BatchLoader<?, ?> loader;
+        private List<Entry> entries = new ArrayList<Entry>();
+        private Future<?> timer;
+        
+        Batch(BatchLoader<?, ?> aLoader)
+        {
+            loader = aLoader;
+        }
+        
+        /**
+         * @return the size of the batch including anEntry, or -1 if the batch was already dispatched
+         */
+        synchronized int add(Entry anEntry)
+        {
+            if (entries == null)
+                return -1;
+            
+            entries.add(anEntry);
+            return entries.size();
+        }
+        
+        /**
+         * @param the timer which dispatches this batch at the end of its window
+         */
+        synchronized void setTimer(Future<?> aTimer)
+        {
+            if (entries == null)
+                aTimer.cancel(false);
+            else
+                timer = aTimer;
+        }
+        
+        /**
+         * @return the entries of this batch, or null if the batch was already dispatched, having
+         * cancelled the timer for the end of its window
+         */
+        synchronized List<Entry> drain()
+        {
+            if (timer != null)
+            {
+                timer.cancel(false);
+                timer = null;
+            }
+            
+            List<Entry> _result = entries;
+            entries = null;
+            return _result;
+        }
+    }
+}
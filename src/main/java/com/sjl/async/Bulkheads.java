@@ -0,0 +1,112 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Named, isolated executors - each with a fixed number of threads and a bounded queue - and
+ * a PromissoryService for each. A bulkhead is created the first time its name is asked for,
+ * and lives until shutdown.
+ * 
+ * @author steve
+ */
+public class Bulkheads
+{
+    private ConcurrentMap<String, Bulkhead> bulkheads;
+    private PromiseMetrics metrics;
+    
+    public Bulkheads()
+    {
+        this(PromiseMetrics.NULL_OBJECT);
+    }
+    
+    /**
+     * @param where the PromissoryServices of every bulkhead record what they do
+     */
+    public Bulkheads(PromiseMetrics aMetrics)
+    {
+        bulkheads = new ConcurrentHashMap<String, Bulkhead>();
+        metrics = aMetrics;
+    }
+    
+    /**
+     * @param the name of the bulkhead
+     * @param the number of threads, used only if the bulkhead doesn't exist yet
+     * @param the queue depth, used only if the bulkhead doesn't exist yet
+     * @return a PromissoryService which executes fulfilments on the named bulkhead
+     */
+    public PromissoryService get(String aName, int aConcurrency, int aQueueDepth)
+    {
+        return get(aName, aConcurrency, aQueueDepth, ExecutionMode.SUBMIT);
+    }
+    
+    /**
+     * @param the name of the bulkhead
+     * @param the number of threads, used only if the bulkhead doesn't exist yet
+     * @param the queue depth, used only if the bulkhead doesn't exist yet
+     * @param SUBMIT, or LAZY to defer work until its result is needed
+     * @return a PromissoryService which executes fulfilments on the named bulkhead
+     */
+    public PromissoryService get(String aName, int aConcurrency, int aQueueDepth, ExecutionMode aMode)
+    {
+        Bulkhead _result = bulkheads.get(aName);
+        if (_result == null)
+        {
+            Bulkhead _new = new Bulkhead(aName, aConcurrency, aQueueDepth, metrics);
+            _result = bulkheads.putIfAbsent(aName, _new);
+            if (_result == null)
+                _result = _new;
+            else
+                _new.executor.shutdown();
+        }
+        return (aMode == ExecutionMode.LAZY) ? _result.lazy : _result.promissory;
+    }
+    
+    /**
+     * @return the number of calls queued or running in the named bulkhead 
+     */
+    public int getLoad(String aName)
+    {
+        Bulkhead _bulkhead = bulkheads.get(aName);
+        if (_bulkhead == null)
+            return 0;
+        
+        return _bulkhead.executor.getActiveCount() + _bulkhead.executor.getQueue().size();
+    }
+    
+    public void shutdown()
+    {
+        for (Bulkhead _bulkhead : bulkheads.values())
+            _bulkhead.executor.shutdown();
+    }
+    
+    private static class Bulkhead
+    {
+        private final ThreadPoolExecutor executor;
+        private final PromissoryService promissory;
+        private final PromissoryService lazy;
+        
+        Bulkhead(final String aName, int aConcurrency, int aQueueDepth, PromiseMetrics aMetrics)
+        {
+            BlockingQueue<Runnable> _queue = (aQueueDepth > 0) ? 
+                new ArrayBlockingQueue<Runnable>(aQueueDepth) : new SynchronousQueue<Runnable>();
+            
+            executor = new ThreadPoolExecutor(
+                aConcurrency, aConcurrency, 60, TimeUnit.SECONDS, _queue, new ThreadFactory() 
+                {
+                    private AtomicInteger count = new AtomicInteger();
+                    
+                    @Override
+                    public Thread newThread(Runnable aRunnable)
+                    {
+                        Thread _t = new Thread(aRunnable, "bulkhead-" + aName + "-" + count.incrementAndGet());
+                        _t.setDaemon(true);
+                        return _t;
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
+            promissory = new GeneratedProxyPromissoryService(executor, ExecutionMode.SUBMIT, aMetrics);
+            lazy = new GeneratedProxyPromissoryService(executor, ExecutionMode.LAZY, aMetrics);
+        }
+    }
+}
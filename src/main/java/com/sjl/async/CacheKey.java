@@ -0,0 +1,35 @@
+package com.sjl.async;
+
+/**
+ * Identifies equal CacheableFulfilments: those with the same result type and cache key.
+ * 
+ * @author steve
+ */
+final class CacheKey
+{
+    private final Class<?> type;
+    private final Object key;
+    
+    CacheKey(CacheableFulfilment<?> aFulfilment)
+    {
+        type = aFulfilment.getResultType();
+        key = aFulfilment.getCacheKey();
+    }
+    
+    @Override
+    public int hashCode()
+    {
+        return type.hashCode() * 31 + ((key == null) ? 0 : key.hashCode());
+    }
+    
+    @Override
+    public boolean equals(Object anObject)
+    {
+        if (!(anObject instanceof CacheKey))
+            return false;
+        
+        CacheKey _other = (CacheKey) anObject;
+        return type == _other.type && 
+            ((key == null) ? _other.key == null : key.equals(_other.key));
+    }
+}
@@ -0,0 +1,15 @@
+package com.sjl.async;
+
+/**
+ * A Fulfilment whose result may be shared with other Fulfilments of the same result type and 
+ * cache key by a CachingPromissoryService.
+ * 
+ * @author steve
+ */
+public interface CacheableFulfilment<T> extends Fulfilment<T>
+{
+    /**
+     * @return a key with which equal Fulfilments (of the same result type) can be identified
+     */
+    public Object getCacheKey();
+}
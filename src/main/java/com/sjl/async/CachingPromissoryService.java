@@ -0,0 +1,316 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * Decorates a PromissoryService so that CacheableFulfilments with the same result type and cache
+ * key are executed just once: concurrent callers share one in-flight execution (and its implicit
+ * future), and realised results are remembered for a time-to-live, counted from when they were
+ * realised, in a bounded, least-recently-used cache. Results which were defaulted or failed are 
+ * not re-used.
+ * 
+ * Lookups of different keys don't contend on a lock or a shared counter - each entry remembers
+ * when it was last used. Eviction is approximately least-recently-used: a miss which overflows the
+ * cache evicts the least recently used of a small sample of its entries, so it costs the same
+ * however large the cache is. The cache may briefly hold more than its maximum size while
+ * concurrent misses race.
+ * 
+ * An attempt which joins an execution already in flight shares the SLA of the attempt which
+ * started it.
+ * 
+ * Fulfilments which are not CacheableFulfilments pass straight through.
+ * 
+ * @author steve
+ */
+public class CachingPromissoryService implements PromissoryService
+{
+    private static final LongSupplier SYSTEM_CLOCK = new LongSupplier()
+    {
+        @Override
+        public long getAsLong()
+        {
+            return System.nanoTime();
+        }
+    };
+    
+    private static final SampledEviction<CacheKey, Entry> EVICTION = new SampledEviction<CacheKey, Entry>()
+    {
+        @Override
+        protected long lastUsed(Entry anEntry)
+        {
+            return anEntry.lastUsed;
+        }
+    };
+    
+    private static final Function<CacheKey, Entry> NEW_ENTRY = new Function<CacheKey, Entry>()
+    {
+        @Override
+        public Entry apply(CacheKey aKey)
+        {
+            return new Entry();
+        }
+    };
+    
+    private PromissoryService delegate;
+    private int maxSize;
+    private long timeToLive;
+    private LongSupplier clock;
+    private ConcurrentMap<CacheKey, Entry> cache = new ConcurrentHashMap<CacheKey, Entry>();
+    
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private AtomicLong evictions = new AtomicLong();
+    
+    /**
+     * @param the service which executes fulfilments that aren't already cached
+     * @param the maximum number of results to cache
+     * @param the time in nanoseconds for which a result is cached once realised
+     */
+    public CachingPromissoryService(PromissoryService aDelegate, int aMaxSize, long aTimeToLiveNanos)
+    {
+        this(aDelegate, aMaxSize, aTimeToLiveNanos, SYSTEM_CLOCK);
+    }
+    
+    /**
+     * @param tells the time in nanoseconds, in terms of System.nanoTime()
+     */
+    CachingPromissoryService(PromissoryService aDelegate, int aMaxSize, long aTimeToLiveNanos, LongSupplier aClock)
+    {
+        delegate = aDelegate;
+        maxSize = aMaxSize;
+        timeToLive = aTimeToLiveNanos;
+        clock = aClock;
+    }
+
+    @Override
+    public <T> T promise(Fulfilment<T> aPromise)
+    throws RejectedExecutionException
+    {
+        if (!(aPromise instanceof CacheableFulfilment<?>))
+            return delegate.promise(aPromise);
+        
+        return lookup((CacheableFulfilment<T>) aPromise, null);
+    }
+
+    @Override
+    public <T> T attempt(Fulfilment<T> aPromise, ServiceLevelAgreement anSLA)
+    throws RejectedExecutionException
+    {
+        if (!(aPromise instanceof CacheableFulfilment<?>))
+            return delegate.attempt(aPromise, anSLA);
+        
+        return lookup((CacheableFulfilment<T>) aPromise, anSLA);
+    }
+    
+    public long getHits()
+    {
+        return hits.get();
+    }
+    
+    public long getMisses()
+    {
+        return misses.get();
+    }
+    
+    /**
+     * @return the number of results dropped because the cache was full or they had expired
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+    
+    public int size()
+    {
+        return cache.size();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private <T> T lookup(CacheableFulfilment<T> aPromise, ServiceLevelAgreement anSLA)
+    {
+        CacheKey _key = new CacheKey(aPromise);
+        
+        Entry _entry;
+        while (true)
+        {
+            long _now = clock.getAsLong();
+            _entry = cache.computeIfAbsent(_key, NEW_ENTRY);
+            _entry.used(_now);
+            
+            if (_entry.claim())
+            {
+                misses.incrementAndGet();
+                evictions.addAndGet(EVICTION.evictOverflow(cache, maxSize, _entry));
+                _entry.start(delegate, aPromise, anSLA, timeToLive, clock);
+                break;
+            }
+            
+            if (_entry.isReusable(_now))
+            {
+                hits.incrementAndGet();
+                break;
+            }
+            
+            if (cache.remove(_key, _entry) && _entry.isExpired(_now))
+                evictions.incrementAndGet();
+        }
+        
+        try
+        {
+            return (T) _entry.getImplicit();
+        }
+        catch (RuntimeException anExc)
+        {
+            cache.remove(_key, _entry);
+            throw anExc;
+        }
+    }
+    
+    private static class Entry
+    {
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final FutureTask<Object> implicit;
+        private volatile long lastUsed;
+        private volatile boolean ready;
+        private volatile long expiry;
+        private volatile PromissoryService delegate;
+        private volatile Fulfilment<?> fulfilment;
+        private volatile ServiceLevelAgreement sla;
+        
+        Entry()
+        {
+            implicit = new FutureTask<Object>(new Callable<Object>() 
+            {
+                @Override
+                public Object call() throws Exception
+                {
+                    return (sla == null) ? delegate.promise(fulfilment) : delegate.attempt(fulfilment, sla);
+                }
+            });
+        }
+        
+        void used(long aNow)
+        {
+            lastUsed = aNow;
+        }
+        
+        /**
+         * @return true for the one caller which must start this entry
+         */
+        boolean claim()
+        {
+            return !claimed.get() && claimed.compareAndSet(false, true);
+        }
+        
+        void start(
+            PromissoryService aDelegate, Fulfilment<?> aFulfilment, ServiceLevelAgreement anSLA,
+            final long aTimeToLive, final LongSupplier aClock)
+        {
+            delegate = aDelegate;
+            fulfilment = aFulfilment;
+            sla = anSLA;
+            implicit.run();
+            
+            // no need to hang on to these any longer
+            delegate = null;
+            fulfilment = null;
+            sla = null;
+            
+            FutureWithSLA<?> _f;
+            try
+            {
+                _f = Promises.futureOf(getImplicit());
+            }
+            catch (RuntimeException anExc)
+            {
+                // the delegate threw, and lookup drops this entry
+                return;
+            }
+            
+            if (_f == null)
+            {
+                expireAfter(aClock.getAsLong() + aTimeToLive);
+                return;
+            }
+            
+            _f.whenReady(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    expireAfter(aClock.getAsLong() + aTimeToLive);
+                }
+            });
+        }
+        
+        Object getImplicit()
+        {
+            boolean _interrupted = false;
+            try
+            {
+                while (true)
+                {
+                    try
+                    {
+                        return implicit.get();
+                    }
+                    catch (InterruptedException anExc)
+                    {
+                        _interrupted = true;
+                    }
+                    catch (ExecutionException anExc)
+                    {
+                        Throwable _cause = anExc.getCause();
+                        if (_cause instanceof RuntimeException)
+                            throw (RuntimeException) _cause;
+                        if (_cause instanceof Error)
+                            throw (Error) _cause;
+                        throw new RuntimeException(_cause);
+                    }
+                }
+            }
+            finally
+            {
+                if (_interrupted)
+                    Thread.currentThread().interrupt();
+            }
+        }
+        
+        boolean isExpired(long aNow)
+        {
+            return ready && aNow - expiry >= 0;
+        }
+        
+        boolean isReusable(long aNow)
+        {
+            if (isExpired(aNow))
+                return false;
+            
+            if (!implicit.isDone())
+                return true;
+            
+            FutureWithSLA<?> _f;
+            try
+            {
+                _f = Promises.futureOf(getImplicit());
+            }
+            catch (RuntimeException anExc)
+            {
+                return false;
+            }
+            
+            return _f == null || 
+                _f.getState() == FutureWithSLA.State.PENDING || 
+                _f.getState() == FutureWithSLA.State.REALISED;
+        }
+        
+        private void expireAfter(long anExpiry)
+        {
+            expiry = anExpiry;
+            ready = true;
+        }
+    }
+}
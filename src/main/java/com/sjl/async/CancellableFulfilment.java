@@ -0,0 +1,20 @@
+package com.sjl.async;
+
+/**
+ * A Fulfilment which can be told to stop when its result is no longer wanted. 
+ * DynamicProxyPromissoryService, GeneratedProxyPromissoryService and 
+ * DeadlineOrderedPromissoryService call execute(aToken) instead of execute(), with a token which 
+ * is cancelled when the SLA is breached, the implicit future is abandoned (see Promises.abandon) 
+ * or the scope is closed. Other services call execute().
+ * 
+ * @author steve
+ */
+public interface CancellableFulfilment<T> extends Fulfilment<T>
+{
+    public T execute(CancellationToken aToken) throws Exception;
+    
+    /**
+     * @return a token whose cancellation also cancels this fulfilment, or null
+     */
+    public CancellationToken getScope();
+}
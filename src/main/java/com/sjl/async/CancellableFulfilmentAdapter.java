@@ -0,0 +1,37 @@
+package com.sjl.async;
+
+public abstract class CancellableFulfilmentAdapter<T> extends FulfilmentAdapter<T> implements CancellableFulfilment<T>
+{
+    private CancellationToken scope;
+    
+    public CancellableFulfilmentAdapter(Class<T> aResultType)
+    {
+        this(aResultType, null, null);
+    }
+    
+    public CancellableFulfilmentAdapter(Class<T> aResultType, T aDefaultResult)
+    {
+        this(aResultType, aDefaultResult, null);
+    }
+    
+    public CancellableFulfilmentAdapter(Class<T> aResultType, T aDefaultResult, CancellationToken aScope)
+    {
+        super(aResultType, aDefaultResult);
+        scope = aScope;
+    }
+    
+    /**
+     * For services which don't hand out tokens: only closing the scope cancels the token.
+     */
+    @Override
+    public T execute() throws Exception
+    {
+        return execute(new CancellationToken(scope));
+    }
+    
+    @Override
+    public CancellationToken getScope()
+    {
+        return scope;
+    }
+}
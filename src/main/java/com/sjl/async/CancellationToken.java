@@ -0,0 +1,146 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Tells a CancellableFulfilment that its result is no longer wanted - because the SLA was 
+ * breached, the caller abandoned it, or a scope it was made within was closed - so that it can 
+ * stop work which an interrupt would not stop, such as a CPU-bound loop or non-interruptible I/O. 
+ * Fulfilments either poll isCancelled() (or throwIfCancelled()) or register onCancel() to, for 
+ * example, close the socket they are reading from.
+ * 
+ * A token can also be made by the caller as a scope: closing it cancels every fulfilment made 
+ * with it (see CancellableFulfilmentAdapter) that is still outstanding. Each such fulfilment 
+ * registers with the scope, so scopes should be short-lived rather than shared for the life of 
+ * the application.
+ * 
+ * @author steve
+ */
+public class CancellationToken implements AutoCloseable
+{
+    private static final Listener CANCELLED = new Listener(null, null);
+    
+    private final AtomicReference<Listener> listeners = new AtomicReference<Listener>();
+    
+    public CancellationToken()
+    {
+    }
+    
+    /**
+     * @param aParent whose cancellation also cancels this token, or null
+     */
+    public CancellationToken(CancellationToken aParent)
+    {
+        if (aParent != null)
+        {
+            aParent.onCancel(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    cancel();
+                }
+            });
+        }
+    }
+    
+    public boolean isCancelled()
+    {
+        return listeners.get() == CANCELLED;
+    }
+    
+    /**
+     * @throws CancellationException if this token has been cancelled
+     */
+    public void throwIfCancelled()
+    throws CancellationException
+    {
+        if (isCancelled())
+            throw new CancellationException();
+    }
+    
+    /**
+     * @param aListener to run (once) when this token is cancelled - immediately, on the calling 
+     * thread, if it already has been.
+     */
+    public void onCancel(Runnable aListener)
+    {
+        while (true)
+        {
+            Listener _head = listeners.get();
+            if (_head == CANCELLED)
+            {
+                aListener.run();
+                return;
+            }
+            
+            if (listeners.compareAndSet(_head, new Listener(aListener, _head)))
+                return;
+        }
+    }
+    
+    /**
+     * Cancels this token, running its listeners on the calling thread. Cancelling twice has no 
+     * further effect.
+     */
+    public void cancel()
+    {
+        Listener _head = listeners.getAndSet(CANCELLED);
+        if (_head == CANCELLED)
+            return;
+        
+        for (Listener _l = _head; _l != null; _l = _l.next)
+        {
+            try
+            {
+                _l.listener.run();
+            }
+            catch (RuntimeException anExc)
+            {
+                // one listener failing does not stop the others being told
+            }
+        }
+    }
+    
+    /**
+     * Cancels this token, so that it can bound a try-with-resources scope.
+     */
+    @Override
+    public void close()
+    {
+        cancel();
+    }
+    
+    /**
+     * @return a new token for one execution of aFulfilment, or null if it is not cancellable
+     */
+    static CancellationToken of(Fulfilment<?> aFulfilment)
+    {
+        return (aFulfilment instanceof CancellableFulfilment<?>) ? 
+            new CancellationToken(((CancellableFulfilment<?>) aFulfilment).getScope()) : null;
+    }
+    
+    /**
+     * Executes aFulfilment, handing it aToken if it is cancellable.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T execute(Fulfilment<T> aFulfilment, CancellationToken aToken)
+    throws Exception
+    {
+        return (aToken != null) ? 
+            ((CancellableFulfilment<T>) aFulfilment).execute(aToken) : aFulfilment.execute();
+    }
+    
+    private static class Listener
+    {
+        private final Runnable listener;
+        private final Listener next;
+        
+        public Listener(Runnable aListener, Listener aNext)
+        {
+            listener = aListener;
+            next = aNext;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.sjl.async;
+
+/**
+ * Tracks the outcomes of the fulfilments of one name (see CircuitBreakingPromissoryService) in 
+ * consecutive windows of a fixed number of calls. If the proportion that failed, breached their 
+ * SLA or were cancelled in a window reaches the threshold, the breaker opens and no calls are let 
+ * through until it has been open for a while. Then it lets through a single probe: if that 
+ * succeeds the breaker closes again, otherwise it re-opens. A probe whose outcome hasn't been 
+ * recorded by the time the breaker could have re-opened and probed again - because it hangs, or 
+ * is a lazy implicit future nobody uses - is given up on, and another probe let through.
+ * 
+ * Outcomes of calls let through before the breaker last changed state are ignored, so that 
+ * stragglers from before an incident can't re-open or close it.
+ * 
+ * @author steve
+ */
+public class CircuitBreaker
+{
+    public enum State
+    {
+        /** letting calls through */
+        CLOSED,
+        /** letting no calls through */
+        OPEN,
+        /** letting a single probe through to see whether to close */
+        HALF_OPEN
+    }
+    
+    private final int window;
+    private final int threshold;
+    private final long openFor;
+    
+    private State state = State.CLOSED;
+    private long generation;
+    private long opened;
+    private long probed;
+    private int calls;
+    private int failures;
+    
+    /**
+     * @param the number of calls in each window
+     * @param the proportion of calls in a window, between 0 and 1, which must fail to open the breaker
+     * @param the time in nanoseconds for which the breaker stays open before probing
+     */
+    public CircuitBreaker(int aWindow, double aFailureRate, long anOpenNanos)
+    {
+        window = aWindow;
+        threshold = Math.max(1, (int) Math.ceil(aWindow * aFailureRate));
+        openFor = anOpenNanos;
+    }
+    
+    /**
+     * @return a ticket with which to record the outcome of the call, or -1 if the call should not 
+     * be made
+     */
+    synchronized long tryAcquire()
+    {
+        switch (state)
+        {
+            case CLOSED:
+                return generation;
+                
+            case OPEN:
+                if (System.nanoTime() - opened < openFor)
+                    return -1;
+                
+                state = State.HALF_OPEN;
+                probed = System.nanoTime();
+                return ++generation;
+                
+            default:
+                // the probe is still out, unless it has been out so long it may never come back
+                if (System.nanoTime() - probed < openFor)
+                    return -1;
+                
+                // a new generation, so that the lost probe's outcome is ignored if it does come back
+                probed = System.nanoTime();
+                return ++generation;
+        }
+    }
+    
+    /**
+     * @param the ticket given by tryAcquire
+     * @param true if the call failed, breached its SLA or was cancelled
+     */
+    synchronized void record(long aTicket, boolean aFailed)
+    {
+        if (aTicket != generation)
+            return;
+        
+        if (state == State.HALF_OPEN)
+        {
+            if (aFailed)
+                open();
+            else
+                reset(State.CLOSED);
+            return;
+        }
+        
+        calls++;
+        if (aFailed)
+            failures++;
+        
+        if (failures >= threshold)
+            open();
+        else if (calls >= window)
+            reset(State.CLOSED);
+    }
+    
+    public synchronized State getState()
+    {
+        return state;
+    }
+    
+    private void open()
+    {
+        opened = System.nanoTime();
+        reset(State.OPEN);
+    }
+    
+    private void reset(State aState)
+    {
+        if (aState != state)
+            generation++;
+        
+        state = aState;
+        calls = 0;
+        failures = 0;
+    }
+}
@@ -0,0 +1,119 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Decorates a PromissoryService with a CircuitBreaker per name - that of the result-type, or of 
+ * the fulfilment if it is a NamedFulfilment, so each asyncified method has its own. While a 
+ * breaker is open, fulfilments of that name are not executed at all: they return an implicit 
+ * future which realises the fulfilment's default result straight away, so that a backend which 
+ * is timing out doesn't tie up threads and queue space until every SLA expires.
+ * 
+ * The delegate's implicit futures must be ones created by this library for their outcomes to be 
+ * seen; others always count as successful.
+ * 
+ * @author steve
+ */
+public class CircuitBreakingPromissoryService implements PromissoryService
+{
+    private PromissoryService delegate;
+    private int window;
+    private double failureRate;
+    private long openFor;
+    private ConcurrentMap<String, CircuitBreaker> breakers;
+    private AtomicLong shortCircuited;
+    
+    /**
+     * @param the service which executes fulfilments while their breaker is closed
+     * @param the number of calls in each window
+     * @param the proportion of calls in a window, between 0 and 1, which must fail to open a breaker
+     * @param the time in nanoseconds for which a breaker stays open before probing
+     */
+    public CircuitBreakingPromissoryService(
+        PromissoryService aDelegate, int aWindow, double aFailureRate, long anOpenNanos)
+    {
+        delegate = aDelegate;
+        window = aWindow;
+        failureRate = aFailureRate;
+        openFor = anOpenNanos;
+        breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+        shortCircuited = new AtomicLong();
+    }
+
+    @Override
+    public <T> T promise(Fulfilment<T> aPromise)
+    throws RejectedExecutionException
+    {
+        return attempt(aPromise, null);
+    }
+
+    @Override
+    public <T> T attempt(Fulfilment<T> aPromise, ServiceLevelAgreement anSLA)
+    throws RejectedExecutionException
+    {
+        CircuitBreaker _breaker = getBreaker(PromiseMetrics.nameOf(aPromise));
+        long _ticket = _breaker.tryAcquire();
+        if (_ticket < 0)
+        {
+            shortCircuited.incrementAndGet();
+            return Promises.defaulted(aPromise);
+        }
+        
+        try
+        {
+            T _result = (anSLA == null) ? delegate.promise(aPromise) : delegate.attempt(aPromise, anSLA);
+            return watch(_result, _breaker, _ticket);
+        }
+        catch (RejectedExecutionException anExc)
+        {
+            _breaker.record(_ticket, true);
+            throw anExc;
+        }
+    }
+    
+    /**
+     * @return the breaker for fulfilments of aName
+     */
+    public CircuitBreaker getBreaker(String aName)
+    {
+        CircuitBreaker _result = breakers.get(aName);
+        if (_result == null)
+        {
+            CircuitBreaker _new = new CircuitBreaker(window, failureRate, openFor);
+            _result = breakers.putIfAbsent(aName, _new);
+            if (_result == null)
+                _result = _new;
+        }
+        return _result;
+    }
+    
+    /**
+     * @return the number of fulfilments which were not executed because their breaker was open
+     */
+    public long getShortCircuited()
+    {
+        return shortCircuited.get();
+    }
+    
+    private <T> T watch(T anImplicit, final CircuitBreaker aBreaker, final long aTicket)
+    {
+        final FutureWithSLA<T> _f = Promises.futureOf(anImplicit);
+        if (_f == null)
+        {
+            aBreaker.record(aTicket, false);
+            return anImplicit;
+        }
+        
+        _f.whenReady(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                aBreaker.record(aTicket, !_f.isNestedSuccessful());
+            }
+        });
+        return anImplicit;
+    }
+}
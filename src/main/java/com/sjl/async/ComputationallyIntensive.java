@@ -2,8 +2,44 @@ package com.sjl.async;
 
 import java.lang.annotation.*;
 
+/**
+ * Marks a method whose result should be promised when its object is asyncified.
+ * 
+ * Methods naming a pool are run by that pool's own bulkhead - a bounded executor which is
+ * shared only by methods naming the same pool - so that one slow dependency can't take every
+ * thread. The concurrency and queue depth of a pool are taken from the first method to use it.
+ * Work offered to a bulkhead whose threads and queue are full is rejected with a 
+ * RejectedExecutionException.
+ */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface ComputationallyIntensive {
 
+	/**
+	 * @return the name of the bulkhead to run in, or "" to use the service's own executor
+	 */
+	String pool() default "";
+	
+	/**
+	 * @return the maximum number of calls the bulkhead runs at once
+	 */
+	int concurrency() default 4;
+	
+	/**
+	 * @return the maximum number of calls the bulkhead holds waiting for a thread
+	 */
+	int queueDepth() default 64;
+	
+	/**
+	 * @return the response time, in milliseconds, after which the result is abandoned and the 
+	 * call fails with a TimeoutException, or 0 to wait indefinitely
+	 */
+	long slaMillis() default 0;
+	
+	/**
+	 * @return true to defer the call until its result is first used (or prefetched), so that 
+	 * calls whose results are never used cost nothing. Methods which don't name a pool are only 
+	 * deferred if the AsyncificationService was given a lazy PromissoryService.
+	 */
+	boolean lazy() default false;
 }
@@ -0,0 +1,35 @@
+package com.sjl.async;
+
+/**
+ * Decides how many fulfilments an AdmissionControlledPromissoryService lets run at once, and 
+ * learns from how long they take.
+ * 
+ * @author steve
+ */
+public interface ConcurrencyLimit
+{
+    /**
+     * @return true, having counted another fulfilment in flight, if the limit allows it
+     */
+    public boolean tryAcquire();
+    
+    /**
+     * Counts another fulfilment in flight whatever the limit
+     */
+    public void acquire();
+    
+    /**
+     * @param the time in nanoseconds from admission until the fulfilment completed
+     * @param true if the fulfilment failed, was cancelled or breached its SLA
+     */
+    public void release(long aNanos, boolean aDropped);
+    
+    /**
+     * Counts a fulfilment out of flight without learning from it, because it never ran
+     */
+    public void forget();
+    
+    public int getLimit();
+    
+    public int getInFlight();
+}
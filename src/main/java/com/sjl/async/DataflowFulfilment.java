@@ -0,0 +1,23 @@
+package com.sjl.async;
+
+import java.util.*;
+
+/**
+ * A Fulfilment which uses the results of other promises. Declaring them as inputs lets a 
+ * PromissoryService hold the fulfilment back until every input is realised, rather than have it
+ * occupy a thread waiting for them, so that chains of promises run as a dependency graph without
+ * parking threads (or deadlocking a bounded pool).
+ * 
+ * DynamicProxyPromissoryService and GeneratedProxyPromissoryService hold fulfilments back; other
+ * services execute them straight away, in which case they wait for their inputs as usual.
+ * 
+ * @author steve
+ */
+public interface DataflowFulfilment<T> extends Fulfilment<T>
+{
+    /**
+     * @return the implicit futures which execute() uses. Values which aren't implicit futures are
+     * taken to be realised already.
+     */
+    public Collection<?> getInputs();
+}
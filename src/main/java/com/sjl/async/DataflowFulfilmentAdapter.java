@@ -0,0 +1,25 @@
+package com.sjl.async;
+
+import java.util.*;
+
+public abstract class DataflowFulfilmentAdapter<T> extends FulfilmentAdapter<T> implements DataflowFulfilment<T>
+{
+    private Collection<?> inputs;
+    
+    public DataflowFulfilmentAdapter(Class<T> aResultType, Object... anInputs)
+    {
+        this(aResultType, null, Arrays.asList(anInputs));
+    }
+    
+    public DataflowFulfilmentAdapter(Class<T> aResultType, T aDefaultResult, Collection<?> anInputs)
+    {
+        super(aResultType, aDefaultResult);
+        inputs = anInputs;
+    }
+    
+    @Override
+    public Collection<?> getInputs()
+    {
+        return inputs;
+    }
+}
@@ -0,0 +1,119 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A PromissoryService with its own pool of threads, which takes queued fulfilments in order of 
+ * the deadlines of their SLAs (earliest deadline first) rather than the order they were made.
+ * Attempts whose SLA is not a DeadlineSLA, and promises, which have no SLA, run only when no
+ * attempt with a deadline is waiting. An attempt whose SLA has already been exceeded by the time 
+ * a thread is free is never started; it goes straight to its default result.
+ * 
+ * Closing the service stops it accepting new fulfilments; those already queued are still run.
+ * 
+ * @author steve
+ */
+public class DeadlineOrderedPromissoryService implements PromissoryService, AutoCloseable
+{
+    private ThreadPoolExecutor executor;
+    private GeneratedProxyFactory proxies;
+    
+    public DeadlineOrderedPromissoryService(int aThreads)
+    {
+        executor = new ThreadPoolExecutor(
+            aThreads, aThreads, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() 
+            {
+                private AtomicInteger count = new AtomicInteger();
+                
+                @Override
+                public Thread newThread(Runnable aRunnable)
+                {
+                    Thread _t = new Thread(aRunnable, "deadline-ordered-" + count.incrementAndGet());
+                    _t.setDaemon(true);
+                    return _t;
+                }
+            });
+        proxies = new GeneratedProxyFactory();
+    }
+
+    @Override
+    public <T> T promise(Fulfilment<T> aPromise)
+    throws RejectedExecutionException
+    {
+        return attempt(aPromise, ServiceLevelAgreement.NULL_OBJECT);
+    }
+
+    @Override
+    public <T> T attempt(final Fulfilment<T> aPromise, final ServiceLevelAgreement anSLA)
+    throws RejectedExecutionException
+    {
+        checkSatisfiable(aPromise);
+        
+        final CancellationToken _token = CancellationToken.of(aPromise);
+        DeadlineOrderedTask<T> _task = new DeadlineOrderedTask<T>(new Callable<T>()
+        {
+            @Override
+            public T call() throws Exception
+            {
+                return CancellationToken.execute(aPromise, _token);
+            }
+        }, anSLA, _token);
+        
+        // the FutureWithSLA must adopt the task before it can be breached in the queue
+        final FutureWithSLA<T> _f = new FutureWithSLA<T>(_task, anSLA)
+        {
+            @Override
+            protected void whenSLAExceeded()
+            {
+                aPromise.onBreachSLA(anSLA);
+            }
+
+            @Override
+            protected void whenExecutionException(Throwable anExc)
+            {
+                aPromise.onException(anExc);
+            }
+
+            @Override
+            protected T createDefaultResult()
+            {
+                return aPromise.createDefaultResult();
+            }
+        };
+        _f.adoptNested();
+        executor.execute(_task);
+        
+        // only once the executor has accepted it, so that a rejected task is never breached too
+        _f.startClock();
+        
+        return proxies.create(_f, aPromise.getResultType());
+    }
+    
+    /**
+     * @return the number of fulfilments waiting for a thread
+     */
+    public int getQueued()
+    {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdown();
+    }
+    
+    private <T> void checkSatisfiable(final Fulfilment<T> aTask)
+    throws RejectedExecutionException
+    {
+        if (!proxies.canProxy(aTask.getResultType()))
+            throw new RejectedExecutionException(
+                "this implementation is only able to satisfy interfaces and non-final classes " +
+                "with a no-arg constructor as return-types");
+        
+        // up front, so that generating the proxy class doesn't eat into the deadline
+        proxies.prepare(aTask.getResultType());
+    }
+}
@@ -0,0 +1,63 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A task which queues in order of the deadline of its SLA, earliest first, ahead of any task 
+ * without a deadline - those queue in the order they were submitted. A task whose SLA has already 
+ * been exceeded by the time a thread gets to it is not executed: it is breached instead.
+ * 
+ * @author steve
+ */
+class DeadlineOrderedTask<T> extends NotifyingFutureTask<T> implements Comparable<DeadlineOrderedTask<?>>
+{
+    private static final AtomicLong sequence = new AtomicLong();
+    
+    private final ServiceLevelAgreement sla;
+    private final boolean hasDeadline;
+    private final long deadline;
+    private final long order;
+    
+    DeadlineOrderedTask(Callable<T> aCallable, ServiceLevelAgreement anSLA, CancellationToken aToken)
+    {
+        super(aCallable, aToken);
+        sla = anSLA;
+        hasDeadline = anSLA instanceof DeadlineSLA;
+        deadline = hasDeadline ? ((DeadlineSLA) anSLA).getDeadline() : 0;
+        order = sequence.incrementAndGet();
+    }
+    
+    @Override
+    public void run()
+    {
+        if (!isDone() && sla.isExceeded())
+        {
+            FutureWithSLA<?> _owner = getOwner();
+            if (_owner != null)
+                _owner.breach();
+            else
+                cancel(false);
+            return;
+        }
+        
+        super.run();
+    }
+
+    @Override
+    public int compareTo(DeadlineOrderedTask<?> anOther)
+    {
+        if (hasDeadline != anOther.hasDeadline)
+            return hasDeadline ? -1 : 1;
+        
+        if (hasDeadline)
+        {
+            // deadlines are System.nanoTime()'s, so compare the difference rather than the values
+            long _diff = deadline - anOther.deadline;
+            if (_diff != 0)
+                return (_diff < 0) ? -1 : 1;
+        }
+        
+        return Long.compare(order, anOther.order);
+    }
+}
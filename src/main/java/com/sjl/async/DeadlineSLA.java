@@ -0,0 +1,15 @@
+package com.sjl.async;
+
+/**
+ * A ServiceLevelAgreement which is exceeded at a known instant, so that work held to it can be 
+ * abandoned as soon as that instant passes rather than when somebody next asks for its result.
+ * 
+ * @author steve
+ */
+public interface DeadlineSLA extends ServiceLevelAgreement
+{
+    /**
+     * @return the instant, in terms of System.nanoTime(), at which this SLA is exceeded
+     */
+    public long getDeadline();
+}
@@ -0,0 +1,295 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * A hashed timing wheel whose single daemon thread hands tasks to an executor at (or within one
+ * tick after) their deadlines. Scheduling is a lock-free enqueue and cancellation just forgets the
+ * task, so hundreds of thousands of outstanding deadlines cost little more than the memory they
+ * occupy.
+ *
+ * Tasks run on the executor rather than the wheel's thread, so that one slow task can't hold up
+ * every other deadline - by default on a small, shared pool of daemon threads with a bounded queue.
+ * If the executor rejects a task (by default, because the queue is full) the wheel's thread runs it
+ * itself, so a burst of expiries is slowed down rather than dropped or met with ever more threads.
+ * The wheel's thread parks while there are no deadlines to wait for, and carries on turning if
+ * anything it does throws.
+ *
+ * @author steve
+ */
+class DeadlineWheel
+{
+    static final int EXPIRY_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    static final int EXPIRY_QUEUE = 4096;
+
+    // must be initialised before SHARED, which uses it
+    private static final Executor EXPIRY = newExpiryExecutor();
+
+    static final DeadlineWheel SHARED = new DeadlineWheel(Nanoseconds.fromMilliseconds(1), 1024);
+
+    private final long tick;
+    private final Deadline[] buckets;
+    private final int mask;
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Deadline> pending = new ConcurrentLinkedQueue<Deadline>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicInteger live = new AtomicInteger();
+    private volatile Thread thread;
+    private volatile boolean idle;
+
+    // only touched by the wheel's thread
+    private long start;
+    private long ticks;
+
+    /**
+     * @param the resolution of the wheel in nanoseconds
+     * @param the number of buckets, rounded up to a power of two
+     */
+    DeadlineWheel(long aTickNanos, int aBuckets)
+    {
+        this(aTickNanos, aBuckets, EXPIRY);
+    }
+
+    /**
+     * @param the resolution of the wheel in nanoseconds
+     * @param the number of buckets, rounded up to a power of two
+     * @param runs the tasks whose deadlines have passed
+     */
+    DeadlineWheel(long aTickNanos, int aBuckets, Executor anExecutor)
+    {
+        tick = aTickNanos;
+        buckets = new Deadline[Integer.highestOneBit(aBuckets - 1) << 1];
+        mask = buckets.length - 1;
+        executor = anExecutor;
+    }
+
+    /**
+     * @param the instant, in terms of System.nanoTime(), at which to run aTask
+     * @return a handle with which the task can be cancelled
+     */
+    public Deadline schedule(long aDeadline, Runnable aTask)
+    {
+        Deadline _result = new Deadline(this, aDeadline, aTask);
+        live.incrementAndGet();
+        pending.add(_result);
+
+        if (!started.get() && started.compareAndSet(false, true))
+            begin();
+        else if (idle)
+            LockSupport.unpark(thread);
+
+        return _result;
+    }
+
+    /**
+     * @return true if the wheel's thread is parked because there are no deadlines to wait for
+     */
+    boolean isIdle()
+    {
+        return idle;
+    }
+
+    private void begin()
+    {
+        Thread _t = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                start = System.nanoTime();
+                while (true)
+                {
+                    try
+                    {
+                        turn();
+                    }
+                    catch (Throwable anExc)
+                    {
+                        // the buckets survive, so just report it and carry on from where we were
+                        report(anExc);
+                    }
+                }
+            }
+        }, "deadline-wheel");
+        _t.setDaemon(true);
+        thread = _t;
+        _t.start();
+    }
+
+    private void turn()
+    {
+        while (true)
+        {
+            awaitDeadlines();
+
+            long _sleep;
+            long _next = start + tick * (ticks + 1);
+            while ((_sleep = _next - System.nanoTime()) > 0)
+                LockSupport.parkNanos(this, _sleep);
+
+            transferPending();
+            expire((int) (ticks & mask));
+            ticks++;
+        }
+    }
+
+    private void awaitDeadlines()
+    {
+        if (live.get() > 0)
+            return;
+
+        // schedulers count their deadline before reading idle, so one of us sees the other
+        idle = true;
+        try
+        {
+            while (live.get() == 0)
+                LockSupport.park(this);
+        }
+        finally
+        {
+            idle = false;
+        }
+
+        // nothing live was due while we were parked, so skip the ticks that passed
+        ticks = Math.max(ticks, (System.nanoTime() - start) / tick);
+    }
+
+    private void transferPending()
+    {
+        for (Deadline _d = pending.poll(); _d != null; _d = pending.poll())
+        {
+            if (_d.isCancelled())
+                continue;
+
+            // tick n is processed no sooner than start + tick * (n + 1)
+            long _due = Math.max(ticks, (_d.deadline - start) / tick);
+            int _bucket = (int) (_due & mask);
+            _d.rounds = (_due - ticks) / buckets.length;
+            _d.next = buckets[_bucket];
+            buckets[_bucket] = _d;
+        }
+    }
+
+    private void expire(int aBucket)
+    {
+        Deadline _previous = null;
+        Deadline _d = buckets[aBucket];
+        while (_d != null)
+        {
+            Deadline _next = _d.next;
+            if (_d.isCancelled() || _d.rounds <= 0)
+            {
+                if (_previous == null)
+                    buckets[aBucket] = _next;
+                else
+                    _previous.next = _next;
+                _d.next = null;
+
+                Runnable _task = _d.take();
+                if (_task != null)
+                    dispatch(_task);
+            }
+            else
+            {
+                _d.rounds--;
+                _previous = _d;
+            }
+            _d = _next;
+        }
+    }
+
+    private void dispatch(Runnable aTask)
+    {
+        try
+        {
+            executor.execute(aTask);
+            return;
+        }
+        catch (RejectedExecutionException anExc)
+        {
+            // better late on this thread than never
+        }
+
+        try
+        {
+            aTask.run();
+        }
+        catch (Throwable anExc)
+        {
+            report(anExc);
+        }
+    }
+
+    private static void report(Throwable anExc)
+    {
+        Thread _t = Thread.currentThread();
+        _t.getUncaughtExceptionHandler().uncaughtException(_t, anExc);
+    }
+
+    private static Executor newExpiryExecutor()
+    {
+        // expiries are brief, so a few threads keep up; once the queue fills, dispatch() runs the
+        // overflow on the wheel's thread rather than starting more
+        ThreadPoolExecutor _executor = new ThreadPoolExecutor(EXPIRY_THREADS, EXPIRY_THREADS, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(EXPIRY_QUEUE), new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable aRunnable)
+            {
+                Thread _result = new Thread(aRunnable, "deadline-expiry-" + count.incrementAndGet());
+                _result.setDaemon(true);
+                return _result;
+            }
+        }, new ThreadPoolExecutor.AbortPolicy());
+        _executor.allowCoreThreadTimeOut(true);
+        return _executor;
+    }
+
+    static final class Deadline
+    {
+        private static final AtomicReferenceFieldUpdater<Deadline, Runnable> TASK =
+            AtomicReferenceFieldUpdater.newUpdater(Deadline.class, Runnable.class, "task");
+
+        private final DeadlineWheel wheel;
+        private final long deadline;
+        private volatile Runnable task;
+
+        // only touched by the wheel's thread
+        private long rounds;
+        private Deadline next;
+
+        Deadline(DeadlineWheel aWheel, long aDeadline, Runnable aTask)
+        {
+            wheel = aWheel;
+            deadline = aDeadline;
+            task = aTask;
+        }
+
+        public void cancel()
+        {
+            take();
+        }
+
+        boolean isCancelled()
+        {
+            return task == null;
+        }
+
+        /**
+         * @return the task, if neither cancelled nor already taken to run
+         */
+        Runnable take()
+        {
+            Runnable _task = task;
+            if (_task == null || !TASK.compareAndSet(this, _task, null))
+                return null;
+
+            wheel.live.decrementAndGet();
+            return _task;
+        }
+    }
+}
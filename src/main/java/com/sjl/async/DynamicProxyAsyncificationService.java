@@ -1,72 +1,245 @@
 package com.sjl.async;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Makes methods marked @ComputationallyIntensive return implicit futures. How each method is
+ * handled is worked out once per implementation class and method, and remembered as a MethodPlan,
+ * so that a call costs a map lookup and a MethodHandle invocation rather than reflection.
+ * 
+ * Methods which name a pool in their @ComputationallyIntensive annotation are promised by that
+ * pool's bulkhead rather than by the PromissoryService given here. Lazy methods which don't name
+ * a pool are promised by the lazy PromissoryService, if one is given.
+ * 
+ * Asyncifying an object which is already asyncified returns it unchanged, and a method which 
+ * itself returns an implicit future is not wrapped in a second one once that future is realised.
+ * 
+ * @author steve
+ */
 @SuppressWarnings("unchecked")
 public class DynamicProxyAsyncificationService implements AsyncificationService {
 
+	private static final Object[] NO_ARGS = new Object[0];
+	private static final MethodType INVOKER = MethodType.methodType(Object.class, Object.class, Object[].class);
+	
 	private PromissoryService promissory;
+	private PromissoryService lazyPromissory;
+	private Bulkheads bulkheads;
+	private ConcurrentMap<Class<?>, ConcurrentMap<Method, MethodPlan>> plans;
 	
 	public DynamicProxyAsyncificationService(PromissoryService aPromissory) {
+		this(aPromissory, new Bulkheads());
+	}
+	
+	public DynamicProxyAsyncificationService(PromissoryService aPromissory, Bulkheads aBulkheads) {
+		this(aPromissory, aPromissory, aBulkheads);
+	}
+	
+	/**
+	 * @param promises the results of methods which don't name a pool
+	 * @param promises the results of lazy methods which don't name a pool, typically a service 
+	 * using ExecutionMode.LAZY
+	 * @param the bulkheads for methods which do name a pool
+	 */
+	public DynamicProxyAsyncificationService(
+		PromissoryService aPromissory, PromissoryService aLazyPromissory, Bulkheads aBulkheads) {
 		promissory = aPromissory;
+		lazyPromissory = aLazyPromissory;
+		bulkheads = aBulkheads;
+		plans = new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, MethodPlan>>();
 	}
 	
 	@Override
 	public <T> T makeAsync(final T aT) {
+		// asyncifying twice would just nest one implicit future inside another
+		if (isAsync(aT))
+			return aT;
+		
 		return (T) Proxy.newProxyInstance(
 	            aT.getClass().getClassLoader(),
 	            aT.getClass().getInterfaces(),
-	            new InvocationHandler()
-	        {
-	            @Override
-	            public Object invoke(Object aProxy, final Method aMethod, final Object[] anArgs) throws Throwable
-	            {
-	            	if (aMethod.isAnnotationPresent(ComputationallyIntensive.class)) {
-	            		return promise(aT, aMethod, anArgs);
-	            	} else {
-	            		return DynamicProxyAsyncificationService.this.invoke(aT, aMethod, anArgs);
-	            	}
-	            }
-	        });
+	            new AsyncHandler(aT, getPlans(aT.getClass())));
+	}
+	
+	private boolean isAsync(Object anObject) {
+		return Proxy.isProxyClass(anObject.getClass()) 
+			&& Proxy.getInvocationHandler(anObject) instanceof AsyncHandler;
+	}
+	
+	private ConcurrentMap<Method, MethodPlan> getPlans(Class<?> aClass) {
+		ConcurrentMap<Method, MethodPlan> _result = plans.get(aClass);
+		if (_result == null) {
+			ConcurrentMap<Method, MethodPlan> _new = new ConcurrentHashMap<Method, MethodPlan>();
+			_result = plans.putIfAbsent(aClass, _new);
+			if (_result == null)
+				_result = _new;
+		}
+		return _result;
+	}
+	
+	private MethodPlan newPlan(Method aMethod) {
+		ComputationallyIntensive _annotation = aMethod.getAnnotation(ComputationallyIntensive.class);
+		if (_annotation == null)
+			return new MethodPlan(aMethod, promissory);
+		
+		if (_annotation.pool().length() == 0)
+			return new MethodPlan(aMethod, _annotation.lazy() ? lazyPromissory : promissory);
+		
+		return new MethodPlan(aMethod, bulkheads.get(
+			_annotation.pool(), _annotation.concurrency(), _annotation.queueDepth(), 
+			_annotation.lazy() ? ExecutionMode.LAZY : ExecutionMode.SUBMIT));
 	}
 	
-	private <T> T promise(final T aT, final Method aMethod, final Object[] anArgs) {
-		return promissory.promise(new FulfilmentAdapter<T>((Class<T>)aT.getClass()) {
-			private RuntimeException exc;
+	private <R> R promise(final Object aT, final MethodPlan aPlan, final Object[] anArgs) {
+		Fulfilment<R> _fulfilment = new MethodFulfilment<R>(aT, aPlan, anArgs);
+		
+		if (aPlan.slaMillis > 0)
+			return aPlan.promissory.attempt(_fulfilment, 
+				ResponseTimeSLA.nanosFromNow(TimeUnit.MILLISECONDS.toNanos(aPlan.slaMillis)));
+		
+		return aPlan.promissory.promise(_fulfilment);
+	}
+	
+	private class AsyncHandler implements InvocationHandler {
+		private final Object target;
+		private final ConcurrentMap<Method, MethodPlan> methodPlans;
+		
+		public AsyncHandler(Object aTarget, ConcurrentMap<Method, MethodPlan> aPlans) {
+			target = aTarget;
+			methodPlans = aPlans;
+		}
+		
+		@Override
+		public Object invoke(Object aProxy, final Method aMethod, final Object[] anArgs) throws Throwable {
+			MethodPlan _plan = methodPlans.get(aMethod);
+			if (_plan == null) {
+				_plan = newPlan(aMethod);
+				MethodPlan _existing = methodPlans.putIfAbsent(aMethod, _plan);
+				if (_existing != null)
+					_plan = _existing;
+			}
 			
-			@Override
-			public T execute() {
-				return invoke(aT, aMethod, anArgs);
+			Object[] _args = (anArgs == null) ? NO_ARGS : anArgs;
+			if (_plan.async) {
+				PromiseEvents.Asyncified _event = PromiseEvents.asyncified(_plan.name, _plan.slaMillis);
+				Object _result = promise(target, _plan, _args);
+				if (_event != null)
+					_event.promised(_result);
+				return _result;
+			} else {
+				return _plan.invoke(target, _args);
 			}
-
-			@Override
-			public T createDefaultResult() {
-				throw exc;
+		}
+	}
+	
+	/**
+	 * A call to a method, reported under the method's name rather than its return type.
+	 */
+	private static class MethodFulfilment<R> extends FulfilmentAdapter<R> implements NamedFulfilment<R> {
+		private Object target;
+		private MethodPlan plan;
+		private Object[] args;
+		private RuntimeException exc;
+		
+		MethodFulfilment(Object aTarget, MethodPlan aPlan, Object[] anArgs) {
+			super((Class<R>)aPlan.returnType);
+			target = aTarget;
+			plan = aPlan;
+			args = anArgs;
+		}
+		
+		@Override
+		public String getName() {
+			return plan.name;
+		}
+		
+		@Override
+		public R execute() throws Exception {
+			try {
+				return (R) plan.invoke(target, args);
+			} catch (Exception anExc) {
+				throw anExc;
+			} catch (Error anErr) {
+				throw anErr;
+			} catch (Throwable anOther) {
+				throw new RuntimeException(anOther);
 			}
+		}
 
-			@Override
-			public void onException(Throwable anExc) {
-				if (RuntimeException.class.isAssignableFrom(anExc.getClass())) {
-					exc = (RuntimeException) anExc;
-				} else {
-					exc = new RuntimeException(anExc);
-				}
+		@Override
+		public R createDefaultResult() {
+			throw exc;
+		}
+		
+		@Override
+		public void onBreachSLA(ServiceLevelAgreement anSLA) {
+			exc = new RuntimeException(new TimeoutException(
+				"no result from " + plan.name + " within " + plan.slaMillis + "ms"));
+		}
+
+		@Override
+		public void onException(Throwable anExc) {
+			if (RuntimeException.class.isAssignableFrom(anExc.getClass())) {
+				exc = (RuntimeException) anExc;
+			} else {
+				exc = new RuntimeException(anExc);
 			}
-		});
+		}
 	}
 	
-	private <T> T invoke(T aT, Method aMethod, Object[] anArgs) {
-		try {
-			return (T) aMethod.invoke(aT, anArgs);
-		} catch (RuntimeException anExc) {
-			throw anExc;
-		} catch (IllegalAccessException anExc) {
-			throw new RuntimeException(anExc);
-		} catch (InvocationTargetException anExc) {
-			throw new RuntimeException(anExc.getCause());
+	/**
+	 * Everything needed to dispatch calls to one method: whether to promise its result, the type
+	 * to promise, who promises it and within what SLA, and a MethodHandle which invokes it on the 
+	 * implementation.
+	 */
+	static class MethodPlan {
+		final String name;
+		final boolean async;
+		final Class<?> returnType;
+		final PromissoryService promissory;
+		final long slaMillis;
+		final MethodHandle handle;
+		
+		MethodPlan(Method aMethod, PromissoryService aPromissory) {
+			ComputationallyIntensive _annotation = aMethod.getAnnotation(ComputationallyIntensive.class);
+			name = aMethod.getDeclaringClass().getName() + "." + aMethod.getName();
+			returnType = aMethod.getReturnType();
+			async = (_annotation != null) && isPromisable(returnType);
+			promissory = aPromissory;
+			slaMillis = (_annotation != null) ? _annotation.slaMillis() : 0;
+			handle = toHandle(aMethod);
+		}
+		
+		Object invoke(Object aTarget, Object[] anArgs) throws Throwable {
+			return handle.invokeExact(aTarget, anArgs);
+		}
+		
+		private static boolean isPromisable(Class<?> aType) {
+			// primitives, arrays and final classes can't be stood in for by an implicit future
+			return !aType.isPrimitive() && !aType.isArray() && !Modifier.isFinal(aType.getModifiers());
+		}
+		
+		private static MethodHandle toHandle(Method aMethod) {
+			try {
+				if (!Modifier.isPublic(aMethod.getDeclaringClass().getModifiers()))
+					aMethod.setAccessible(true);
+				
+				return MethodHandles.lookup().unreflect(aMethod)
+					.asSpreader(Object[].class, aMethod.getParameterTypes().length)
+					.asType(INVOKER);
+			} catch (IllegalAccessException anExc) {
+				throw new IllegalStateException("unable to access " + aMethod, anExc);
+			}
 		}
 	}
 }
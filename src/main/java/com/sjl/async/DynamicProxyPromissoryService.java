@@ -1,116 +1,56 @@
 package com.sjl.async;
 
-import java.lang.reflect.*;
+import java.util.*;
 import java.util.concurrent.*;
 
 public class DynamicProxyPromissoryService implements PromissoryService
 {
     private ExecutorService executor;
+    private ExecutionMode mode;
+    private PromiseMetrics metrics;
     
     public DynamicProxyPromissoryService(ExecutorService anExecutor)
+    {
+        this(anExecutor, ExecutionMode.SUBMIT);
+    }
+    
+    public DynamicProxyPromissoryService(ExecutorService anExecutor, ExecutionMode aMode)
+    {
+        this(anExecutor, aMode, PromiseMetrics.NULL_OBJECT);
+    }
+    
+    public DynamicProxyPromissoryService(ExecutorService anExecutor, ExecutionMode aMode, PromiseMetrics aMetrics)
     {
         executor = anExecutor;
+        mode = aMode;
+        metrics = aMetrics;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public <T> T promise(final Fulfilment<T> aPromise)
+    public <T> T promise(Fulfilment<T> aPromise)
     throws RejectedExecutionException
     {
         checkSatisfiable(aPromise);
         
-        final FutureWithSLA<T> _f = new FutureWithSLA<T>(
-            executor.submit(newCallableTask(aPromise)), ServiceLevelAgreement.NULL_OBJECT)
-        {
-            @Override
-            protected void whenExecutionException(Throwable anExc)
-            {
-            	aPromise.onException((Exception)anExc);
-            }
-
-            @Override
-            protected T createDefaultResult()
-            {
-                return aPromise.createDefaultResult();
-            }            
-        };
-        
-        return (T) Proxy.newProxyInstance(
-            getClassLoader(aPromise.getResultType()), 
-            new Class<?>[]{ aPromise.getResultType() }, 
-            new InvocationHandler()
-        {
-            @Override
-            public Object invoke(Object aProxy, Method aMethod, Object[] aArgs) throws Throwable
-            {
-            	return aMethod.invoke(_f.get(), aArgs);
-            }
-        });
+        return FutureWithSLAInvocationHandler.newProxy(PromiseTask.create(
+            aPromise, ServiceLevelAgreement.NULL_OBJECT, executor, mode, metrics), aPromise.getResultType());
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public <T> T attempt(final Fulfilment<T> aPromise, final ServiceLevelAgreement anSLA)
+    public <T> T attempt(Fulfilment<T> aPromise, ServiceLevelAgreement anSLA)
     throws RejectedExecutionException
     {
         checkSatisfiable(aPromise);
         
-        final FutureWithSLA<T> _f = new FutureWithSLA<T>(executor.submit(newCallableTask(aPromise)), anSLA)
-        {
-            @Override
-            protected void whenSLAExceeded()
-            {
-                aPromise.onBreachSLA(anSLA);
-            }
-
-            @Override
-            protected void whenExecutionException(Throwable anExc)
-            {
-                aPromise.onException(anExc);
-            }
-
-            @Override
-            protected T createDefaultResult()
-            {
-                return aPromise.createDefaultResult();
-            }            
-        };
-    
-        return (T) Proxy.newProxyInstance(
-            getClassLoader(aPromise.getResultType()), 
-            new Class<?>[]{ aPromise.getResultType() }, 
-            new InvocationHandler()
-        {
-            @Override
-            public Object invoke(Object aProxy, Method aMethod, Object[] aArgs) throws Throwable
-            {
-                return aMethod.invoke(_f.get(), aArgs);
-            }            
-        });
+        return FutureWithSLAInvocationHandler.newProxy(PromiseTask.create(
+            aPromise, anSLA, executor, mode, metrics), aPromise.getResultType());
     }
-
+    
     private <T> void checkSatisfiable(final Fulfilment<T> aTask)
     throws RejectedExecutionException
     {
         if (!aTask.getResultType().isInterface())
             throw new RejectedExecutionException(
                 "this imlementation is only able to satisfy interfaces as return-types");
-    }    
-
-    private ClassLoader getClassLoader(Class<?> aClass)
-    {
-        return (aClass != null) ? aClass.getClassLoader() : getClass().getClassLoader();
-    }
-    
-    private <T> Callable<T> newCallableTask(final Fulfilment<T> aTask)
-    {
-        return new Callable<T>() 
-        {
-            @Override
-            public T call() throws Exception
-            {
-                return aTask.execute();
-            }            
-        };
     }
 }
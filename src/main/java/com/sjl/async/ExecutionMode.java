@@ -0,0 +1,36 @@
+package com.sjl.async;
+
+/**
+ * Determines which thread runs a promised Fulfilment.
+ * 
+ * @author steve
+ */
+public enum ExecutionMode
+{
+    /**
+     * Fulfilments always run on a thread of the ExecutorService; callers that need the result
+     * before it is realised wait for it.
+     */
+    SUBMIT,
+    
+    /**
+     * Fulfilments are queued on the ExecutorService, but the first caller to need the result of a
+     * promise whose Fulfilment has not yet been started claims it and runs it on its own thread. 
+     * This saves a context switch, and nested promises cannot deadlock a bounded pool by waiting 
+     * for work queued behind them. 
+     * 
+     * Only applies to promise(), since a caller cannot abandon work it is running itself when an 
+     * SLA is breached - attempt() always waits within its SLA instead.
+     */
+    HELP_OUT,
+    
+    /**
+     * Fulfilments are not queued on the ExecutorService until their result is first needed, or 
+     * they are prefetched (see Promises.prefetch), so work whose result is never used is never done.
+     * 
+     * The first caller to need the result of a promise runs its Fulfilment on its own thread, as
+     * with HELP_OUT. The first caller to need the result of an attempt queues its Fulfilment and
+     * waits within the SLA, which has been running all the while.
+     */
+    LAZY
+}
@@ -0,0 +1,27 @@
+package com.sjl.async;
+
+/**
+ * Hedges every fulfilment after the same delay.
+ * 
+ * @author steve
+ */
+public class FixedHedgePolicy implements HedgePolicy
+{
+    private long delay;
+    
+    public FixedHedgePolicy(long aDelayNanos)
+    {
+        delay = aDelayNanos;
+    }
+    
+    @Override
+    public long getHedgeDelay(Fulfilment<?> aPromise)
+    {
+        return delay;
+    }
+    
+    @Override
+    public void record(Fulfilment<?> aPromise, long aNanos)
+    {
+    }
+}
@@ -1,6 +1,7 @@
 package com.sjl.async;
 
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Wrap a Future<T> such that attempts to get() the result will be
@@ -10,7 +11,11 @@ import java.util.concurrent.*;
  * will be cancelled and ensuing calls to get() will return immediately
  * with the "otherwise" result.
  * 
- * There are 3 template methods you can override:
+ * There are 6 template methods you can override:
+ * 
+ * whenPending() is invoked on a calling thread that is about to wait for
+ * the nested Future, allowing the creator to help out (for example by 
+ * running a task that has not yet started on the calling thread).
  * 
  * whenSLAExceeded() allows the creator to perform one-time operations if
  * the SLA is not met (for example logging said failure).
@@ -21,16 +26,84 @@ import java.util.concurrent.*;
  * createDefaultResult() allows the creator to specify a return value 
  * that should be used if the Future does not complete within the given SLA.
  * 
+ * whenPrefetched() is invoked, at most once and only while pending, when
+ * prefetch() is called, allowing the creator to start work that it had 
+ * deferred until the result was needed.
+ * 
+ * whenBlocked(aNanos) is invoked on a calling thread that waited for the
+ * result to be settled, with the time it spent waiting (for example to 
+ * record it).
+ * 
+ * A FutureWithSLA is safe to share between threads. It moves exactly once 
+ * from PENDING to one of REALISED, DEFAULTED or FAILED, and whichever thread 
+ * makes that move is the only one to run the template methods - any other 
+ * threads that were waiting are handed the same outcome. Once settled, get() 
+ * costs a single volatile read. Waiting never holds a monitor, so a virtual 
+ * thread blocked in get() unmounts from its carrier rather than pinning it.
+ * 
+ * If the value (or default result) is itself an implicit future, get() hands 
+ * back that implicit future's own value once it is realised, so that calls 
+ * go through just one proxy rather than a chain of them.
+ * 
+ * If the SLA is a DeadlineSLA and the FutureWithSLA has been start()ed, it is 
+ * also settled by a shared timer the moment the deadline passes, whether or 
+ * not anyone has called get(), so breached work is cancelled promptly. In that 
+ * case the template methods run on one of the timer's expiry threads.
+ * 
+ * whenReady(aListener) chains work onto the FutureWithSLA without waiting:
+ * the listener runs once get() can return without blocking, either on the
+ * thread that settles the FutureWithSLA or, if the nested Future is a task 
+ * queued by a PromissoryService, on the thread that completes that task.
+ * 
+ * Callers blocked in get(), and breaches of the SLA, are reported as Java Flight 
+ * Recorder events if those are enabled (see PromiseEvents).
+ * 
  * @author steve
  *
  * @param <T> the return type of the future
  */
 public class FutureWithSLA<T>
 {
-    private Future<T> future;    
-    private ServiceLevelAgreement sla;
+    public enum State 
+    {
+        /** not yet settled */
+        PENDING, 
+        /** settled with the value computed by the Future */
+        REALISED, 
+        /** settled with the default result because of SLA breach, cancellation or a null value */
+        DEFAULTED, 
+        /** settled with the default result because the Future threw an exception */
+        FAILED
+    }
+    
+    private static final Object UNSETTLED = new Object();
+    
+    // field updaters rather than Atomic* objects, so that each FutureWithSLA is a single allocation
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<FutureWithSLA, State> STATE = 
+        AtomicReferenceFieldUpdater.newUpdater(FutureWithSLA.class, State.class, "state");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<FutureWithSLA, Listener> LISTENERS = 
+        AtomicReferenceFieldUpdater.newUpdater(FutureWithSLA.class, Listener.class, "listeners");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<FutureWithSLA, CountDownLatch> SETTLED = 
+        AtomicReferenceFieldUpdater.newUpdater(FutureWithSLA.class, CountDownLatch.class, "settled");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<FutureWithSLA> PROMISE_ID = 
+        AtomicLongFieldUpdater.newUpdater(FutureWithSLA.class, "promiseId");
     
-    private T result;    
+    private final Future<T> future; // null if a subclass is its own task
+    private final ServiceLevelAgreement sla;
+    
+    private volatile State state = State.PENDING;
+    private volatile CountDownLatch settled; // only made if one thread has to wait for another to settle
+    private volatile Object result = UNSETTLED;
+    private boolean breached; // published by the write to result
+    private volatile boolean prefetched;
+    private volatile long promiseId; // only taken if an event needs it
+    
+    private volatile Listener listeners;
+    private volatile DeadlineWheel.Deadline expiry;
     
     public FutureWithSLA(Future<T> aFuture, ServiceLevelAgreement anSLA)
     {
@@ -38,58 +111,440 @@ public class FutureWithSLA<T>
         sla = anSLA;
     }
     
+    /**
+     * For a subclass which is its own task, so overrides the methods that reach the nested Future
+     */
+    FutureWithSLA(ServiceLevelAgreement anSLA)
+    {
+        this(null, anSLA);
+    }
+    
+    /**
+     * Starts the clock on a DeadlineSLA, so that this is settled the moment the deadline passes 
+     * rather than when somebody next calls get(). Call it once, after construction - the timer 
+     * may run the template methods as soon as it is called.
+     * 
+     * @return this
+     */
+    public FutureWithSLA<T> start()
+    {
+        adoptNested();
+        startClock();
+        return this;
+    }
+    
+    /**
+     * Has a nested NotifyingFutureTask tell this as soon as it is done
+     */
+    void adoptNested()
+    {
+        if (future instanceof NotifyingFutureTask<?>)
+            ((NotifyingFutureTask<?>) future).setOwner(this);
+    }
+    
+    /**
+     * Starts the clock on a DeadlineSLA. Creators which hand the nested task to an executor do 
+     * this only once the executor has accepted it, so that a rejected task is never breached too.
+     */
+    void startClock()
+    {
+        if (!(sla instanceof DeadlineSLA))
+            return;
+        
+        DeadlineWheel.Deadline _expiry = DeadlineWheel.SHARED.schedule(((DeadlineSLA) sla).getDeadline(), new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                breach();
+            }
+        });
+        expiry = _expiry;
+        
+        // publish() reads expiry once settled, so if it missed this one we see that it settled
+        if (state != State.PENDING)
+            _expiry.cancel();
+    }
+    
     public T get()
     {
+        Object _result = result;
+        if (_result != UNSETTLED)
+            return unwrap(_result);
+        
+        return realise(sla);
+    }
+    
+    public State getState()
+    {
+        return state;
+    }
+    
+    /**
+     * Asks for the result to be worked on now, without waiting for it. Only makes a difference 
+     * if the creator defers work until it is needed.
+     */
+    public void prefetch()
+    {
+        // racing callers may both get through, so whenPrefetched must tolerate that
+        if (prefetched || state != State.PENDING)
+            return;
+        
+        prefetched = true;
+        whenPrefetched();
+    }
+    
+    /**
+     * @return the id which flight recorder events give this, taken the first time one asks
+     */
+    long getPromiseId()
+    {
+        long _result = promiseId;
+        if (_result == 0)
+        {
+            PROMISE_ID.compareAndSet(this, 0, PromiseEvents.nextId());
+            _result = promiseId;
+        }
+        return _result;
+    }
+    
+    /**
+     * @return true while no work has started on this, because its creator defers work until it 
+     * is needed
+     */
+    boolean isDeferred()
+    {
+        return false;
+    }
+    
+    /**
+     * Settles this with the default result, because nobody wants the value any more, and cancels 
+     * the nested Future, unless already settled.
+     */
+    public void abandon()
+    {
+        if (STATE.compareAndSet(this, State.PENDING, State.DEFAULTED))
+        {
+            cancelNested();
+            publish(State.DEFAULTED, null, null, false);
+        }
+    }
+    
+    /**
+     * @param aListener to run (once) as soon as get() can return without waiting - immediately, 
+     * on the calling thread, if that is already the case.
+     */
+    public void whenReady(Runnable aListener)
+    {
+        while (true)
+        {
+            Listener _head = listeners;
+            if (_head == Listener.READY)
+            {
+                Listener.run(aListener);
+                return;
+            }
+            
+            if (LISTENERS.compareAndSet(this, _head, new Listener(aListener, _head)))
+                return;
+        }
+    }
+    
+    void notifyReady()
+    {
+        Listener _head = LISTENERS.getAndSet(this, Listener.READY);
+        if (_head == Listener.READY)
+            return;
+        
+        // the stack holds the most recently added listener first
+        Listener _reversed = null;
+        for (Listener _l = _head; _l != null; _l = _l.next)
+            _reversed = new Listener(_l.listener, _reversed);
+        
+        for (Listener _l = _reversed; _l != null; _l = _l.next)
+            Listener.run(_l.listener);
+    }
+    
+    private T realise(ServiceLevelAgreement anSLA)
+    {
+        if (state != State.PENDING)
+            return awaitSettled();
+        
         try
         {
-            if (result != null)
-                return result;
+            if (isNestedCancelled())
+                return settle(State.DEFAULTED, null, null, false);
             
-            if (future.isCancelled())
-                return getDefaultResult();
+            if (anSLA.isExceeded())            
+                return settle(State.DEFAULTED, null, null, true);
             
-            if (sla.isExceeded())            
-                timeout();      
-            else            
-                result = sla.get(future);
+            whenPending();
             
-            return (result != null) ? 
-                result : getDefaultResult();
+            T _result = waitFor(anSLA);
+            
+            return (_result != null) ? 
+                settle(State.REALISED, _result, null, false) : 
+                settle(State.DEFAULTED, null, null, false);
         }
         catch (TimeoutException anExc)
         {
-            timeout();
-            return result;
+            return settle(State.DEFAULTED, null, null, true);
         }
         catch (InterruptedException anExc)
         {
             Thread.interrupted(); // clear interrupt
-            return getDefaultResult();
+            return settle(State.DEFAULTED, null, null, false);
         }
         catch (CancellationException anExc)
         {            
-            return getDefaultResult();
+            return settle(State.DEFAULTED, null, null, false);
         }
         catch (ExecutionException anExc)
         {            
-            whenExecutionException(anExc.getCause());
-            return getDefaultResult();
+            return settle(State.FAILED, null, anExc.getCause(), false);
         }        
     }
     
-    private T getDefaultResult()
+    /**
+     * @return true if this was settled with the default result because its SLA was exceeded
+     */
+    public boolean isSLABreached()
+    {
+        return result != UNSETTLED && breached;
+    }
+    
+    /**
+     * Settles this with the default result as though the SLA were exceeded, unless already settled
+     * or the nested Future has already completed, in which case its outcome is used however late
+     * it is. 
+     */
+    void breach()
+    {
+        if (isNestedDone())
+        {
+            try
+            {
+                if (state == State.PENDING)
+                    realise(ServiceLevelAgreement.NULL_OBJECT);
+            }
+            catch (RuntimeException anExc)
+            {
+                // remembered for callers of get()
+            }
+        }
+        else if (STATE.compareAndSet(this, State.PENDING, State.DEFAULTED))
+        {
+            publish(State.DEFAULTED, null, null, true);
+        }
+    }
+    
+    private T waitFor(ServiceLevelAgreement anSLA)
+    throws InterruptedException, ExecutionException, TimeoutException
     {
-        if (result == null)
-            result = createDefaultResult();
+        PromiseEvents.Blocked _event = PromiseEvents.blocked(this);
+        long _start = System.nanoTime();
+        try
+        {
+            return awaitNested(anSLA);
+        }
+        finally
+        {
+            whenBlocked(System.nanoTime() - _start);
+            if (_event != null)
+                _event.commit();
+        }
+    }
+    
+    /**
+     * @return true if the nested Future is done and completed normally, however this is settled
+     */
+    boolean isNestedSuccessful()
+    {
+        if (!isNestedDone() || isNestedCancelled())
+            return false;
         
-        return result;
+        try
+        {
+            awaitNested(ServiceLevelAgreement.NULL_OBJECT);
+            return true;
+        }
+        catch (Exception anExc)
+        {
+            return false;
+        }
+    }
+    
+    // the nested Future is only reached through these, so that a subclass which is its own task 
+    // needn't make a Future as well
+    
+    boolean isNestedDone()
+    {
+        return future.isDone();
     }
     
-    private void timeout()
+    boolean isNestedCancelled()
+    {
+        return future.isCancelled();
+    }
+    
+    void cancelNested()
     {
         future.cancel(true);
-        whenSLAExceeded();
-        result = getDefaultResult();
+    }
+    
+    T awaitNested(ServiceLevelAgreement anSLA)
+    throws InterruptedException, ExecutionException, TimeoutException
+    {
+        return anSLA.get(future);
+    }
+    
+    private T settle(State aState, T aValue, Throwable aCause, boolean anSLABreached)
+    {
+        if (!STATE.compareAndSet(this, State.PENDING, aState))
+            return awaitSettled();
+        
+        return unwrap(publish(aState, aValue, aCause, anSLABreached));
+    }
+    
+    private Object publish(State aState, T aValue, Throwable aCause, boolean anSLABreached)
+    {
+        DeadlineWheel.Deadline _expiry = expiry;
+        if (_expiry != null)
+            _expiry.cancel();
+        
+        Object _result;
+        try
+        {
+            if (anSLABreached)
+            {
+                breached = true;
+                cancelNested();
+                PromiseEvents.breached(this, sla);
+                whenSLAExceeded();
+            }
+            
+            if (aCause != null)
+                whenExecutionException(aCause);
+            
+            _result = (aState == State.REALISED) ? aValue : createDefaultResult();
+            if (ImplicitFutures.isImplicit(_result))
+                _result = new Nested(_result);
+        }
+        catch (Throwable anExc)
+        {
+            // remember and re-throw on every get()
+            _result = new Rethrow(anExc);
+        }
+        
+        result = _result;
+        CountDownLatch _settled = settled;
+        if (_settled != null)
+            _settled.countDown();
+        notifyReady();
+        return _result;
+    }
+    
+    private T awaitSettled()
+    {
+        if (result != UNSETTLED)
+            return unwrap(result);
+        
+        // the settling thread reads settled after writing result, so one of us sees the other
+        SETTLED.compareAndSet(this, null, new CountDownLatch(1));
+        CountDownLatch _settled = settled;
+        
+        PromiseEvents.Blocked _event = PromiseEvents.blocked(this);
+        long _start = System.nanoTime();
+        boolean _interrupted = false;
+        try
+        {
+            while (true)
+            {
+                try
+                {
+                    if (result == UNSETTLED)
+                        _settled.await();
+                    return unwrap(result);
+                }
+                catch (InterruptedException anExc)
+                {
+                    _interrupted = true;
+                }
+            }
+        }
+        finally
+        {
+            whenBlocked(System.nanoTime() - _start);
+            if (_event != null)
+                _event.commit();
+            if (_interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+    
+    ServiceLevelAgreement getSLA()
+    {
+        return sla;
+    }
+    
+    /**
+     * @return what this is known as in flight recordings, or null if it has no name
+     */
+    String getName()
+    {
+        return null;
+    }
+    
+    /**
+     * @return true if get() would return without waiting
+     */
+    boolean isReady()
+    {
+        Object _result = result;
+        if (_result == UNSETTLED)
+            return isNestedDone();
+        
+        return !(_result instanceof Nested) || ImplicitFutures.isRealised(((Nested) _result).implicit);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private T unwrap(Object aResult)
+    {
+        if (aResult instanceof Rethrow)
+            ((Rethrow)aResult).rethrow();
+        
+        if (aResult instanceof Nested)
+            return collapse((Nested) aResult);
+        
+        return (T) aResult;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private T collapse(Nested aNested)
+    {
+        // until the nested implicit future is realised, hand it back rather than wait for it
+        if (!ImplicitFutures.isRealised(aNested.implicit))
+            return (T) aNested.implicit;
+        
+        try
+        {
+            Object _value = ImplicitFutures.unwrap(aNested.implicit);
+            if (_value == null)
+                return (T) aNested.implicit;
+            
+            // the same value, just without the indirection
+            result = _value;
+            return (T) _value;
+        }
+        catch (RuntimeException anExc)
+        {
+            // invoking the nested implicit future will meet the same exception
+            return (T) aNested.implicit;
+        }
+    }
+    
+    protected void whenPending()
+    {
     }
     
     protected void whenSLAExceeded()
@@ -104,4 +559,69 @@ public class FutureWithSLA<T>
     {
         return null;
     }
+    
+    protected void whenPrefetched()
+    {
+    }
+    
+    protected void whenBlocked(long aNanos)
+    {
+    }
+    
+    private static class Listener
+    {
+        static final Listener READY = new Listener(null, null);
+        
+        final Runnable listener;
+        final Listener next;
+        
+        Listener(Runnable aListener, Listener aNext)
+        {
+            listener = aListener;
+            next = aNext;
+        }
+        
+        static void run(Runnable aListener)
+        {
+            try
+            {
+                aListener.run();
+            }
+            catch (RuntimeException anExc)
+            {
+                // don't let a misbehaving listener break whichever thread happens to notify
+                Thread _t = Thread.currentThread();
+                _t.getUncaughtExceptionHandler().uncaughtException(_t, anExc);
+            }
+        }
+    }
+    
+    private static class Nested
+    {
+        private final Object implicit;
+        
+        public Nested(Object anImplicit)
+        {
+            implicit = anImplicit;
+        }
+    }
+    
+    private static class Rethrow
+    {
+        private final Throwable exc;
+        
+        public Rethrow(Throwable anExc)
+        {
+            exc = anExc;
+        }
+        
+        public void rethrow()
+        {
+            if (exc instanceof RuntimeException)
+                throw (RuntimeException) exc;
+            if (exc instanceof Error)
+                throw (Error) exc;
+            throw new RuntimeException(exc);
+        }
+    }
 }
@@ -0,0 +1,64 @@
+package com.sjl.async;
+
+import java.lang.reflect.*;
+
+/**
+ * Dispatches invocations on a java.lang.reflect.Proxy to the value realised by a FutureWithSLA.
+ * 
+ * @author steve
+ */
+class FutureWithSLAInvocationHandler implements InvocationHandler
+{
+    private final FutureWithSLA<?> future;
+    
+    public FutureWithSLAInvocationHandler(FutureWithSLA<?> aFuture)
+    {
+        future = aFuture;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public static <T> T newProxy(FutureWithSLA<T> aFuture, Class<T> aClass)
+    {
+        return (T) Proxy.newProxyInstance(
+            getClassLoader(aClass), 
+            new Class<?>[]{ aClass }, 
+            new FutureWithSLAInvocationHandler(aFuture));
+    }
+    
+    /**
+     * @return a proxy whose handler is aTask itself, saving the allocation of a handler
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T newProxy(PromiseTask<T> aTask, Class<T> aClass)
+    {
+        return (T) Proxy.newProxyInstance(getClassLoader(aClass), new Class<?>[]{ aClass }, aTask);
+    }
+    
+    /**
+     * @return the FutureWithSLA behind anObject if it is a proxy created by this class, 
+     * otherwise null
+     */
+    public static FutureWithSLA<?> futureOf(Object anObject)
+    {
+        if (anObject == null || !Proxy.isProxyClass(anObject.getClass()))
+            return null;
+        
+        InvocationHandler _handler = Proxy.getInvocationHandler(anObject);
+        if (_handler instanceof PromiseTask<?>)
+            return (PromiseTask<?>) _handler;
+        
+        return (_handler instanceof FutureWithSLAInvocationHandler) ? 
+            ((FutureWithSLAInvocationHandler) _handler).future : null;
+    }
+    
+    @Override
+    public Object invoke(Object aProxy, Method aMethod, Object[] aArgs) throws Throwable
+    {
+        return aMethod.invoke(future.get(), aArgs);
+    }
+    
+    private static ClassLoader getClassLoader(Class<?> aClass)
+    {
+        return (aClass != null) ? aClass.getClassLoader() : FutureWithSLAInvocationHandler.class.getClassLoader();
+    }
+}
@@ -0,0 +1,241 @@
+package com.sjl.async;
+
+import static net.bytebuddy.matcher.ElementMatchers.*;
+
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.NamingStrategy;
+import net.bytebuddy.NamingStrategy.Suffixing.BaseNameResolver;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.description.modifier.*;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.loading.*;
+import net.bytebuddy.dynamic.scaffold.subclass.ConstructorStrategy;
+import net.bytebuddy.implementation.*;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+
+/**
+ * Generates, once per result-type, a class which implements (or extends) that type and
+ * forwards every overridable public method straight to the realised value of a
+ * FutureWithSLA.
+ *
+ * Unlike java.lang.reflect.Proxy the generated methods invoke the delegate with an
+ * ordinary invokeinterface/invokevirtual, so there is no Method.invoke per call, and
+ * non-final concrete classes with a non-private no-arg constructor can be proxied as
+ * well as interfaces. Note that the no-arg constructor of a concrete class is run when
+ * each proxy is created, and final methods cannot be forwarded.
+ *
+ * The generated classes are remembered against their result-types with ClassValues, which
+ * don't keep either class from being unloaded along with its class loader.
+ *
+ * @author steve
+ */
+class GeneratedProxyFactory
+{
+    private static final String SUFFIX = "ImplicitFuture";
+    private static final String FUTURE_FIELD = "future";
+
+    // shared so that each result-type is only ever generated once per JVM
+    private static final ClassValue<Constructor<?>> CONSTRUCTORS = new ClassValue<Constructor<?>>()
+    {
+        @Override
+        protected Constructor<?> computeValue(Class<?> aClass)
+        {
+            // racing threads may both generate, but only one class is ever used
+            try
+            {
+                return generate(aClass).getConstructor(FutureWithSLA.class);
+            }
+            catch (NoSuchMethodException anExc)
+            {
+                throw new IllegalStateException(anExc);
+            }
+        }
+    };
+
+    // null for any class which wasn't generated here
+    private static final ClassValue<Field> FUTURE_FIELDS = new ClassValue<Field>()
+    {
+        @Override
+        protected Field computeValue(Class<?> aClass)
+        {
+            if (!aClass.getName().contains("$" + SUFFIX + "$"))
+                return null;
+
+            try
+            {
+                Field _result = aClass.getDeclaredField(FUTURE_FIELD);
+                if (_result.getType() != FutureWithSLA.class)
+                    return null;
+
+                _result.setAccessible(true);
+                return _result;
+            }
+            catch (NoSuchFieldException anExc)
+            {
+                return null;
+            }
+        }
+    };
+
+    public boolean canProxy(Class<?> aClass)
+    {
+        if (aClass == null || aClass.isPrimitive() || aClass.isArray())
+            return false;
+
+        if (aClass.isInterface())
+            return true;
+
+        if (Modifier.isFinal(aClass.getModifiers()))
+            return false;
+
+        try
+        {
+            return !Modifier.isPrivate(aClass.getDeclaredConstructor().getModifiers());
+        }
+        catch (NoSuchMethodException anExc)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Generates the proxy class for aClass, if it hasn't been already, so that a service can pay
+     * for that before it executes anything rather than between executing and returning a promise
+     */
+    public void prepare(Class<?> aClass)
+    throws RejectedExecutionException
+    {
+        getConstructor(aClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T create(FutureWithSLA<T> aFuture, Class<T> aClass)
+    throws RejectedExecutionException
+    {
+        Constructor<?> _constructor = getConstructor(aClass);
+        try
+        {
+            return (T) _constructor.newInstance(aFuture);
+        }
+        catch (InvocationTargetException anExc)
+        {
+            throw new RejectedExecutionException(
+                "unable to instantiate proxy for " + aClass.getName(), anExc.getCause());
+        }
+        catch (Exception anExc)
+        {
+            throw new RejectedExecutionException(
+                "unable to instantiate proxy for " + aClass.getName(), anExc);
+        }
+    }
+
+    /**
+     * @return the FutureWithSLA behind anObject if it is a proxy generated by this class, 
+     * otherwise null
+     */
+    public static FutureWithSLA<?> futureOf(Object anObject)
+    {
+        Field _field = (anObject != null) ? FUTURE_FIELDS.get(anObject.getClass()) : null;
+        if (_field == null)
+            return null;
+
+        try
+        {
+            return (FutureWithSLA<?>) _field.get(anObject);
+        }
+        catch (IllegalAccessException anExc)
+        {
+            throw new IllegalStateException(anExc);
+        }
+    }
+
+    private Constructor<?> getConstructor(Class<?> aClass)
+    throws RejectedExecutionException
+    {
+        try
+        {
+            return CONSTRUCTORS.get(aClass);
+        }
+        catch (RuntimeException anExc)
+        {
+            throw new RejectedExecutionException(
+                "unable to generate proxy for " + aClass.getName(), anExc);
+        }
+    }
+
+    private static Class<?> generate(Class<?> aClass)
+    throws NoSuchMethodException
+    {
+        // name the proxy after the result-type so that it lands in the same package
+        ByteBuddy _byteBuddy = new ByteBuddy().with(new NamingStrategy.SuffixingRandom(
+            SUFFIX, new BaseNameResolver.ForGivenType(TypeDescription.ForLoadedType.of(aClass))));
+
+        DynamicType.Builder<?> _builder;
+        Constructor<?> _super;
+        if (aClass.isInterface())
+        {
+            _builder = _byteBuddy
+                .subclass(Object.class, ConstructorStrategy.Default.NO_CONSTRUCTORS)
+                .implement(aClass);
+            _super = Object.class.getConstructor();
+        }
+        else
+        {
+            _builder = _byteBuddy
+                .subclass(aClass, ConstructorStrategy.Default.NO_CONSTRUCTORS);
+            _super = aClass.getDeclaredConstructor();
+        }
+
+        return _builder
+            .defineField(FUTURE_FIELD, FutureWithSLA.class, Visibility.PRIVATE, FieldManifestation.FINAL)
+            .defineConstructor(Visibility.PUBLIC)
+            .withParameters(FutureWithSLA.class)
+            .intercept(MethodCall.invoke(_super)
+                .andThen(FieldAccessor.ofField(FUTURE_FIELD).setsArgumentAt(0)))
+            .method(isPublic().and(not(isStatic())).and(not(isFinal())))
+            .intercept(MethodCall.invokeSelf()
+                .onMethodCall(MethodCall.invoke(FutureWithSLA.class.getMethod("get")).onField(FUTURE_FIELD))
+                .withAllArguments()
+                .withAssigner(Assigner.DEFAULT, Assigner.Typing.DYNAMIC))
+            .make()
+            .load(getClassLoader(aClass), getClassLoadingStrategy(aClass))
+            .getLoaded();
+    }
+
+    private static ClassLoader getClassLoader(Class<?> aClass)
+    {
+        if (isInjectable(aClass))
+            return aClass.getClassLoader();
+
+        return new MultipleParentClassLoader.Builder()
+            .append(aClass, FutureWithSLA.class)
+            .build();
+    }
+
+    private static ClassLoadingStrategy<ClassLoader> getClassLoadingStrategy(Class<?> aClass)
+    {
+        // injecting into the result-type's own loader keeps the proxy in the same runtime
+        // package, which is required to implement package-private types
+        return isInjectable(aClass) ?
+            ClassLoadingStrategy.Default.INJECTION : ClassLoadingStrategy.Default.WRAPPER;
+    }
+
+    private static boolean isInjectable(Class<?> aClass)
+    {
+        ClassLoader _loader = aClass.getClassLoader();
+        if (_loader == null || !ClassInjector.UsingReflection.isAvailable())
+            return false;
+
+        try
+        {
+            return Class.forName(FutureWithSLA.class.getName(), false, _loader) == FutureWithSLA.class;
+        }
+        catch (ClassNotFoundException anExc)
+        {
+            return false;
+        }
+    }
+}
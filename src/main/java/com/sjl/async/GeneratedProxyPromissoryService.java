@@ -0,0 +1,70 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A PromissoryService whose implicit futures are instances of classes generated at runtime
+ * (one per result-type, cached) rather than java.lang.reflect.Proxy's. Invocations on the
+ * returned objects are dispatched directly to the realised value without reflection, and
+ * non-final concrete classes can be promised as well as interfaces.
+ *
+ * @author steve
+ */
+public class GeneratedProxyPromissoryService implements PromissoryService
+{
+    private ExecutorService executor;
+    private ExecutionMode mode;
+    private PromiseMetrics metrics;
+    private GeneratedProxyFactory proxies;
+
+    public GeneratedProxyPromissoryService(ExecutorService anExecutor)
+    {
+        this(anExecutor, ExecutionMode.SUBMIT);
+    }
+
+    public GeneratedProxyPromissoryService(ExecutorService anExecutor, ExecutionMode aMode)
+    {
+        this(anExecutor, aMode, PromiseMetrics.NULL_OBJECT);
+    }
+    
+    public GeneratedProxyPromissoryService(ExecutorService anExecutor, ExecutionMode aMode, PromiseMetrics aMetrics)
+    {
+        executor = anExecutor;
+        mode = aMode;
+        metrics = aMetrics;
+        proxies = new GeneratedProxyFactory();
+    }
+
+    @Override
+    public <T> T promise(Fulfilment<T> aPromise)
+    throws RejectedExecutionException
+    {
+        checkSatisfiable(aPromise);
+        
+        return proxies.create(PromiseTask.create(
+            aPromise, ServiceLevelAgreement.NULL_OBJECT, executor, mode, metrics), aPromise.getResultType());
+    }
+
+    @Override
+    public <T> T attempt(Fulfilment<T> aPromise, ServiceLevelAgreement anSLA)
+    throws RejectedExecutionException
+    {
+        checkSatisfiable(aPromise);
+        
+        return proxies.create(PromiseTask.create(
+            aPromise, anSLA, executor, mode, metrics), aPromise.getResultType());
+    }
+
+    private <T> void checkSatisfiable(final Fulfilment<T> aTask)
+    throws RejectedExecutionException
+    {
+        if (!proxies.canProxy(aTask.getResultType()))
+            throw new RejectedExecutionException(
+                "this implementation is only able to satisfy interfaces and non-final classes " +
+                "with a no-arg constructor as return-types");
+        
+        // up front, so that generating the proxy class doesn't eat into an attempt's SLA
+        proxies.prepare(aTask.getResultType());
+    }
+}
@@ -0,0 +1,53 @@
+package com.sjl.async;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Limits hedging to a fraction of calls, so that a HedgingPromissoryService can't double the load 
+ * on a dependency which is slow because it is overloaded. Every call earns a fraction of a hedge, 
+ * up to a small burst allowance, and every hedge spends a whole one.
+ * 
+ * @author steve
+ */
+class HedgeBudget
+{
+    private static final long WHOLE = 1000;
+    
+    private final long earned;
+    private final long burst;
+    private final AtomicLong balance;
+    
+    /**
+     * @param the fraction of calls, between 0 and 1, which may be hedged
+     * @param the number of hedges which may be made at once, having been saved up
+     */
+    HedgeBudget(double aMaxHedgeRate, int aMaxBurst)
+    {
+        earned = (long) (aMaxHedgeRate * WHOLE);
+        burst = aMaxBurst * WHOLE;
+        balance = new AtomicLong(burst);
+    }
+    
+    void earn()
+    {
+        while (true)
+        {
+            long _current = balance.get();
+            long _next = Math.min(burst, _current + earned);
+            if (_next == _current || balance.compareAndSet(_current, _next))
+                return;
+        }
+    }
+    
+    boolean trySpend()
+    {
+        while (true)
+        {
+            long _current = balance.get();
+            if (_current < WHOLE)
+                return false;
+            if (balance.compareAndSet(_current, _current - WHOLE))
+                return true;
+        }
+    }
+}
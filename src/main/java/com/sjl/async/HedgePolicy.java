@@ -0,0 +1,20 @@
+package com.sjl.async;
+
+/**
+ * Decides how long a HedgingPromissoryService waits for a fulfilment before starting a second copy 
+ * of it, and learns from how long fulfilments actually take.
+ * 
+ * @author steve
+ */
+public interface HedgePolicy
+{
+    /**
+     * @return nanoseconds to wait for aPromise before hedging it
+     */
+    public long getHedgeDelay(Fulfilment<?> aPromise);
+    
+    /**
+     * @param the latency, in nanoseconds, of a successful execution of aPromise
+     */
+    public void record(Fulfilment<?> aPromise, long aNanos);
+}
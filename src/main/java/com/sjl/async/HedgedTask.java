@@ -0,0 +1,156 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A task which executes a Fulfilment and, if it has not completed within the delay given by a 
+ * HedgePolicy, executes a second copy of it too - if the HedgeBudget allows. It completes with 
+ * whichever copy succeeds first, and cancelling it (or completing it) cancels any copy still running.
+ * 
+ * @author steve
+ */
+class HedgedTask<T> extends NotifyingFutureTask<T>
+{
+    private final Fulfilment<T> fulfilment;
+    private final HedgePolicy policy;
+    private final HedgeBudget budget;
+    private final Executor executor;
+    
+    private final List<Future<?>> copies = new CopyOnWriteArrayList<Future<?>>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile Throwable failure;
+    private volatile DeadlineWheel.Deadline hedge;
+    
+    HedgedTask(final Fulfilment<T> aFulfilment, HedgePolicy aPolicy, HedgeBudget aBudget, Executor anExecutor)
+    {
+        // never run - the task is completed by its copies
+        super(new Callable<T>() 
+        {
+            @Override
+            public T call() throws Exception
+            {
+                return aFulfilment.execute();
+            }
+        });
+        fulfilment = aFulfilment;
+        policy = aPolicy;
+        budget = aBudget;
+        executor = anExecutor;
+    }
+    
+    void start()
+    throws RejectedExecutionException
+    {
+        budget.earn();
+        copy();
+        
+        hedge = DeadlineWheel.SHARED.schedule(System.nanoTime() + policy.getHedgeDelay(fulfilment), new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                if (isDone() || !budget.trySpend())
+                    return;
+                
+                try
+                {
+                    copy();
+                }
+                catch (RejectedExecutionException anExc)
+                {
+                    // the first copy carries on alone
+                }
+            }
+        });
+        
+        // done() may have looked for the hedge before it was scheduled
+        if (isDone())
+            hedge.cancel();
+    }
+    
+    /**
+     * @return true if the hedge has yet to be made or abandoned
+     */
+    boolean isHedgePending()
+    {
+        DeadlineWheel.Deadline _hedge = hedge;
+        return (_hedge != null) && !_hedge.isCancelled();
+    }
+    
+    private void copy()
+    {
+        outstanding.incrementAndGet();
+        
+        FutureTask<Void> _copy = new FutureTask<Void>(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                execute();
+            }
+        }, null);
+        copies.add(_copy);
+        
+        // we may have been completed or cancelled while adding the copy
+        if (isDone())
+        {
+            _copy.cancel(true);
+            return;
+        }
+        
+        try
+        {
+            executor.execute(_copy);
+        }
+        catch (RejectedExecutionException anExc)
+        {
+            // the copy will never run to account for itself
+            copies.remove(_copy);
+            failed(anExc);
+            throw anExc;
+        }
+    }
+    
+    private void execute()
+    {
+        long _start = System.nanoTime();
+        try
+        {
+            T _result = fulfilment.execute();
+            if (!isDone())
+                policy.record(fulfilment, System.nanoTime() - _start);
+            complete(_result);
+        }
+        catch (Throwable anExc)
+        {
+            failure = anExc;
+            failed(anExc);
+        }
+    }
+    
+    private void failed(Throwable anExc)
+    {
+        // fail only if there's no other copy which might yet succeed, and then with a copy's own 
+        // exception rather than a hedge's rejection if there is one
+        if (outstanding.decrementAndGet() == 0)
+        {
+            Throwable _failure = failure;
+            fail((_failure != null) ? _failure : anExc);
+        }
+    }
+    
+    @Override
+    protected void done()
+    {
+        DeadlineWheel.Deadline _hedge = hedge;
+        if (_hedge != null)
+            _hedge.cancel();
+        
+        for (Future<?> _copy : copies)
+            _copy.cancel(true);
+        
+        super.done();
+    }
+}
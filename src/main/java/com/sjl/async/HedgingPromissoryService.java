@@ -0,0 +1,95 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A PromissoryService which hedges against slow executions: if a fulfilment has not completed 
+ * within the delay given by its HedgePolicy a second copy is started, the first result to arrive 
+ * wins and the other copy is cancelled. 
+ * 
+ * Only use this for fulfilments which are idempotent - they may be executed twice.
+ * 
+ * So that hedging can't double the load on a dependency that is slow because it is overloaded, 
+ * only a fraction of calls (by default a tenth) may be hedged, with a small allowance for bursts.
+ * 
+ * @author steve
+ */
+public class HedgingPromissoryService implements PromissoryService
+{
+    private ExecutorService executor;
+    private HedgePolicy policy;
+    private HedgeBudget budget;
+    private GeneratedProxyFactory proxies;
+    
+    public HedgingPromissoryService(ExecutorService anExecutor, HedgePolicy aPolicy)
+    {
+        this(anExecutor, aPolicy, 0.1, 10);
+    }
+    
+    /**
+     * @param the fraction of calls, between 0 and 1, which may be hedged
+     * @param the number of hedges which may be made in a burst, having been saved up
+     */
+    public HedgingPromissoryService(
+        ExecutorService anExecutor, HedgePolicy aPolicy, double aMaxHedgeRate, int aMaxBurst)
+    {
+        executor = anExecutor;
+        policy = aPolicy;
+        budget = new HedgeBudget(aMaxHedgeRate, aMaxBurst);
+        proxies = new GeneratedProxyFactory();
+    }
+
+    @Override
+    public <T> T promise(final Fulfilment<T> aPromise)
+    throws RejectedExecutionException
+    {
+        return attempt(aPromise, ServiceLevelAgreement.NULL_OBJECT);
+    }
+
+    @Override
+    public <T> T attempt(final Fulfilment<T> aPromise, final ServiceLevelAgreement anSLA)
+    throws RejectedExecutionException
+    {
+        checkSatisfiable(aPromise);
+        
+        HedgedTask<T> _task = new HedgedTask<T>(aPromise, policy, budget, executor);
+        _task.start();
+        
+        final FutureWithSLA<T> _f = new FutureWithSLA<T>(_task, anSLA)
+        {
+            @Override
+            protected void whenSLAExceeded()
+            {
+                aPromise.onBreachSLA(anSLA);
+            }
+
+            @Override
+            protected void whenExecutionException(Throwable anExc)
+            {
+                aPromise.onException(anExc);
+            }
+
+            @Override
+            protected T createDefaultResult()
+            {
+                return aPromise.createDefaultResult();
+            }
+        };
+        _f.start();
+        
+        return proxies.create(_f, aPromise.getResultType());
+    }
+    
+    private <T> void checkSatisfiable(final Fulfilment<T> aTask)
+    throws RejectedExecutionException
+    {
+        if (!proxies.canProxy(aTask.getResultType()))
+            throw new RejectedExecutionException(
+                "this implementation is only able to satisfy interfaces and non-final classes " +
+                "with a no-arg constructor as return-types");
+        
+        // up front, so that generating the proxy class doesn't count against the hedge delay
+        proxies.prepare(aTask.getResultType());
+    }
+}
@@ -8,15 +8,35 @@ public class ImplicitFuture {
 	@SuppressWarnings("unchecked")
 	public static <T> T create(final Future<T> anExplicit, Class<T> aClass) {
 		return (T) Proxy.newProxyInstance(aClass.getClassLoader(),
-			new Class<?>[] { aClass }, new InvocationHandler() {
-				public Object invoke(Object aProxy, final Method aMethod, final Object[] anArgs) 
-				throws Throwable {
-					try {
-						return aMethod.invoke(anExplicit.get(), anArgs);
-					} catch (InvocationTargetException anExc) {
-						throw anExc.getCause();
-					}
-				}
-			});
+			new Class<?>[] { aClass }, new Handler(anExplicit));
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @return the explicit Future behind anObject if it was created by this class, 
+	 * otherwise null
+	 */
+	static Future<?> explicitOf(Object anObject) {
+		if (anObject == null || !Proxy.isProxyClass(anObject.getClass()))
+			return null;
+
+		InvocationHandler _handler = Proxy.getInvocationHandler(anObject);
+		return (_handler instanceof Handler) ? ((Handler) _handler).explicit : null;
+	}
+
+	private static class Handler implements InvocationHandler {
+		private final Future<?> explicit;
+
+		public Handler(Future<?> anExplicit) {
+			explicit = anExplicit;
+		}
+
+		public Object invoke(Object aProxy, final Method aMethod, final Object[] anArgs) 
+		throws Throwable {
+			try {
+				return aMethod.invoke(explicit.get(), anArgs);
+			} catch (InvocationTargetException anExc) {
+				throw anExc.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+
+/**
+ * For the rare code which does need to know whether it holds an implicit future - for example
+ * to avoid blocking on one, or to hand on the realised value rather than the proxy.
+ * 
+ * Recognises the implicit futures made by the PromissoryServices and ImplicitFuture.create.
+ * 
+ * @author steve
+ */
+public class ImplicitFutures
+{
+    /**
+     * @return true if anObject is an implicit future
+     */
+    public static boolean isImplicit(Object anObject)
+    {
+        return Promises.futureOf(anObject) != null || ImplicitFuture.explicitOf(anObject) != null;
+    }
+    
+    /**
+     * @return true if anObject can be used without waiting: either it is not an implicit future, 
+     * or it is one whose value (and, if that is also an implicit future, its value) is realised
+     */
+    public static boolean isRealised(Object anObject)
+    {
+        FutureWithSLA<?> _f = Promises.futureOf(anObject);
+        if (_f != null)
+            return _f.isReady();
+        
+        Future<?> _explicit = ImplicitFuture.explicitOf(anObject);
+        if (_explicit == null)
+            return true;
+        
+        if (!_explicit.isDone())
+            return false;
+        
+        try
+        {
+            return _explicit.isCancelled() || isRealised(_explicit.get());
+        }
+        catch (Exception anExc)
+        {
+            return true;
+        }
+    }
+    
+    /**
+     * @return the realised value behind anImplicit, waiting for it if need be and unwrapping as 
+     * many implicit futures as are nested inside one another, or anImplicit itself if it is not an 
+     * implicit future
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T unwrap(T anImplicit)
+    {
+        Object _result = anImplicit;
+        while (true)
+        {
+            FutureWithSLA<?> _f = Promises.futureOf(_result);
+            if (_f != null)
+            {
+                Object _value = _f.get();
+                if (_value == _result)
+                    return (T) _result;
+                _result = _value;
+                continue;
+            }
+            
+            Future<?> _explicit = ImplicitFuture.explicitOf(_result);
+            if (_explicit == null)
+                return (T) _result;
+            
+            _result = get(_explicit);
+        }
+    }
+    
+    private static Object get(Future<?> anExplicit)
+    {
+        try
+        {
+            return anExplicit.get();
+        }
+        catch (InterruptedException anExc)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(anExc);
+        }
+        catch (ExecutionException anExc)
+        {
+            Throwable _cause = anExc.getCause();
+            if (_cause instanceof RuntimeException)
+                throw (RuntimeException) _cause;
+            if (_cause instanceof Error)
+                throw (Error) _cause;
+            throw new RuntimeException(_cause);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * An Iterable whose elements become usable one at a time, as a StreamingFulfilment publishes 
+ * them. The iterator waits only for the next element, so the first can be used long before the 
+ * last has been fetched, and only a bounded number are ever held in memory - which also means it 
+ * can be iterated only once.
+ * 
+ * Iteration ends cleanly, having yielded whatever elements arrived in time, when the SLA is 
+ * exceeded or the fulfilment throws an exception. Closing the iterable abandons any elements not 
+ * yet yielded and stops the fulfilment (see Sink.put).
+ * 
+ * @author steve
+ */
+public class ImplicitIterable<E> implements Iterable<E>, AutoCloseable
+{
+    private static final Object END = new Object();
+    private static final long SLICE = Nanoseconds.fromMilliseconds(10);
+    
+    private final StreamingFulfilment<E> fulfilment;
+    private final ServiceLevelAgreement sla;
+    private final BlockingQueue<Object> buffer;
+    private final Semaphore space;
+    private final FutureTask<Void> task;
+    private volatile DeadlineWheel.Deadline expiry;
+    
+    private final AtomicBoolean iterated = new AtomicBoolean();
+    private final AtomicBoolean breached = new AtomicBoolean();
+    private volatile boolean stopped;
+    private volatile boolean finished;
+    private volatile boolean abandoned;
+    
+    ImplicitIterable(StreamingFulfilment<E> aFulfilment, ServiceLevelAgreement anSLA, int aBufferSize)
+    {
+        fulfilment = aFulfilment;
+        sla = anSLA;
+        buffer = new LinkedBlockingQueue<Object>();
+        space = new Semaphore(aBufferSize);
+        task = new FutureTask<Void>(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                produce();
+            }
+        }, null);
+        
+    }
+    
+    /**
+     * Starts the fulfilment on anExecutor and then, once anExecutor has accepted it, the clock on 
+     * a DeadlineSLA - so that work which never even started is never breached
+     */
+    void start(Executor anExecutor)
+    throws RejectedExecutionException
+    {
+        anExecutor.execute(task);
+        
+        if (!(sla instanceof DeadlineSLA))
+            return;
+        
+        DeadlineWheel.Deadline _expiry = DeadlineWheel.SHARED.schedule(((DeadlineSLA) sla).getDeadline(), new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                breach();
+                stop();
+            }
+        });
+        expiry = _expiry;
+        
+        // produce() reads expiry once finished, so if it missed this one we see that it finished
+        if (finished)
+            _expiry.cancel();
+    }
+    
+    @Override
+    public Iterator<E> iterator()
+    {
+        if (!iterated.compareAndSet(false, true))
+            throw new IllegalStateException("can only be iterated once");
+        
+        return new Consumer();
+    }
+    
+    /**
+     * @return true if iteration ended because the SLA was exceeded before every element arrived
+     */
+    public boolean isSLABreached()
+    {
+        return breached.get();
+    }
+    
+    /**
+     * Abandons the elements which have not yet been yielded, and stops the fulfilment.
+     */
+    @Override
+    public void close()
+    {
+        abandoned = true;
+        stop();
+        buffer.clear();
+    }
+    
+    private void produce()
+    {
+        try
+        {
+            fulfilment.execute(new Producer());
+        }
+        catch (Throwable anExc)
+        {
+            if (!stopped)
+                fulfilment.onException(anExc);
+        }
+        finally
+        {
+            finished = true;
+            DeadlineWheel.Deadline _expiry = expiry;
+            if (_expiry != null)
+                _expiry.cancel();
+            
+            // there is always room for the end, however far behind the consumer is
+            buffer.add(END);
+        }
+    }
+    
+    private void stop()
+    {
+        stopped = true;
+        task.cancel(true);
+    }
+    
+    private void breach()
+    {
+        if (breached.compareAndSet(false, true))
+            fulfilment.onBreachSLA(sla);
+    }
+    
+    private Object poll()
+    throws InterruptedException
+    {
+        if (stopped)
+            return buffer.poll();
+        
+        if (sla instanceof DeadlineSLA)
+            return buffer.poll(((DeadlineSLA) sla).getDeadline() - System.nanoTime(), TimeUnit.NANOSECONDS);
+        
+        while (true)
+        {
+            Object _result = buffer.poll(SLICE, TimeUnit.NANOSECONDS);
+            if (_result != null || sla.isExceeded())
+                return (_result != null) ? _result : buffer.poll();
+        }
+    }
+    
+    private class Producer implements Sink<E>
+    {
+        @Override
+        public boolean put(E anElement)
+        {
+            if (anElement == null)
+                throw new NullPointerException();
+            
+            if (stopped)
+                return false;
+            
+            try
+            {
+                space.acquire();
+            }
+            catch (InterruptedException anExc)
+            {
+                // the consumer stopped us while we waited for it
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            
+            buffer.add(anElement);
+            return !stopped;
+        }
+    }
+    
+    private class Consumer implements Iterator<E>
+    {
+        private E next;
+        private boolean ended;
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean hasNext()
+        {
+            if (next != null)
+                return true;
+            
+            if (ended)
+                return false;
+            
+            Object _next;
+            try
+            {
+                _next = poll();
+            }
+            catch (InterruptedException anExc)
+            {
+                // as though the consumer had closed us
+                Thread.currentThread().interrupt();
+                ended = true;
+                stop();
+                return false;
+            }
+            
+            if (_next == null || _next == END)
+            {
+                ended = true;
+                if (_next == null)
+                {
+                    if (!abandoned)
+                        breach();
+                    stop();
+                }
+                return false;
+            }
+            
+            space.release();
+            next = (E) _next;
+            return true;
+        }
+        
+        @Override
+        public E next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            
+            E _result = next;
+            next = null;
+            return _result;
+        }
+        
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
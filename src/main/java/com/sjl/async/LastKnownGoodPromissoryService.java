@@ -0,0 +1,360 @@
+package com.sjl.async;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * Decorates a PromissoryService so that a CacheableFulfilment which breaches its SLA, fails or 
+ * realises null is given the last value realised for the same result type and cache key instead 
+ * of its default result - as long as that value is no older than the maximum staleness. Serving 
+ * a stale value also starts a refresh in the background (at most one per key at a time), so that 
+ * the next caller gets something fresher.
+ * 
+ * Last known good values are held in a bounded store which, when full, evicts the least recently 
+ * used of a sample of its values, and which different keys don't contend on. Fulfilments which 
+ * are not CacheableFulfilments pass straight through. Refreshes are started on an executor, rather 
+ * than on whichever thread noticed the breach.
+ * 
+ * @author steve
+ */
+public class LastKnownGoodPromissoryService implements PromissoryService
+{
+    private static final SampledEviction<CacheKey, Entry> EVICTION = new SampledEviction<CacheKey, Entry>()
+    {
+        @Override
+        protected long lastUsed(Entry anEntry)
+        {
+            return anEntry.lastUsed;
+        }
+    };
+    
+    private static final BiFunction<Entry, Entry, Entry> UPDATE = new BiFunction<Entry, Entry, Entry>()
+    {
+        @Override
+        public Entry apply(Entry anExisting, Entry aRealised)
+        {
+            anExisting.update(aRealised.value, aRealised.realised);
+            return anExisting;
+        }
+    };
+    
+    private PromissoryService delegate;
+    private int maxSize;
+    private long maxStaleness;
+    private Executor refresher;
+    private ConcurrentMap<CacheKey, Entry> store = new ConcurrentHashMap<CacheKey, Entry>();
+    
+    private AtomicLong fallbacks = new AtomicLong();
+    
+    /**
+     * @param the service which executes fulfilments
+     * @param the maximum number of last known good values to keep
+     * @param the age in nanoseconds beyond which a last known good value is not used
+     */
+    public LastKnownGoodPromissoryService(PromissoryService aDelegate, int aMaxSize, long aMaxStalenessNanos)
+    {
+        this(aDelegate, aMaxSize, aMaxStalenessNanos, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * @param the service which executes fulfilments
+     * @param the maximum number of last known good values to keep
+     * @param the age in nanoseconds beyond which a last known good value is not used
+     * @param an executor on which to start background refreshes
+     */
+    public LastKnownGoodPromissoryService(
+        PromissoryService aDelegate, int aMaxSize, long aMaxStalenessNanos, Executor aRefresher)
+    {
+        delegate = aDelegate;
+        maxSize = aMaxSize;
+        maxStaleness = aMaxStalenessNanos;
+        refresher = aRefresher;
+    }
+
+    @Override
+    public <T> T promise(Fulfilment<T> aPromise)
+    throws RejectedExecutionException
+    {
+        if (!(aPromise instanceof CacheableFulfilment<?>))
+            return delegate.promise(aPromise);
+        
+        Fallback<T> _fallback = new Fallback<T>((CacheableFulfilment<T>) aPromise, false);
+        return _fallback.promised(delegate.promise(_fallback.proxy));
+    }
+
+    @Override
+    public <T> T attempt(Fulfilment<T> aPromise, ServiceLevelAgreement anSLA)
+    throws RejectedExecutionException
+    {
+        if (!(aPromise instanceof CacheableFulfilment<?>))
+            return delegate.attempt(aPromise, anSLA);
+        
+        Fallback<T> _fallback = new Fallback<T>((CacheableFulfilment<T>) aPromise, false);
+        return _fallback.promised(delegate.attempt(_fallback.proxy, anSLA));
+    }
+    
+    /**
+     * @return the number of times a last known good value was used instead of a default result
+     */
+    public long getFallbacks()
+    {
+        return fallbacks.get();
+    }
+    
+    public int size()
+    {
+        return store.size();
+    }
+    
+    private void remember(CacheKey aKey, Object aValue)
+    {
+        Entry _realised = new Entry(aValue, System.nanoTime());
+        if (store.merge(aKey, _realised, UPDATE) == _realised)
+            EVICTION.evictOverflow(store, maxSize, _realised);
+    }
+    
+    /**
+     * @return the entry for aKey if it is fresh enough to use, otherwise null
+     */
+    private Entry recall(CacheKey aKey)
+    {
+        Entry _entry = store.get(aKey);
+        if (_entry == null)
+            return null;
+        
+        long _now = System.nanoTime();
+        if (_now - _entry.realised > maxStaleness)
+        {
+            store.remove(aKey, _entry);
+            return null;
+        }
+        
+        _entry.lastUsed = _now;
+        fallbacks.incrementAndGet();
+        return _entry;
+    }
+    
+    private void refreshed(CacheKey aKey)
+    {
+        Entry _entry = store.get(aKey);
+        if (_entry != null)
+            _entry.refreshing.set(false);
+    }
+    
+    private <T> void refresh(Entry anEntry, final CacheableFulfilment<T> aPromise)
+    {
+        if (!anEntry.refreshing.compareAndSet(false, true))
+            return;
+        
+        final CacheKey _key = new CacheKey(aPromise);
+        try
+        {
+            refresher.execute(new Runnable() 
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        Fallback<T> _fallback = new Fallback<T>(aPromise, true);
+                        Promises.prefetch(_fallback.promised(delegate.promise(_fallback.proxy)));
+                    }
+                    catch (RejectedExecutionException anExc)
+                    {
+                        refreshed(_key);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException anExc)
+        {
+            refreshed(_key);
+        }
+    }
+    
+    /**
+     * Remembers what the fulfilment it wraps realises, and falls back to that.
+     * 
+     * The delegate is given a proxy, with this as its handler, which has just the interfaces the
+     * fulfilment has, so that the delegate treats it no differently - a BatchFulfilment is batched 
+     * and a CancellableFulfilment given a token, whichever other interfaces it has. 
+     */
+    private class Fallback<T> implements InvocationHandler
+    {
+        final CacheableFulfilment<T> fulfilment;
+        final CacheKey key;
+        final boolean refresh;
+        final CacheableFulfilment<T> proxy;
+        
+        // a BatchLoader realises batched fulfilments without calling execute(), so what they 
+        // realise is taken from the implicit future they're promised instead
+        final boolean batched;
+        
+        @SuppressWarnings("unchecked")
+        Fallback(CacheableFulfilment<T> aFulfilment, boolean aRefresh)
+        {
+            fulfilment = aFulfilment;
+            key = new CacheKey(aFulfilment);
+            refresh = aRefresh;
+            batched = aFulfilment instanceof BatchFulfilment<?, ?>;
+            proxy = (CacheableFulfilment<T>) Proxy.newProxyInstance(
+                LastKnownGoodPromissoryService.class.getClassLoader(), interfacesOf(aFulfilment), this);
+        }
+        
+        /**
+         * @return anImplicit, which the delegate promised for this Fallback's proxy
+         */
+        T promised(T anImplicit)
+        {
+            if (!batched)
+                return anImplicit;
+            
+            final FutureWithSLA<T> _f = Promises.futureOf(anImplicit);
+            if (_f == null)
+            {
+                remembered(anImplicit);
+                settled();
+                return anImplicit;
+            }
+            
+            _f.whenReady(new Runnable() 
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        // get() settles it without waiting, so only then is its state known
+                        T _result = _f.get();
+                        if (_f.getState() == FutureWithSLA.State.REALISED)
+                            remembered(_result);
+                    }
+                    finally
+                    {
+                        settled();
+                    }
+                }
+            });
+            return anImplicit;
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable
+        {
+            String _name = aMethod.getName();
+            if (aMethod.getDeclaringClass() == Object.class)
+            {
+                // a proxy is only ever equal to itself
+                if (_name.equals("equals"))
+                    return aProxy == anArgs[0];
+                if (_name.equals("hashCode"))
+                    return System.identityHashCode(aProxy);
+                return "Fallback(" + fulfilment + ")";
+            }
+            
+            if (_name.equals("execute"))
+            {
+                // with or without a CancellationToken
+                try
+                {
+                    return remembered((T) forward(aMethod, anArgs));
+                }
+                finally
+                {
+                    settled();
+                }
+            }
+            
+            if (_name.equals("createDefaultResult"))
+                return createDefaultResult();
+            
+            if (_name.equals("getName"))
+                return PromiseMetrics.nameOf(fulfilment);
+            
+            return forward(aMethod, anArgs);
+        }
+        
+        private Object forward(Method aMethod, Object[] anArgs) throws Throwable
+        {
+            try
+            {
+                return aMethod.invoke(fulfilment, anArgs);
+            }
+            catch (InvocationTargetException anExc)
+            {
+                throw anExc.getCause();
+            }
+        }
+        
+        private T remembered(T aResult)
+        {
+            if (aResult != null)
+                remember(key, aResult);
+            return aResult;
+        }
+        
+        private void settled()
+        {
+            if (refresh)
+                refreshed(key);
+        }
+
+        @SuppressWarnings("unchecked")
+        private T createDefaultResult()
+        {
+            Entry _entry = refresh ? null : recall(key);
+            if (_entry == null)
+                return fulfilment.createDefaultResult();
+            
+            // read before refreshing, which may replace the value before we return
+            T _result = (T) _entry.value;
+            refresh(_entry, fulfilment);
+            return _result;
+        }
+    }
+    
+    /**
+     * @return the interfaces of the Fulfilment a delegate may look for which aFulfilment has, and
+     * NamedFulfilment so that it keeps its name
+     */
+    private static Class<?>[] interfacesOf(CacheableFulfilment<?> aFulfilment)
+    {
+        List<Class<?>> _result = new ArrayList<Class<?>>(5);
+        _result.add(CacheableFulfilment.class);
+        _result.add(NamedFulfilment.class);
+        if (aFulfilment instanceof CancellableFulfilment<?>)
+            _result.add(CancellableFulfilment.class);
+        if (aFulfilment instanceof DataflowFulfilment<?>)
+            _result.add(DataflowFulfilment.class);
+        if (aFulfilment instanceof BatchFulfilment<?, ?>)
+            _result.add(BatchFulfilment.class);
+        return _result.toArray(new Class<?>[_result.size()]);
+    }
+    
+    private static class Entry
+    {
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile Object value;
+        private volatile long realised;
+        private volatile long lastUsed;
+        
+        Entry(Object aValue, long aRealised)
+        {
+            value = aValue;
+            realised = aRealised;
+            lastUsed = aRealised;
+        }
+        
+        void update(Object aValue, long aRealised)
+        {
+            // the value first, so that whoever sees the new time sees the new value too
+            value = aValue;
+            realised = aRealised;
+            lastUsed = aRealised;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.sjl.async;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds, with four buckets per power of two (so 
+ * values are recorded to within 25%). Recording is two atomic increments.
+ * 
+ * Once more than a given number of samples have been recorded all counts are halved, so
+ * that older samples gradually lose their influence.
+ * 
+ * @author steve
+ */
+class LatencyHistogram
+{
+    private static final int BUCKETS = 64 * 4;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final long window;
+    
+    /**
+     * @param the number of samples after which older samples are decayed
+     */
+    LatencyHistogram(long aWindow)
+    {
+        window = aWindow;
+    }
+    
+    public void record(long aNanos)
+    {
+        counts.incrementAndGet(indexOf(aNanos));
+        if (total.incrementAndGet() > window)
+            decay();
+    }
+    
+    public long getCount()
+    {
+        return total.get();
+    }
+    
+    /**
+     * @param a percentile between 0 and 1
+     * @return an upper bound on the latency of that percentile of samples, or -1 if there are none
+     */
+    public long getPercentile(double aPercentile)
+    {
+        long _total = 0;
+        long[] _counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            _total += (_counts[i] = counts.get(i));
+        
+        if (_total == 0)
+            return -1;
+        
+        long _target = Math.max(1, (long) Math.ceil(aPercentile * _total));
+        long _seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            _seen += _counts[i];
+            if (_seen >= _target)
+                return upperBoundOf(i);
+        }
+        return upperBoundOf(BUCKETS - 1);
+    }
+    
+    private void decay()
+    {
+        // racing recorders may be lost or halved, which is fine for an estimate 
+        long _remaining = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            long _c = counts.get(i) / 2;
+            counts.set(i, _c);
+            _remaining += _c;
+        }
+        total.set(_remaining);
+    }
+    
+    static int indexOf(long aNanos)
+    {
+        if (aNanos < 4)
+            return (int) Math.max(0, aNanos);
+        
+        int _log = 63 - Long.numberOfLeadingZeros(aNanos);
+        int _sub = (int) ((aNanos >>> (_log - 2)) & 3);
+        return _log * 4 + _sub;
+    }
+    
+    static long upperBoundOf(int anIndex)
+    {
+        if (anIndex < 4)
+            return anIndex;
+        
+        int _log = anIndex / 4;
+        int _sub = anIndex % 4;
+        if (_log >= 61)
+            return Long.MAX_VALUE;
+        return ((4L + _sub + 1) << (_log - 2)) - 1;
+    }
+}
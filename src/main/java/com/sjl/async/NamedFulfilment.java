@@ -0,0 +1,12 @@
+package com.sjl.async;
+
+/**
+ * A Fulfilment which names itself for the purposes of reporting, rather than being known 
+ * by its result-type.
+ * 
+ * @author steve
+ */
+public interface NamedFulfilment<T> extends Fulfilment<T>
+{
+    public String getName();
+}
@@ -0,0 +1,76 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+
+/**
+ * A FutureTask which tells the FutureWithSLA that wraps it as soon as it is done, so that 
+ * work chained onto the FutureWithSLA can proceed without any thread having to wait.
+ * 
+ * Given a CancellationToken, the task is cancelled along with the token and vice versa, so a 
+ * cancellable fulfilment hears about a breached SLA or an abandoned result.
+ * 
+ * @author steve
+ */
+class NotifyingFutureTask<T> extends FutureTask<T>
+{
+    private volatile FutureWithSLA<?> owner;
+    private final CancellationToken token;
+    
+    public NotifyingFutureTask(Callable<T> aCallable)
+    {
+        this(aCallable, null);
+    }
+    
+    public NotifyingFutureTask(Callable<T> aCallable, CancellationToken aToken)
+    {
+        super(aCallable);
+        token = aToken;
+        
+        if (aToken != null)
+        {
+            aToken.onCancel(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    cancel(true);
+                }
+            });
+        }
+    }
+    
+    void complete(T aResult)
+    {
+        set(aResult);
+    }
+    
+    void fail(Throwable anExc)
+    {
+        setException(anExc);
+    }
+    
+    FutureWithSLA<?> getOwner()
+    {
+        return owner;
+    }
+    
+    void setOwner(FutureWithSLA<?> anOwner)
+    {
+        owner = anOwner;
+        
+        // we may have finished before the owner was known
+        if (isDone())
+            anOwner.notifyReady();
+    }
+    
+    @Override
+    protected void done()
+    {
+        if (token != null && isCancelled())
+            token.cancel();
+        
+        FutureWithSLA<?> _owner = owner;
+        if (_owner != null)
+            _owner.notifyReady();
+    }
+}
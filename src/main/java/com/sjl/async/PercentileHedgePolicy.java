@@ -0,0 +1,55 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+
+/**
+ * Hedges a fulfilment once it has taken longer than a given percentile (for example 0.95) of the 
+ * recent latencies of fulfilments with the same result type. Until enough latencies have been 
+ * seen for a result type an initial delay is used instead.
+ * 
+ * @author steve
+ */
+public class PercentileHedgePolicy implements HedgePolicy
+{
+    private static final long WINDOW = 10000;
+    
+    private double percentile;
+    private long initialDelay;
+    private long minSamples;
+    private ConcurrentMap<Class<?>, LatencyHistogram> latencies;
+    
+    /**
+     * @param the percentile, between 0 and 1, of latency after which to hedge
+     * @param the delay in nanoseconds to use until there are enough samples
+     * @param the number of samples which are enough
+     */
+    public PercentileHedgePolicy(double aPercentile, long anInitialDelayNanos, long aMinSamples)
+    {
+        percentile = aPercentile;
+        initialDelay = anInitialDelayNanos;
+        minSamples = aMinSamples;
+        latencies = new ConcurrentHashMap<Class<?>, LatencyHistogram>();
+    }
+    
+    @Override
+    public long getHedgeDelay(Fulfilment<?> aPromise)
+    {
+        LatencyHistogram _h = latencies.get(aPromise.getResultType());
+        return (_h == null || _h.getCount() < minSamples) ? 
+            initialDelay : _h.getPercentile(percentile);
+    }
+    
+    @Override
+    public void record(Fulfilment<?> aPromise, long aNanos)
+    {
+        LatencyHistogram _h = latencies.get(aPromise.getResultType());
+        if (_h == null)
+        {
+            LatencyHistogram _new = new LatencyHistogram(WINDOW);
+            _h = latencies.putIfAbsent(aPromise.getResultType(), _new);
+            if (_h == null)
+                _h = _new;
+        }
+        _h.record(aNanos);
+    }
+}
@@ -0,0 +1,263 @@
+package com.sjl.async;
+
+import java.lang.ref.*;
+import java.util.concurrent.atomic.*;
+
+import jdk.jfr.*;
+
+/**
+ * Java Flight Recorder events giving a timeline for each implicit future: when it was promised,
+ * queued, started and realised, which callers blocked on it and for how long, and whether it
+ * breached its SLA. Events about the same implicit future share its promise id, which is taken 
+ * from a sequence the first time an event needs it.
+ *
+ * Every event is disabled by default - enable them in a recording's settings, for example
+ *
+ *     jcmd &lt;pid&gt; JFR.start settings=profile +com.sjl.async.PromiseBlocked#enabled=true
+ *
+ * While disabled, each begin method costs a check of a flag and returns null, so that nothing
+ * is allocated.
+ *
+ * @author steve
+ */
+final class PromiseEvents
+{
+    static final String CATEGORY = "Implicit Futures";
+
+    private static final EventType PROMISE = EventType.getEventType(Promise.class);
+    private static final EventType BLOCKED = EventType.getEventType(Blocked.class);
+    private static final EventType BREACHED = EventType.getEventType(Breached.class);
+    private static final EventType ASYNCIFIED = EventType.getEventType(Asyncified.class);
+    
+    private static final AtomicLong IDS = new AtomicLong();
+
+    private PromiseEvents()
+    {
+    }
+
+    /**
+     * @return a Promise event begun now, or null if the event is disabled
+     */
+    static Promise promised(FutureWithSLA<?> aFuture, Fulfilment<?> aFulfilment, ExecutionMode aMode)
+    {
+        if (!PROMISE.isEnabled())
+            return null;
+
+        Promise _result = new Promise();
+        _result.begin();
+        _result.created = System.nanoTime();
+        _result.name = PromiseMetrics.nameOf(aFulfilment);
+        _result.promiseId = idOf(aFuture);
+        _result.resultType = aFulfilment.getResultType();
+        _result.mode = aMode.name();
+        _result.creatingThread = Thread.currentThread();
+        return _result;
+    }
+    
+    /**
+     * Arranges for aPromise to be committed, if it hasn't been already, once aFuture is 
+     * unreachable - which is the only end a LAZY implicit future that nothing needs ever has
+     */
+    static void unused(FutureWithSLA<?> aFuture, final Promise aPromise)
+    {
+        Unused.CLEANER.register(aFuture, new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                aPromise.finished(Promise.UNUSED);
+            }
+        });
+    }
+
+    /**
+     * @return a Blocked event begun now, or null if the event is disabled
+     */
+    static Blocked blocked(FutureWithSLA<?> aFuture)
+    {
+        if (!BLOCKED.isEnabled())
+            return null;
+
+        Blocked _result = new Blocked();
+        _result.begin();
+        _result.name = aFuture.getName();
+        _result.promiseId = idOf(aFuture);
+        return _result;
+    }
+
+    static void breached(FutureWithSLA<?> aFuture, ServiceLevelAgreement anSLA)
+    {
+        if (!BREACHED.isEnabled())
+            return;
+
+        Breached _event = new Breached();
+        _event.name = aFuture.getName();
+        _event.promiseId = idOf(aFuture);
+        _event.sla = anSLA.getClass();
+        _event.commit();
+    }
+
+    /**
+     * @return an Asyncified event begun now, or null if the event is disabled
+     */
+    static Asyncified asyncified(String aMethod, long anSLAMillis)
+    {
+        if (!ASYNCIFIED.isEnabled())
+            return null;
+
+        Asyncified _result = new Asyncified();
+        _result.begin();
+        _result.method = aMethod;
+        _result.slaMillis = anSLAMillis;
+        return _result;
+    }
+
+    static long nextId()
+    {
+        return IDS.incrementAndGet();
+    }
+    
+    private static long idOf(FutureWithSLA<?> aFuture)
+    {
+        return (aFuture != null) ? aFuture.getPromiseId() : 0L;
+    }
+    
+    /**
+     * Holds the Cleaner, and its thread, until the first unused LAZY promise is recorded
+     */
+    private static class Unused
+    {
+        static final Cleaner CLEANER = Cleaner.create();
+    }
+
+    @Name("com.sjl.async.Promise")
+    @Label("Promise")
+    @Category(CATEGORY)
+    @Description("An implicit future, from being promised until its fulfilment finished")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Promise extends Event
+    {
+        static final String REJECTED = "REJECTED";
+        static final String UNUSED = "UNUSED";
+        
+        @Label("Name")
+        String name;
+
+        @Label("Promise Id")
+        long promiseId;
+
+        @Label("Result Type")
+        Class<?> resultType;
+
+        @Label("Execution Mode")
+        String mode;
+
+        @Label("Creating Thread")
+        Thread creatingThread;
+
+        @Label("Executing Thread")
+        Thread executingThread;
+
+        @Label("Until Queued")
+        @Description("From being promised until handed to the executor")
+        @Timespan
+        long untilQueued = -1;
+
+        @Label("Until Started")
+        @Description("From being promised until the fulfilment began to execute")
+        @Timespan
+        long untilStarted = -1;
+
+        @Label("Queue Wait")
+        @Description("From being handed to the executor until the fulfilment began to execute")
+        @Timespan
+        long queueWait = -1;
+
+        @Label("Outcome")
+        @Description("How the fulfilment's task ended, REJECTED if its executor refused it or UNUSED if nothing ever needed it")
+        String outcome;
+
+        transient long created;
+
+        void queued()
+        {
+            untilQueued = System.nanoTime() - created;
+        }
+
+        void started()
+        {
+            untilStarted = System.nanoTime() - created;
+            if (untilQueued >= 0)
+                queueWait = untilStarted - untilQueued;
+            executingThread = Thread.currentThread();
+        }
+
+        synchronized void finished(String anOutcome)
+        {
+            if (outcome != null)
+                return;
+
+            outcome = anOutcome;
+            commit();
+        }
+    }
+
+    @Name("com.sjl.async.PromiseBlocked")
+    @Label("Promise Blocked")
+    @Category(CATEGORY)
+    @Description("A thread waiting for an implicit future to be settled")
+    @Enabled(false)
+    @StackTrace(true)
+    static final class Blocked extends Event
+    {
+        @Label("Name")
+        String name;
+
+        @Label("Promise Id")
+        long promiseId;
+    }
+
+    @Name("com.sjl.async.PromiseSLABreached")
+    @Label("Promise SLA Breached")
+    @Category(CATEGORY)
+    @Description("An implicit future settled with its default result because its SLA was exceeded")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Breached extends Event
+    {
+        @Label("Name")
+        String name;
+
+        @Label("Promise Id")
+        long promiseId;
+
+        @Label("SLA")
+        Class<?> sla;
+    }
+
+    @Name("com.sjl.async.Asyncified")
+    @Label("Asyncified Call")
+    @Category(CATEGORY)
+    @Description("A call to an asyncified method, while its result was promised")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Asyncified extends Event
+    {
+        @Label("Method")
+        String method;
+
+        @Label("Promise Id")
+        long promiseId;
+
+        @Label("SLA")
+        @Timespan(Timespan.MILLISECONDS)
+        long slaMillis;
+
+        void promised(Object anImplicit)
+        {
+            promiseId = idOf(Promises.futureOf(anImplicit));
+            commit();
+        }
+    }
+}
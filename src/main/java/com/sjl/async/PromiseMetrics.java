@@ -0,0 +1,139 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+
+import javax.management.*;
+
+/**
+ * Collects PromiseStatistics for each kind of Fulfilment a PromissoryService is given - by
+ * name for NamedFulfilments, otherwise by result-type - and optionally exposes each as an
+ * MBean named com.sjl.async:type=PromiseStatistics,scope=[scope],name=[name].
+ * 
+ * NULL_OBJECT collects nothing.
+ * 
+ * @author steve
+ */
+public class PromiseMetrics
+{
+    public static final PromiseMetrics NULL_OBJECT = new PromiseMetrics()
+    {
+        @Override
+        public boolean isEnabled()
+        {
+            return false;
+        }
+        
+        @Override
+        public PromiseStatistics of(Fulfilment<?> aFulfilment)
+        {
+            return PromiseStatistics.NULL_OBJECT;
+        }
+    };
+    
+    private final ConcurrentMap<String, PromiseStatistics> statistics;
+    private final MBeanServer server;
+    private final String scope;
+    
+    /**
+     * Collects statistics without exposing them
+     */
+    public PromiseMetrics()
+    {
+        this(null, null);
+    }
+    
+    /**
+     * @param the server with which to register an MBean for each kind of Fulfilment
+     * @param distinguishes these MBeans from those of other PromiseMetrics
+     */
+    public PromiseMetrics(MBeanServer aServer, String aScope)
+    {
+        statistics = new ConcurrentHashMap<String, PromiseStatistics>();
+        server = aServer;
+        scope = aScope;
+    }
+    
+    public boolean isEnabled()
+    {
+        return true;
+    }
+    
+    public PromiseStatistics of(Fulfilment<?> aFulfilment)
+    {
+        String _name = nameOf(aFulfilment);
+        
+        PromiseStatistics _result = statistics.get(_name);
+        if (_result == null)
+        {
+            PromiseStatistics _new = new PromiseStatistics(_name);
+            _result = statistics.putIfAbsent(_name, _new);
+            if (_result == null)
+            {
+                _result = _new;
+                register(_new);
+            }
+        }
+        return _result;
+    }
+    
+    /**
+     * @return the name by which aFulfilment is known for reporting: its own, if it is a 
+     * NamedFulfilment, otherwise that of its result-type
+     */
+    static String nameOf(Fulfilment<?> aFulfilment)
+    {
+        return (aFulfilment instanceof NamedFulfilment<?>) ? 
+            ((NamedFulfilment<?>) aFulfilment).getName() : aFulfilment.getResultType().getName();
+    }
+    
+    /**
+     * @return the statistics collected for the named Fulfilments, or null if there are none
+     */
+    public PromiseStatistics get(String aName)
+    {
+        return statistics.get(aName);
+    }
+    
+    /**
+     * Removes any MBeans registered by this PromiseMetrics
+     */
+    public void unregister()
+    {
+        if (server == null)
+            return;
+        
+        for (String _name : statistics.keySet())
+        {
+            try
+            {
+                server.unregisterMBean(toObjectName(_name));
+            }
+            catch (JMException anExc)
+            {
+                // already gone
+            }
+        }
+    }
+    
+    private void register(PromiseStatistics aStatistics)
+    {
+        if (server == null)
+            return;
+        
+        try
+        {
+            server.registerMBean(aStatistics, toObjectName(aStatistics.getName()));
+        }
+        catch (JMException anExc)
+        {
+            // statistics are still collected, just not visible over JMX
+        }
+    }
+    
+    private ObjectName toObjectName(String aName)
+    throws MalformedObjectNameException
+    {
+        return new ObjectName("com.sjl.async:type=PromiseStatistics,scope=" + 
+            ObjectName.quote(scope) + ",name=" + ObjectName.quote(aName));
+    }
+}
@@ -0,0 +1,169 @@
+package com.sjl.async;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Where the time goes for one kind of promise: how long fulfilments waited to start, how long 
+ * they took, and how long callers were blocked waiting for results; and how often they breached 
+ * their SLA, failed or were defaulted.
+ * 
+ * NULL_OBJECT records nothing, so that promises made without metrics don't contend on it.
+ * 
+ * @author steve
+ */
+public class PromiseStatistics implements PromiseStatisticsMBean
+{
+    private static final long WINDOW = 1 << 16;
+    
+    public static final PromiseStatistics NULL_OBJECT = new PromiseStatistics("ignored")
+    {
+        @Override
+        public void recordQueueWait(long aNanos)
+        {
+        }
+        
+        @Override
+        public void recordExecution(long aNanos)
+        {
+        }
+        
+        @Override
+        public void recordBlocked(long aNanos)
+        {
+        }
+        
+        @Override
+        public void recordBreach()
+        {
+        }
+        
+        @Override
+        public void recordException()
+        {
+        }
+        
+        @Override
+        public void recordDefault()
+        {
+        }
+    };
+    
+    private final String name;
+    private final LatencyHistogram queueWait = new LatencyHistogram(WINDOW);
+    private final LatencyHistogram execution = new LatencyHistogram(WINDOW);
+    private final LatencyHistogram blocked = new LatencyHistogram(WINDOW);
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong blocks = new AtomicLong();
+    private final AtomicLong breaches = new AtomicLong();
+    private final AtomicLong exceptions = new AtomicLong();
+    private final AtomicLong defaults = new AtomicLong();
+    
+    public PromiseStatistics(String aName)
+    {
+        name = aName;
+    }
+    
+    public void recordQueueWait(long aNanos)
+    {
+        queueWait.record(aNanos);
+    }
+    
+    public void recordExecution(long aNanos)
+    {
+        executions.incrementAndGet();
+        execution.record(aNanos);
+    }
+    
+    public void recordBlocked(long aNanos)
+    {
+        blocks.incrementAndGet();
+        blocked.record(aNanos);
+    }
+    
+    public void recordBreach()
+    {
+        breaches.incrementAndGet();
+    }
+    
+    public void recordException()
+    {
+        exceptions.incrementAndGet();
+    }
+    
+    public void recordDefault()
+    {
+        defaults.incrementAndGet();
+    }
+    
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+    
+    @Override
+    public long getExecutions()
+    {
+        return executions.get();
+    }
+    
+    @Override
+    public long getQueueWaitMedian()
+    {
+        return queueWait.getPercentile(0.5);
+    }
+    
+    @Override
+    public long getQueueWait99thPercentile()
+    {
+        return queueWait.getPercentile(0.99);
+    }
+    
+    @Override
+    public long getExecutionTimeMedian()
+    {
+        return execution.getPercentile(0.5);
+    }
+    
+    @Override
+    public long getExecutionTime99thPercentile()
+    {
+        return execution.getPercentile(0.99);
+    }
+    
+    @Override
+    public long getBlocked()
+    {
+        return blocks.get();
+    }
+    
+    @Override
+    public long getBlockedTimeMedian()
+    {
+        return blocked.getPercentile(0.5);
+    }
+    
+    @Override
+    public long getBlockedTime99thPercentile()
+    {
+        return blocked.getPercentile(0.99);
+    }
+    
+    @Override
+    public long getSLABreaches()
+    {
+        return breaches.get();
+    }
+    
+    @Override
+    public long getExceptions()
+    {
+        return exceptions.get();
+    }
+    
+    @Override
+    public long getDefaults()
+    {
+        return defaults.get();
+    }
+}
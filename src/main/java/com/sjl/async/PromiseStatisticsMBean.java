@@ -0,0 +1,34 @@
+package com.sjl.async;
+
+/**
+ * The JMX view of a PromiseStatistics. Latencies are in nanoseconds, and are upper bounds 
+ * accurate to within 25%, or -1 if nothing has been recorded yet.
+ * 
+ * @author steve
+ */
+public interface PromiseStatisticsMBean
+{
+    public String getName();
+    
+    public long getExecutions();
+    
+    public long getQueueWaitMedian();
+    
+    public long getQueueWait99thPercentile();
+    
+    public long getExecutionTimeMedian();
+    
+    public long getExecutionTime99thPercentile();
+    
+    public long getBlocked();
+    
+    public long getBlockedTimeMedian();
+    
+    public long getBlockedTime99thPercentile();
+    
+    public long getSLABreaches();
+    
+    public long getExceptions();
+    
+    public long getDefaults();
+}
@@ -0,0 +1,449 @@
+package com.sjl.async;
+
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A promise (or attempt) made by DynamicProxyPromissoryService, GeneratedProxyPromissoryService or
+ * BatchingPromissoryService in as few objects as possible: the FutureWithSLA, with the service's 
+ * template methods, is also the task its executor runs and the InvocationHandler of a dynamic proxy.
+ *
+ * That is two objects per promise, counting the proxy, where composing a Callable, a FutureTask,
+ * a FutureWithSLA and an InvocationHandler takes five. 
+ * 
+ * As a task it works like a FutureTask: it runs at most once, and whichever of running, failing 
+ * or cancelling it moves it on from NEW first decides its outcome. It only makes a Future of itself 
+ * for an SLA to wait on when a caller has to wait for it to finish.
+ *
+ * @author steve
+ */
+class PromiseTask<T> extends FutureWithSLA<T> implements Runnable, InvocationHandler
+{
+    // progress of the task, as in FutureTask
+    private static final int NEW = 0;
+    private static final int COMPLETING = 1;
+    private static final int NORMAL = 2;
+    private static final int EXCEPTIONAL = 3;
+    private static final int CANCELLED = 4;
+    private static final int INTERRUPTING = 5;
+    private static final int INTERRUPTED = 6;
+    
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<PromiseTask> PROGRESS = 
+        AtomicIntegerFieldUpdater.newUpdater(PromiseTask.class, "progress");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<PromiseTask, Thread> RUNNER = 
+        AtomicReferenceFieldUpdater.newUpdater(PromiseTask.class, Thread.class, "runner");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<PromiseTask, CountDownLatch> DONE = 
+        AtomicReferenceFieldUpdater.newUpdater(PromiseTask.class, CountDownLatch.class, "done");
+    
+    private final Fulfilment<T> fulfilment;
+    private final Executor executor;
+    private final ExecutionMode mode;
+    private final PromiseStatistics stats;
+    private final boolean measured;
+    private final CancellationToken token;
+    private final PromiseEvents.Promise event;
+    private volatile boolean deferred;
+    private volatile long queued; // when it was handed to the executor, or 0 if it hasn't been
+    
+    private volatile int progress = NEW;
+    private Object outcome; // published by the write to progress
+    private volatile Thread runner;
+    private volatile CountDownLatch done; // only made if a thread has to wait for the task
+
+    static <T> PromiseTask<T> create(
+        Fulfilment<T> aFulfilment, ServiceLevelAgreement anSLA,
+        Executor anExecutor, ExecutionMode aMode, PromiseMetrics aMetrics)
+    {
+        final PromiseTask<T> _result = new PromiseTask<T>(aFulfilment, anSLA, anExecutor, aMode, aMetrics);
+        if (_result.token != null)
+        {
+            // the task is cancelled along with the token and vice versa
+            _result.token.onCancel(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    _result.cancel(true);
+                }
+            });
+        }
+        if (aMode != ExecutionMode.LAZY)
+            _result.dispatch();
+        else if (_result.event != null)
+            PromiseEvents.unused(_result, _result.event);
+        
+        // only once the executor has accepted it, so that a rejected task is never breached too
+        _result.start();
+        return _result;
+    }
+
+    private PromiseTask(
+        Fulfilment<T> aFulfilment, ServiceLevelAgreement anSLA,
+        Executor anExecutor, ExecutionMode aMode, PromiseMetrics aMetrics)
+    {
+        super(anSLA);
+        fulfilment = aFulfilment;
+        executor = anExecutor;
+        mode = aMode;
+        stats = aMetrics.of(aFulfilment);
+        measured = aMetrics.isEnabled();
+        token = CancellationToken.of(aFulfilment);
+        deferred = (aMode == ExecutionMode.LAZY);
+        event = PromiseEvents.promised(this, aFulfilment, aMode);
+    }
+
+    @Override
+    public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable
+    {
+        return aMethod.invoke(get(), anArgs);
+    }
+
+    @Override
+    protected void whenPending()
+    {
+        deferred = false;
+        if (getSLA() != ServiceLevelAgreement.NULL_OBJECT)
+        {
+            // a caller abandons work it can't finish within the SLA, so can't do it itself
+            prefetch();
+        }
+        else if (mode != ExecutionMode.SUBMIT)
+        {
+            // only ever runs once, so this is a no-op if a pool thread got there first
+            run();
+        }
+    }
+
+    @Override
+    protected void whenPrefetched()
+    {
+        if (mode == ExecutionMode.LAZY)
+        {
+            deferred = false;
+            dispatch();
+        }
+    }
+
+    @Override
+    protected void whenSLAExceeded()
+    {
+        stats.recordBreach();
+        fulfilment.onBreachSLA(getSLA());
+    }
+
+    @Override
+    protected void whenExecutionException(Throwable anExc)
+    {
+        stats.recordException();
+        fulfilment.onException(anExc);
+    }
+
+    @Override
+    protected T createDefaultResult()
+    {
+        stats.recordDefault();
+        return fulfilment.createDefaultResult();
+    }
+
+    @Override
+    protected void whenBlocked(long aNanos)
+    {
+        stats.recordBlocked(aNanos);
+    }
+
+    @Override
+    boolean isDeferred()
+    {
+        return deferred;
+    }
+
+    @Override
+    String getName()
+    {
+        return PromiseMetrics.nameOf(fulfilment);
+    }
+
+    private void dispatch()
+    {
+        if (!(fulfilment instanceof DataflowFulfilment<?>))
+        {
+            execute();
+            return;
+        }
+
+        // hold it back until its inputs are realised, rather than have it wait for them on a pool thread
+        Promises.whenAllReady(((DataflowFulfilment<?>) fulfilment).getInputs(), new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    execute();
+                }
+                catch (RejectedExecutionException anExc)
+                {
+                    fail(anExc);
+                }
+            }
+        });
+    }
+
+    private void execute()
+    {
+        if (measured)
+            queued = System.nanoTime();
+        
+        if (event == null)
+        {
+            executor.execute(this);
+            return;
+        }
+
+        event.queued();
+        try
+        {
+            executor.execute(this);
+        }
+        catch (RejectedExecutionException anExc)
+        {
+            event.finished(PromiseEvents.Promise.REJECTED);
+            throw anExc;
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        if (progress != NEW || !RUNNER.compareAndSet(this, null, Thread.currentThread()))
+            return;
+        
+        try
+        {
+            if (progress != NEW)
+                return;
+            
+            T _result;
+            try
+            {
+                _result = call();
+            }
+            catch (Throwable anExc)
+            {
+                fail(anExc);
+                return;
+            }
+            complete(_result);
+        }
+        finally
+        {
+            runner = null;
+            
+            // don't leave a late interrupt from cancel(true) for whatever this thread runs next
+            while (progress == INTERRUPTING)
+                Thread.yield();
+        }
+    }
+    
+    /**
+     * Completes the task with aResult, unless it has already finished, without running it
+     */
+    void complete(T aResult)
+    {
+        if (PROGRESS.compareAndSet(this, NEW, COMPLETING))
+        {
+            outcome = aResult;
+            progress = NORMAL;
+            finish();
+        }
+    }
+    
+    /**
+     * Fails the task with anExc, unless it has already finished, without running it
+     */
+    void fail(Throwable anExc)
+    {
+        if (PROGRESS.compareAndSet(this, NEW, COMPLETING))
+        {
+            outcome = anExc;
+            progress = EXCEPTIONAL;
+            finish();
+        }
+    }
+    
+    boolean cancel(boolean anInterrupt)
+    {
+        if (!PROGRESS.compareAndSet(this, NEW, anInterrupt ? INTERRUPTING : CANCELLED))
+            return false;
+        
+        if (anInterrupt)
+        {
+            try
+            {
+                Thread _runner = runner;
+                if (_runner != null)
+                    _runner.interrupt();
+            }
+            finally
+            {
+                progress = INTERRUPTED;
+            }
+        }
+        finish();
+        return true;
+    }
+    
+    private void finish()
+    {
+        // waiters make the latch before looking at progress again, so one of us sees the other
+        CountDownLatch _done = done;
+        if (_done != null)
+            _done.countDown();
+        
+        if (token != null && progress >= CANCELLED)
+            token.cancel();
+        
+        notifyReady();
+    }
+    
+    @Override
+    boolean isNestedDone()
+    {
+        return progress > COMPLETING;
+    }
+    
+    @Override
+    boolean isNestedCancelled()
+    {
+        return progress >= CANCELLED;
+    }
+    
+    @Override
+    void cancelNested()
+    {
+        cancel(true);
+    }
+    
+    @Override
+    T awaitNested(ServiceLevelAgreement anSLA)
+    throws InterruptedException, ExecutionException, TimeoutException
+    {
+        // a finished task has nothing to wait for, so needs no Future for the SLA to wait on
+        if (progress > COMPLETING)
+            return report();
+        
+        return anSLA.get(new Outcome());
+    }
+    
+    /**
+     * @return true if the task finished within aNanos, or at all if not timed
+     */
+    private boolean awaitDone(boolean aTimed, long aNanos)
+    throws InterruptedException
+    {
+        if (progress > COMPLETING)
+            return true;
+        
+        DONE.compareAndSet(this, null, new CountDownLatch(1));
+        CountDownLatch _done = done;
+        if (progress > COMPLETING)
+            return true;
+        
+        if (!aTimed)
+        {
+            _done.await();
+            return true;
+        }
+        return _done.await(aNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private T report()
+    throws ExecutionException
+    {
+        int _progress = progress;
+        if (_progress == NORMAL)
+            return (T) outcome;
+        if (_progress >= CANCELLED)
+            throw new CancellationException();
+        throw new ExecutionException((Throwable) outcome);
+    }
+    
+    private T call() throws Exception
+    {
+        if (event != null)
+            event.started();
+
+        if (!measured)
+            return CancellationToken.execute(fulfilment, token);
+
+        // a lazy task which a caller runs before it is ever queued didn't wait in a queue at all
+        long _start = System.nanoTime();
+        long _queued = queued;
+        if (_queued != 0)
+            stats.recordQueueWait(_start - _queued);
+        try
+        {
+            return CancellationToken.execute(fulfilment, token);
+        }
+        finally
+        {
+            stats.recordExecution(System.nanoTime() - _start);
+        }
+    }
+
+    @Override
+    void notifyReady()
+    {
+        // called once the task is done, and again once this is settled
+        int _progress = progress;
+        if (event != null && _progress > COMPLETING)
+            event.finished((_progress == NORMAL) ? "SUCCESS" : (_progress == EXCEPTIONAL) ? "FAILED" : "CANCELLED");
+        super.notifyReady();
+    }
+    
+    /**
+     * The task as a Future, for an SLA to wait on
+     */
+    private class Outcome implements Future<T>
+    {
+        @Override
+        public boolean cancel(boolean anInterrupt)
+        {
+            return PromiseTask.this.cancel(anInterrupt);
+        }
+
+        @Override
+        public boolean isCancelled()
+        {
+            return isNestedCancelled();
+        }
+
+        @Override
+        public boolean isDone()
+        {
+            return isNestedDone();
+        }
+
+        @Override
+        public T get()
+        throws InterruptedException, ExecutionException
+        {
+            awaitDone(false, 0);
+            return report();
+        }
+
+        @Override
+        public T get(long aTimeout, TimeUnit aUnit)
+        throws InterruptedException, ExecutionException, TimeoutException
+        {
+            if (!awaitDone(true, aUnit.toNanos(aTimeout)))
+                throw new TimeoutException();
+            return report();
+        }
+    }
+}
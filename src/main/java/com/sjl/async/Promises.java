@@ -0,0 +1,258 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * Composes implicit futures returned by a PromissoryService without blocking a thread while 
+ * they are realised.
+ * 
+ * Each function or callback runs as soon as its input is realised, on whichever thread 
+ * realised it. If a caller needs a mapped result before then, the caller does the work on 
+ * its own thread rather than waiting for it.
+ * 
+ * Values that are not implicit futures (for example results that were already realised) are 
+ * treated as realised, so the function or callback is applied straight away.
+ * 
+ * Functions and callbacks are the standard java.util.function types. Exceptions thrown by a 
+ * function are re-thrown from every method invoked on the resulting implicit future.
+ * 
+ * @author steve
+ */
+public class Promises
+{
+    /**
+     * @return an implicit future of aFunction applied to the realised value of anImplicit
+     */
+    public static <T, R> R map(T anImplicit, final Function<? super T, ? extends R> aFunction, Class<R> aResultType)
+    {
+        final FutureWithSLA<T> _source = futureOf(anImplicit);
+        if (_source == null)
+            return aFunction.apply(anImplicit);
+        
+        NotifyingFutureTask<R> _task = new NotifyingFutureTask<R>(new Callable<R>() 
+        {
+            @Override
+            public R call() throws Exception
+            {
+                return aFunction.apply(_source.get());
+            }
+        });
+        _source.whenReady(_task);
+        
+        return newImplicit(_task, aResultType, anImplicit);
+    }
+    
+    /**
+     * @return an implicit future of the realised value of the (possibly implicit) result of aFunction 
+     * applied to the realised value of anImplicit
+     */
+    public static <T, R> R flatMap(T anImplicit, Function<? super T, ? extends R> aFunction, Class<R> aResultType)
+    {
+        R _result = map(anImplicit, aFunction, aResultType);
+        final FutureWithSLA<R> _mapped = futureOf(_result);
+        if (_mapped == null)
+            return _result;
+        
+        final NotifyingFutureTask<R> _task = new NotifyingFutureTask<R>(new Callable<R>() 
+        {
+            @Override
+            public R call() throws Exception
+            {
+                R _inner = _mapped.get();
+                FutureWithSLA<R> _f = futureOf(_inner);
+                return (_f != null) ? _f.get() : _inner;
+            }
+        });
+        _mapped.whenReady(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                FutureWithSLA<R> _f = null;
+                try 
+                {
+                    _f = futureOf(_mapped.get());
+                }
+                catch (RuntimeException anExc)
+                {
+                    // the task will meet the same exception
+                }
+                
+                if (_f != null)
+                    _f.whenReady(_task);
+                else
+                    _task.run();
+            }
+        });
+        
+        return newImplicit(_task, aResultType, anImplicit);
+    }
+    
+    /**
+     * Arranges for aCallback to receive the realised value of anImplicit without waiting for it.
+     */
+    public static <T> void onRealised(T anImplicit, final Consumer<? super T> aCallback)
+    {
+        final FutureWithSLA<T> _source = futureOf(anImplicit);
+        if (_source == null)
+        {
+            aCallback.accept(anImplicit);
+            return;
+        }
+        
+        _source.whenReady(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                aCallback.accept(_source.get());
+            }
+        });
+    }
+    
+    /**
+     * Arranges for aListener to run as soon as every one of someImplicits is realised, without 
+     * waiting for them - immediately, on the calling thread, if they already are. Any which were 
+     * deferred until needed are prefetched.
+     */
+    public static void whenAllReady(Collection<?> someImplicits, final Runnable aListener)
+    {
+        final AtomicInteger _outstanding = new AtomicInteger(someImplicits.size() + 1);
+        Runnable _countDown = new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                if (_outstanding.decrementAndGet() == 0)
+                    aListener.run();
+            }
+        };
+        
+        for (Object _implicit : someImplicits)
+        {
+            FutureWithSLA<?> _f = futureOf(_implicit);
+            if (_f == null)
+            {
+                // not an implicit future, so already realised
+                _countDown.run();
+                continue;
+            }
+            
+            _f.prefetch();
+            _f.whenReady(_countDown);
+        }
+        _countDown.run();
+    }
+    
+    /**
+     * Starts work on anImplicit now, if it was deferred until its result was needed (see 
+     * ExecutionMode.LAZY), without waiting for it. Does nothing for any other value.
+     */
+    public static <T> void prefetch(T anImplicit)
+    {
+        FutureWithSLA<T> _f = futureOf(anImplicit);
+        if (_f != null)
+            _f.prefetch();
+    }
+    
+    /**
+     * Gives up on anImplicit: unless it is already realised it settles with its default result, 
+     * and the work behind it is cancelled (see CancellableFulfilment). Does nothing for any other 
+     * value.
+     */
+    public static <T> void abandon(T anImplicit)
+    {
+        FutureWithSLA<T> _f = futureOf(anImplicit);
+        if (_f != null)
+            _f.abandon();
+    }
+    
+    @SuppressWarnings("unchecked")
+    static <T> FutureWithSLA<T> futureOf(T anImplicit)
+    {
+        FutureWithSLA<?> _result = FutureWithSLAInvocationHandler.futureOf(anImplicit);
+        if (_result == null)
+            _result = GeneratedProxyFactory.futureOf(anImplicit);
+        return (FutureWithSLA<T>) _result;
+    }
+    
+    /**
+     * @return an implicit future which realises the default result of aPromise straight away, 
+     * without executing it
+     */
+    static <T> T defaulted(final Fulfilment<T> aPromise)
+    throws RejectedExecutionException
+    {
+        GeneratedProxyFactory _proxies = new GeneratedProxyFactory();
+        if (!_proxies.canProxy(aPromise.getResultType()))
+            throw new RejectedExecutionException(
+                "this implementation is only able to satisfy interfaces and non-final classes " +
+                "with a no-arg constructor as return-types");
+        
+        // a cancelled future settles straight to the default result, without waiting
+        FutureTask<T> _never = new FutureTask<T>(new Callable<T>()
+        {
+            @Override
+            public T call()
+            {
+                return null;
+            }
+        });
+        _never.cancel(false);
+        
+        return _proxies.create(new FutureWithSLA<T>(_never, ServiceLevelAgreement.NULL_OBJECT)
+        {
+            @Override
+            protected T createDefaultResult()
+            {
+                return aPromise.createDefaultResult();
+            }
+        }, aPromise.getResultType());
+    }
+    
+    private static <R> R newImplicit(final NotifyingFutureTask<R> aTask, Class<R> aResultType, final Object aSource)
+    {
+        FutureWithSLA<R> _f = new FutureWithSLA<R>(aTask, ServiceLevelAgreement.NULL_OBJECT)
+        {
+            private RuntimeException exc;
+            
+            @Override
+            protected void whenPending()
+            {
+                // if the caller can't wait for the input to be realised, realise it on this thread
+                aTask.run();
+            }
+            
+            @Override
+            protected void whenPrefetched()
+            {
+                Promises.prefetch(aSource);
+            }
+            
+            @Override
+            protected void whenExecutionException(Throwable anExc)
+            {
+                exc = (anExc instanceof RuntimeException) ? 
+                    (RuntimeException) anExc : new RuntimeException(anExc);
+            }
+            
+            @Override
+            protected R createDefaultResult()
+            {
+                if (exc != null)
+                    throw exc;
+                return null;
+            }
+        };
+        _f.start();
+        
+        // keep to the same kind of proxy as the source, unless only a generated one will do 
+        boolean _generated = (GeneratedProxyFactory.futureOf(aSource) != null) || !aResultType.isInterface();
+        return _generated ? 
+            new GeneratedProxyFactory().create(_f, aResultType) : 
+            FutureWithSLAInvocationHandler.newProxy(_f, aResultType);
+    }
+}
@@ -1,5 +1,6 @@
 package com.sjl.async;
 
+import java.util.Collection;
 import java.util.concurrent.RejectedExecutionException;
 
 /**
@@ -38,4 +39,23 @@ public interface PromissoryService {
      */
     public <T> T attempt(Fulfilment<T> aPromise, ServiceLevelAgreement anSLA)
     throws RejectedExecutionException;
+    
+    /**
+     * Attempts to fulfill several promises concurrently within one SLA, waiting just once for 
+     * whichever comes first of all of them being fulfilled or the SLA being exceeded. Promises 
+     * not fulfilled within the SLA breach and are realised with their default results.
+     * 
+     * By default each promise is attempted with attempt(aPromise, anSLA), so implementations 
+     * rarely need to override this.
+     * 
+     * @param promises to fulfill
+     * @param a Service-Level Agreement to complete within
+     * @return the realised results, and which of the promises breached the SLA.
+     * @throws RejectedExecutionException if the implementation is not able to execute these tasks.
+     */
+    public default Attempts attemptAll(Collection<? extends Fulfilment<?>> aPromises, ServiceLevelAgreement anSLA)
+    throws RejectedExecutionException
+    {
+        return ScatterGather.attemptAll(this, aPromises, anSLA);
+    }
 }
@@ -2,13 +2,13 @@ package com.sjl.async;
 
 import java.util.concurrent.*;
 
-public class ResponseTimeSLA implements ServiceLevelAgreement {
+public class ResponseTimeSLA implements DeadlineSLA {
 
-	public ResponseTimeSLA nanosFromNow(long aNanos) {
+	public static ResponseTimeSLA nanosFromNow(long aNanos) {
 		return new ResponseTimeSLA(aNanos).start();
 	}
 	
-	public ResponseTimeSLA nanosFromStart(long aNanos) {
+	public static ResponseTimeSLA nanosFromStart(long aNanos) {
 		return new ResponseTimeSLA(aNanos);
 	}
 	
@@ -30,6 +30,11 @@ public class ResponseTimeSLA implements ServiceLevelAgreement {
 		return aFuture.get(timeRemaining(), TimeUnit.NANOSECONDS);
 	}
 
+	@Override
+	public long getDeadline() {
+		return startTime + slaTime;
+	}
+
 	public ResponseTimeSLA start() {
 		startTime = System.nanoTime();
 		return this;
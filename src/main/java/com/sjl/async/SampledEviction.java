@@ -0,0 +1,80 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps a ConcurrentMap to a maximum size, approximately least-recently-used: while the map is
+ * over its size, the least recently used of a few entries from a random part of it is evicted.
+ * That costs the same however large the map is, and needs no lock or list which every lookup
+ * has to update - each value only has to remember when it was last used.
+ *
+ * @author steve
+ */
+abstract class SampledEviction<K, V>
+{
+    private static final int SAMPLE = 5;
+
+    /**
+     * @return when aValue was last used, in terms of System.nanoTime()
+     */
+    protected abstract long lastUsed(V aValue);
+
+    /**
+     * @param a value just added, which is not to be evicted
+     * @return the number of entries evicted
+     */
+    int evictOverflow(ConcurrentMap<K, V> aMap, int aMaxSize, V anAdded)
+    {
+        int _result = 0;
+        while (aMap.size() > aMaxSize)
+        {
+            Map.Entry<K, V> _eldest = eldest(sample(aMap), anAdded);
+            if (_eldest == null)
+            {
+                // the sample missed, so settle for whatever comes first
+                _eldest = eldest(aMap.entrySet().iterator(), anAdded);
+                if (_eldest == null)
+                    return _result;
+            }
+
+            if (aMap.remove(_eldest.getKey(), _eldest.getValue()))
+                _result++;
+        }
+        return _result;
+    }
+
+    /**
+     * @return the entries in a small, random part of aMap
+     */
+    private Iterator<Map.Entry<K, V>> sample(ConcurrentMap<K, V> aMap)
+    {
+        // halving the map at random picks a part of it without walking the rest, and since
+        // keys are spread by their hash, the entries in that part are as good as random
+        Random _random = ThreadLocalRandom.current();
+        Spliterator<Map.Entry<K, V>> _part = aMap.entrySet().spliterator();
+        Spliterator<Map.Entry<K, V>> _half;
+        while (_part.estimateSize() > SAMPLE && (_half = _part.trySplit()) != null)
+        {
+            if (_random.nextBoolean())
+                _part = _half;
+        }
+        return Spliterators.iterator(_part);
+    }
+
+    /**
+     * @return the least recently used of the first few entries, other than anAdded, or null
+     */
+    private Map.Entry<K, V> eldest(Iterator<Map.Entry<K, V>> anEntries, V anAdded)
+    {
+        Map.Entry<K, V> _result = null;
+        for (int i=0; i<SAMPLE && anEntries.hasNext(); i++)
+        {
+            Map.Entry<K, V> _e = anEntries.next();
+            if (_e.getValue() != anAdded &&
+                (_result == null || lastUsed(_e.getValue()) - lastUsed(_result.getValue()) < 0))
+                _result = _e;
+        }
+        return _result;
+    }
+}
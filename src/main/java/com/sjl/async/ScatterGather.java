@@ -0,0 +1,73 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Implements the default PromissoryService.attemptAll in terms of PromissoryService.attempt: the 
+ * caller waits just once, for whichever comes first of all attempts being realised or the SLA 
+ * being exceeded, and any attempts still outstanding are then breached.
+ * 
+ * @author steve
+ */
+class ScatterGather
+{
+    static Attempts attemptAll(
+        PromissoryService aService, Collection<? extends Fulfilment<?>> aPromises, ServiceLevelAgreement anSLA)
+    throws RejectedExecutionException
+    {
+        List<Fulfilment<?>> _promises = new ArrayList<Fulfilment<?>>(aPromises);
+        List<Object> _implicits = new ArrayList<Object>(_promises.size());
+        for (Fulfilment<?> _p : _promises)
+            _implicits.add(aService.attempt(_p, anSLA));
+        
+        final FutureTask<Void> _all = new FutureTask<Void>(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+            }
+        }, null);
+        Promises.whenAllReady(_implicits, _all);
+        
+        await(_all, anSLA);
+        
+        Attempts _result = new Attempts();
+        for (int i = 0; i < _implicits.size(); i++)
+        {
+            Object _implicit = _implicits.get(i);
+            FutureWithSLA<?> _f = Promises.futureOf(_implicit);
+            if (_f == null)
+            {
+                _result.add(_promises.get(i), _implicit, false);
+                continue;
+            }
+            
+            // a no-op for attempts which have already been realised 
+            _f.breach();
+            _result.add(_promises.get(i), _f.get(), _f.isSLABreached());
+        }
+        return _result;
+    }
+    
+    private static void await(Future<Void> anAll, ServiceLevelAgreement anSLA)
+    {
+        try
+        {
+            if (!anSLA.isExceeded())
+                anSLA.get(anAll);
+        }
+        catch (TimeoutException anExc)
+        {
+            // stragglers will be breached
+        }
+        catch (InterruptedException anExc)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException anExc)
+        {
+            // can't happen, the task does nothing
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.sjl.async;
+
+/**
+ * Where a StreamingFulfilment publishes its elements.
+ * 
+ * @author steve
+ */
+public interface Sink<E>
+{
+    /**
+     * Hands anElement to the consumer, waiting if the consumer has fallen too far behind.
+     * 
+     * @return false if nobody wants any more elements - the SLA was breached or the consumer 
+     * closed the stream - in which case the fulfilment should stop
+     */
+    public boolean put(E anElement);
+}
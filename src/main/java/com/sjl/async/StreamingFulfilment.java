@@ -0,0 +1,16 @@
+package com.sjl.async;
+
+/**
+ * The work behind an ImplicitIterable: rather than return all of its elements at once, it puts 
+ * each into a Sink as soon as it has it.
+ * 
+ * @author steve
+ */
+public interface StreamingFulfilment<E>
+{
+    public void execute(Sink<E> aSink) throws Exception;
+    
+    public void onException(Throwable anExc);
+    
+    public void onBreachSLA(ServiceLevelAgreement anSLA);
+}
@@ -0,0 +1,14 @@
+package com.sjl.async;
+
+public abstract class StreamingFulfilmentAdapter<E> implements StreamingFulfilment<E>
+{
+    @Override
+    public void onException(Throwable anExc)
+    {       
+    }
+
+    @Override
+    public void onBreachSLA(ServiceLevelAgreement anSLA)
+    {
+    }
+}
@@ -0,0 +1,43 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+
+/**
+ * Promises streams of elements: the ImplicitIterable returned by promise() or attempt() hands out
+ * each element as soon as the StreamingFulfilment has published it, rather than once it has 
+ * published them all, and at most aBufferSize elements are held between the two at any time.
+ * 
+ * @author steve
+ */
+public class StreamingPromissoryService
+{
+    private ExecutorService executor;
+    private int bufferSize;
+    
+    public StreamingPromissoryService(ExecutorService anExecutor, int aBufferSize)
+    {
+        if (aBufferSize < 1)
+            throw new IllegalArgumentException("buffer size must be at least 1");
+        
+        executor = anExecutor;
+        bufferSize = aBufferSize;
+    }
+    
+    public <E> ImplicitIterable<E> promise(StreamingFulfilment<E> aPromise)
+    throws RejectedExecutionException
+    {
+        return attempt(aPromise, ServiceLevelAgreement.NULL_OBJECT);
+    }
+    
+    /**
+     * @return an ImplicitIterable whose iteration ends, after yielding whatever elements arrived 
+     * in time, when anSLA is exceeded
+     */
+    public <E> ImplicitIterable<E> attempt(StreamingFulfilment<E> aPromise, ServiceLevelAgreement anSLA)
+    throws RejectedExecutionException
+    {
+        ImplicitIterable<E> _result = new ImplicitIterable<E>(aPromise, anSLA, bufferSize);
+        _result.start(executor);
+        return _result;
+    }
+}
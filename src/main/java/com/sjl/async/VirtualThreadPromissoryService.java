@@ -0,0 +1,34 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+
+/**
+ * A PromissoryService which fulfils each promise on its own virtual thread, so there is no pool
+ * to size: a Fulfilment that blocks on I/O only ties up a virtual thread, and tens of thousands 
+ * of promises can be outstanding at once.
+ * 
+ * Closing the service stops it accepting new promises; those already made are still fulfilled.
+ * 
+ * @author steve
+ */
+public class VirtualThreadPromissoryService extends GeneratedProxyPromissoryService implements AutoCloseable
+{
+    private ExecutorService executor;
+    
+    public VirtualThreadPromissoryService()
+    {
+        this(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("promise-", 0).factory()));
+    }
+    
+    private VirtualThreadPromissoryService(ExecutorService anExecutor)
+    {
+        super(anExecutor);
+        executor = anExecutor;
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,213 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+public class AdmissionControlledPromissoryServiceTest {
+
+	private ExecutorService executorService;
+	private CountDownLatch release;
+	private AtomicInteger executions;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newFixedThreadPool(4);
+		release = new CountDownLatch(1);
+		executions = new AtomicInteger();
+	}
+
+	@After
+	public void teardown() {
+		release.countDown();
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void shedsAttemptsBeyondTheLimitToTheirDefaultResult() {
+		AimdConcurrencyLimit _limit = new AimdConcurrencyLimit(2, 1, 2);
+		AdmissionControlledPromissoryService _promissory = new AdmissionControlledPromissoryService(
+			new GeneratedProxyPromissoryService(executorService), _limit);
+
+		ReturnType _first = _promissory.attempt(new Blocking("a"), ServiceLevelAgreement.NULL_OBJECT);
+		ReturnType _second = _promissory.attempt(new Blocking("b"), ServiceLevelAgreement.NULL_OBJECT);
+		ReturnType _third = _promissory.attempt(new Blocking("c"), ServiceLevelAgreement.NULL_OBJECT);
+
+		Assert.assertEquals("default", _third.getValue());
+		Assert.assertEquals(1, _promissory.getShed());
+		Assert.assertEquals(2, _limit.getInFlight());
+
+		release.countDown();
+		Assert.assertEquals("a", _first.getValue());
+		Assert.assertEquals("b", _second.getValue());
+		Assert.assertEquals(2, executions.get());
+	}
+
+	@Test
+	public void admitsMoreOnceInFlightAttemptsComplete() throws Exception {
+		AimdConcurrencyLimit _limit = new AimdConcurrencyLimit(1, 1, 1);
+		AdmissionControlledPromissoryService _promissory = new AdmissionControlledPromissoryService(
+			new GeneratedProxyPromissoryService(executorService), _limit);
+		release.countDown();
+
+		Assert.assertEquals("a", _promissory.attempt(new Blocking("a"), ServiceLevelAgreement.NULL_OBJECT).getValue());
+		awaitIdle(_limit);
+		Assert.assertEquals("b", _promissory.attempt(new Blocking("b"), ServiceLevelAgreement.NULL_OBJECT).getValue());
+		Assert.assertEquals(0, _promissory.getShed());
+	}
+
+	@Test
+	public void alwaysAdmitsPromises() {
+		AimdConcurrencyLimit _limit = new AimdConcurrencyLimit(1, 1, 1);
+		AdmissionControlledPromissoryService _promissory = new AdmissionControlledPromissoryService(
+			new GeneratedProxyPromissoryService(executorService), _limit);
+
+		ReturnType _first = _promissory.promise(new Blocking("a"));
+		ReturnType _second = _promissory.promise(new Blocking("b"));
+		Assert.assertEquals(2, _limit.getInFlight());
+
+		release.countDown();
+		Assert.assertEquals("a", _first.getValue());
+		Assert.assertEquals("b", _second.getValue());
+	}
+
+	@Test
+	public void releasesAttemptsCancelledByBreachOfSLA() throws Exception {
+		AimdConcurrencyLimit _limit = new AimdConcurrencyLimit(1, 1, 1);
+		AdmissionControlledPromissoryService _promissory = new AdmissionControlledPromissoryService(
+			new GeneratedProxyPromissoryService(executorService), _limit);
+
+		ReturnType _result = _promissory.attempt(new Blocking("a"), 
+			ResponseTimeSLA.nanosFromNow(Nanoseconds.fromMilliseconds(20)));
+
+		Assert.assertEquals("default", _result.getValue());
+		awaitIdle(_limit);
+	}
+
+	@Test
+	public void limitGrowsWhileLatencyIsSteadyAndShrinksWhenWorkIsDropped() {
+		AimdConcurrencyLimit _limit = new AimdConcurrencyLimit(4, 1, 100);
+		for (int i=0; i<10; i++) {
+			for (int j=0; j<4; j++)
+				Assert.assertTrue(_limit.tryAcquire());
+			for (int j=0; j<4; j++)
+				_limit.release(1000, false);
+		}
+		Assert.assertTrue(_limit.getLimit() > 4);
+
+		int _grown = _limit.getLimit();
+		_limit.acquire();
+		_limit.release(1000, true);
+		Assert.assertTrue(_limit.getLimit() < _grown);
+
+		int _dropped = _limit.getLimit();
+		_limit.acquire();
+		_limit.release(1000000, false);
+		Assert.assertTrue(_limit.getLimit() < _dropped);
+	}
+
+	@Test
+	public void backsOffOnceForCallsAdmittedBeforeTheLastBackoff() {
+		AimdConcurrencyLimit _limit = new AimdConcurrencyLimit(100, 1, 100);
+		for (int i=0; i<10; i++)
+			Assert.assertTrue(_limit.tryAcquire());
+
+		// all ten saw the same spike, so the limit shrinks just once
+		for (int i=0; i<10; i++)
+			_limit.release(1000, true);
+		Assert.assertEquals(90, _limit.getLimit());
+
+		// but a call admitted since then sees congestion anew
+		_limit.acquire();
+		_limit.release(0, true);
+		Assert.assertEquals(81, _limit.getLimit());
+	}
+
+	@Test
+	public void releasesLazyPromisesWhichAreAbandonedUnused() {
+		AimdConcurrencyLimit _limit = new AimdConcurrencyLimit(10, 1, 10);
+		AdmissionControlledPromissoryService _promissory = new AdmissionControlledPromissoryService(
+			new GeneratedProxyPromissoryService(executorService, ExecutionMode.LAZY), _limit);
+
+		ReturnType _result = _promissory.promise(new Blocking("a"));
+		Assert.assertEquals(1, _limit.getInFlight());
+
+		Promises.abandon(_result);
+		Assert.assertEquals(0, _limit.getInFlight());
+		Assert.assertEquals(10, _limit.getLimit());
+		Assert.assertEquals(0, executions.get());
+	}
+
+	@Test
+	public void releasesLazyPromisesWhichAreNeverTouched() throws Exception {
+		AimdConcurrencyLimit _limit = new AimdConcurrencyLimit(10, 1, 10);
+		AdmissionControlledPromissoryService _promissory = new AdmissionControlledPromissoryService(
+			new GeneratedProxyPromissoryService(executorService, ExecutionMode.LAZY), _limit);
+
+		_promissory.promise(new Blocking("a"));
+		Assert.assertEquals(1, _limit.getInFlight());
+
+		long _deadline = System.currentTimeMillis() + 5000;
+		while (_limit.getInFlight() > 0 && System.currentTimeMillis() < _deadline) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(0, _limit.getInFlight());
+		Assert.assertEquals(10, _limit.getLimit());
+	}
+
+	@Test
+	public void releasesLazyPromisesOnceTheyAreUsed() throws Exception {
+		AimdConcurrencyLimit _limit = new AimdConcurrencyLimit(10, 1, 10);
+		AdmissionControlledPromissoryService _promissory = new AdmissionControlledPromissoryService(
+			new GeneratedProxyPromissoryService(executorService, ExecutionMode.LAZY), _limit);
+		release.countDown();
+
+		ReturnType _result = _promissory.promise(new Blocking("a"));
+		Assert.assertEquals("a", _result.getValue());
+		awaitIdle(_limit);
+		Assert.assertEquals(1, executions.get());
+	}
+
+	private void awaitIdle(ConcurrencyLimit aLimit) throws InterruptedException {
+		long _deadline = System.currentTimeMillis() + 5000;
+		while (aLimit.getInFlight() > 0 && System.currentTimeMillis() < _deadline)
+			Thread.sleep(1);
+		Assert.assertEquals(0, aLimit.getInFlight());
+	}
+
+	class Blocking extends FulfilmentAdapter<ReturnType> {
+		private String value;
+
+		Blocking(String aValue) {
+			super(ReturnType.class, new Value("default"));
+			value = aValue;
+		}
+
+		public ReturnType execute() throws Exception {
+			release.await();
+			executions.incrementAndGet();
+			return new Value(value);
+		}
+	}
+
+	public interface ReturnType {
+		String getValue();
+	}
+
+	public static class Value implements ReturnType {
+		private String value;
+
+		public Value() {
+		}
+
+		public Value(String aValue) {
+			value = aValue;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+public class BatchingPromissoryServiceTest {
+
+	private ScheduledExecutorService executorService;
+	private RecordingLoader loader;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newScheduledThreadPool(2);
+		loader = new RecordingLoader();
+	}
+
+	@After
+	public void teardown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void loadsFulfilmentsPromisedWithinTheWindowInOneBatch() {
+		PromissoryService _promissory = new BatchingPromissoryService(
+			executorService, Nanoseconds.fromMilliseconds(50), 100);
+
+		List<ReturnType> _results = new ArrayList<ReturnType>();
+		for (int i=0; i<5; i++)
+			_results.add(_promissory.promise(lookup(i)));
+
+		for (int i=0; i<5; i++)
+			Assert.assertEquals("value" + i, _results.get(i).getValue());
+
+		Assert.assertEquals(1, loader.batches.size());
+		Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), loader.batches.get(0));
+	}
+
+	@Test
+	public void loadsAsSoonAsTheMaximumBatchSizeIsReached() {
+		PromissoryService _promissory = new BatchingPromissoryService(
+			executorService, Nanoseconds.fromMinutes(1), 2);
+
+		ReturnType _first = _promissory.promise(lookup(1));
+		ReturnType _second = _promissory.promise(lookup(2));
+		ReturnType _third = _promissory.promise(lookup(3));
+		ReturnType _fourth = _promissory.promise(lookup(4));
+
+		Assert.assertEquals("value1", _first.getValue());
+		Assert.assertEquals("value2", _second.getValue());
+		Assert.assertEquals("value3", _third.getValue());
+		Assert.assertEquals("value4", _fourth.getValue());
+		Assert.assertEquals(2, loader.batches.size());
+	}
+
+	@Test
+	public void cancelsTheWindowWhenTheMaximumBatchSizeIsReached() {
+		ScheduledThreadPoolExecutor _executor = new ScheduledThreadPoolExecutor(2);
+		_executor.setRemoveOnCancelPolicy(true);
+		try {
+			PromissoryService _promissory = new BatchingPromissoryService(
+				_executor, Nanoseconds.fromMinutes(1), 2);
+
+			ReturnType _first = _promissory.promise(lookup(1));
+			ReturnType _second = _promissory.promise(lookup(2));
+
+			Assert.assertEquals("value1", _first.getValue());
+			Assert.assertEquals("value2", _second.getValue());
+			Assert.assertTrue(_executor.getQueue().isEmpty());
+		} finally {
+			_executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void recordsMetricsForBatchedFulfilments() {
+		PromiseMetrics _metrics = new PromiseMetrics();
+		PromissoryService _promissory = new BatchingPromissoryService(
+			executorService, Nanoseconds.fromMilliseconds(10), 100, _metrics);
+
+		ReturnType _first = _promissory.promise(lookup(1));
+		ReturnType _second = _promissory.promise(lookup(2));
+		Assert.assertEquals("value1", _first.getValue());
+		Assert.assertEquals("value2", _second.getValue());
+
+		PromiseStatistics _stats = _metrics.get(ReturnType.class.getName());
+		Assert.assertEquals(2, _stats.getExecutions());
+		Assert.assertTrue(_stats.getBlocked() > 0);
+	}
+
+	@Test
+	public void sharesOneLoadBetweenFulfilmentsForTheSameKey() {
+		PromissoryService _promissory = new BatchingPromissoryService(
+			executorService, Nanoseconds.fromMilliseconds(50), 100);
+
+		ReturnType _first = _promissory.promise(lookup(7));
+		ReturnType _second = _promissory.promise(lookup(7));
+
+		Assert.assertEquals("value7", _first.getValue());
+		Assert.assertEquals("value7", _second.getValue());
+		Assert.assertEquals(Arrays.asList(7), loader.batches.get(0));
+	}
+
+	@Test
+	public void failedBatchRealisesDefaultsAndReportsTheException() throws Exception {
+		final Exception _exc = new Exception();
+		final BlockingQueue<Throwable> _reported = new LinkedBlockingQueue<Throwable>();
+		BatchLoader<Integer, ReturnType> _failing = new BatchLoader<Integer, ReturnType>() {
+			public Map<Integer, ReturnType> load(List<Integer> aKeys) throws Exception {
+				throw _exc;
+			}
+		};
+
+		PromissoryService _promissory = new BatchingPromissoryService(
+			executorService, Nanoseconds.fromMilliseconds(10), 100);
+		ReturnType _result = _promissory.promise(
+			new BatchFulfilmentAdapter<Integer, ReturnType>(ReturnType.class, 1, _failing, new Value("default")) {
+				@Override
+				public void onException(Throwable anExc) {
+					_reported.add(anExc);
+				}
+			});
+
+		Assert.assertEquals("default", _result.getValue());
+		Assert.assertSame(_exc, _reported.poll(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void doesNotBreachAnAttemptWhoseWindowIsRejected() throws Exception {
+		final AtomicInteger _breaches = new AtomicInteger();
+		PromissoryService _promissory = new BatchingPromissoryService(
+			executorService, Nanoseconds.fromMilliseconds(10), 100);
+		executorService.shutdown();
+		try {
+			_promissory.attempt(new BatchFulfilmentAdapter<Integer, ReturnType>(ReturnType.class, 1, loader) {
+				@Override
+				public void onBreachSLA(ServiceLevelAgreement anSLA) {
+					_breaches.incrementAndGet();
+				}
+			}, ResponseTimeSLA.nanosFromNow(Nanoseconds.fromMilliseconds(1)));
+			Assert.fail("expected the attempt to be rejected");
+		} catch (RejectedExecutionException anExc) {
+			// expected
+		}
+
+		awaitDeadlinesDue(Nanoseconds.fromMilliseconds(50));
+		Assert.assertEquals(0, _breaches.get());
+	}
+
+	@Test
+	public void failsABatchWhoseLoadIsRejected() throws Exception {
+		final BlockingQueue<Throwable> _reported = new LinkedBlockingQueue<Throwable>();
+		ScheduledExecutorService _rejecting = new ScheduledThreadPoolExecutor(1) {
+			@Override
+			public void execute(Runnable aTask) {
+				throw new RejectedExecutionException();
+			}
+		};
+		try {
+			PromissoryService _promissory = new BatchingPromissoryService(
+				_rejecting, Nanoseconds.fromMinutes(1), 1);
+			ReturnType _result = _promissory.promise(
+				new BatchFulfilmentAdapter<Integer, ReturnType>(ReturnType.class, 1, loader, new Value("default")) {
+					@Override
+					public void onException(Throwable anExc) {
+						_reported.add(anExc);
+					}
+				});
+
+			Assert.assertEquals("default", _result.getValue());
+			Assert.assertTrue(_reported.poll(5, TimeUnit.SECONDS) instanceof RejectedExecutionException);
+			Assert.assertTrue(loader.batches.isEmpty());
+		} finally {
+			_rejecting.shutdownNow();
+		}
+	}
+
+	@Test
+	public void executesFulfilmentsThatAreNotBatchedIndividually() {
+		PromissoryService _promissory = new BatchingPromissoryService(
+			executorService, Nanoseconds.fromMilliseconds(10), 100);
+
+		ReturnType _result = _promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return new Value("single");
+			}
+		});
+
+		Assert.assertEquals("single", _result.getValue());
+		Assert.assertTrue(loader.batches.isEmpty());
+	}
+
+	private void awaitDeadlinesDue(long aNanosFromNow) throws InterruptedException {
+		// the shared wheel expires deadlines in order, so this one passing means earlier ones have
+		final CountDownLatch _passed = new CountDownLatch(1);
+		DeadlineWheel.SHARED.schedule(System.nanoTime() + aNanosFromNow, new Runnable() {
+			public void run() {
+				_passed.countDown();
+			}
+		});
+		Assert.assertTrue(_passed.await(5, TimeUnit.SECONDS));
+	}
+
+	private Fulfilment<ReturnType> lookup(int aKey) {
+		return new BatchFulfilmentAdapter<Integer, ReturnType>(ReturnType.class, aKey, loader);
+	}
+
+	class RecordingLoader implements BatchLoader<Integer, ReturnType> {
+		List<List<Integer>> batches = new CopyOnWriteArrayList<List<Integer>>();
+
+		public Map<Integer, ReturnType> load(List<Integer> aKeys) {
+			batches.add(aKeys);
+			Map<Integer, ReturnType> _results = new HashMap<Integer, ReturnType>();
+			for (Integer _key : aKeys)
+				_results.put(_key, new Value("value" + _key));
+			return _results;
+		}
+	}
+
+	public interface ReturnType {
+		String getValue();
+	}
+
+	public static class Value implements ReturnType {
+		private String value;
+
+		public Value() {
+		}
+
+		public Value(String aValue) {
+			value = aValue;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
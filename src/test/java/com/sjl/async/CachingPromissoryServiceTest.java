@@ -0,0 +1,205 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+import org.junit.*;
+
+public class CachingPromissoryServiceTest {
+
+	private ExecutorService executorService;
+	private AtomicInteger executions;
+	private AtomicLong now;
+	private LongSupplier clock;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newFixedThreadPool(4);
+		executions = new AtomicInteger();
+		now = new AtomicLong(System.nanoTime());
+		clock = new LongSupplier() {
+			public long getAsLong() {
+				return now.get();
+			}
+		};
+	}
+
+	@After
+	public void teardown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void concurrentPromisesForTheSameKeyShareOneExecution() throws Exception {
+		final CachingPromissoryService _promissory = new CachingPromissoryService(
+			new GeneratedProxyPromissoryService(executorService), 10, Nanoseconds.fromMinutes(1));
+		final CountDownLatch _release = new CountDownLatch(1);
+
+		List<ReturnType> _results = new ArrayList<ReturnType>();
+		for (int i=0; i<5; i++)
+			_results.add(_promissory.promise(new Lookup("a", _release)));
+		_release.countDown();
+
+		for (ReturnType _result : _results)
+			Assert.assertEquals("a1", _result.getValue());
+
+		Assert.assertSame(Promises.futureOf(_results.get(0)), Promises.futureOf(_results.get(4)));
+		Assert.assertEquals(1, executions.get());
+		Assert.assertEquals(1, _promissory.getMisses());
+		Assert.assertEquals(4, _promissory.getHits());
+	}
+
+	@Test
+	public void realisedResultsAreReusedUntilTheyExpire() throws Exception {
+		CachingPromissoryService _promissory = new CachingPromissoryService(
+			new Directly(), 10, Nanoseconds.fromMilliseconds(50), clock);
+
+		Assert.assertEquals("a1", _promissory.promise(new Lookup("a")).getValue());
+		now.addAndGet(Nanoseconds.fromMilliseconds(49));
+		Assert.assertEquals("a1", _promissory.promise(new Lookup("a")).getValue());
+		now.addAndGet(Nanoseconds.fromMilliseconds(1));
+		Assert.assertEquals("a2", _promissory.promise(new Lookup("a")).getValue());
+
+		Assert.assertEquals(1, _promissory.getEvictions());
+	}
+
+	@Test
+	public void timeToLiveStartsWhenTheResultIsRealised() throws Exception {
+		CachingPromissoryService _promissory = new CachingPromissoryService(
+			new GeneratedProxyPromissoryService(executorService), 10, Nanoseconds.fromMilliseconds(100), clock);
+		CountDownLatch _release = new CountDownLatch(1);
+
+		ReturnType _slow = _promissory.promise(new Lookup("a", _release));
+		now.addAndGet(Nanoseconds.fromMilliseconds(150));
+		_release.countDown();
+
+		Assert.assertEquals("a1", _slow.getValue());
+		Assert.assertEquals("a1", _promissory.promise(new Lookup("a")).getValue());
+		Assert.assertEquals(1, _promissory.getHits());
+		Assert.assertEquals(0, _promissory.getEvictions());
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsedResultWhenFull() {
+		CachingPromissoryService _promissory = new CachingPromissoryService(
+			new GeneratedProxyPromissoryService(executorService), 2, Nanoseconds.fromMinutes(1));
+
+		_promissory.promise(new Lookup("a")).getValue();
+		_promissory.promise(new Lookup("b")).getValue();
+		_promissory.promise(new Lookup("a")).getValue();
+		_promissory.promise(new Lookup("c")).getValue();
+
+		Assert.assertEquals(2, _promissory.size());
+		Assert.assertEquals(1, _promissory.getEvictions());
+		Assert.assertEquals("a1", _promissory.promise(new Lookup("a")).getValue());
+		Assert.assertEquals("b4", _promissory.promise(new Lookup("b")).getValue());
+	}
+
+	@Test
+	public void staysWithinItsMaximumSize() {
+		CachingPromissoryService _promissory = new CachingPromissoryService(
+			new Directly(), 100, Nanoseconds.fromMinutes(1));
+
+		for (int i=0; i<10000; i++)
+			_promissory.promise(new Lookup("k" + i)).getValue();
+
+		Assert.assertEquals(100, _promissory.size());
+		Assert.assertEquals(9900, _promissory.getEvictions());
+	}
+
+	@Test
+	public void doesNotReuseDefaultedResults() {
+		CachingPromissoryService _promissory = new CachingPromissoryService(
+			new GeneratedProxyPromissoryService(executorService), 10, Nanoseconds.fromMinutes(1));
+
+		Lookup _failing = new Lookup("a") {
+			@Override
+			public ReturnType execute() throws Exception {
+				executions.incrementAndGet();
+				throw new Exception();
+			}
+		};
+
+		Assert.assertEquals("default", _promissory.promise(_failing).getValue());
+		Assert.assertEquals("a2", _promissory.promise(new Lookup("a")).getValue());
+	}
+
+	@Test
+	public void executesFulfilmentsThatAreNotCacheableEveryTime() {
+		CachingPromissoryService _promissory = new CachingPromissoryService(
+			new GeneratedProxyPromissoryService(executorService), 10, Nanoseconds.fromMinutes(1));
+
+		for (int i=0; i<3; i++) {
+			_promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+				public ReturnType execute() {
+					return new Value("x" + executions.incrementAndGet());
+				}
+			}).getValue();
+		}
+
+		Assert.assertEquals(3, executions.get());
+		Assert.assertEquals(0, _promissory.size());
+	}
+
+	/**
+	 * Fulfils promises on the caller's thread, with results that are already realised
+	 */
+	static class Directly implements PromissoryService {
+		public <T> T promise(Fulfilment<T> aPromise) {
+			try {
+				return aPromise.execute();
+			} catch (Exception anExc) {
+				throw new RuntimeException(anExc);
+			}
+		}
+
+		public <T> T attempt(Fulfilment<T> aPromise, ServiceLevelAgreement anSLA) {
+			return promise(aPromise);
+		}
+	}
+
+	class Lookup extends FulfilmentAdapter<ReturnType> implements CacheableFulfilment<ReturnType> {
+		private String key;
+		private CountDownLatch release;
+
+		Lookup(String aKey) {
+			this(aKey, new CountDownLatch(0));
+		}
+
+		Lookup(String aKey, CountDownLatch aRelease) {
+			super(ReturnType.class, new Value("default"));
+			key = aKey;
+			release = aRelease;
+		}
+
+		public Object getCacheKey() {
+			return key;
+		}
+
+		public ReturnType execute() throws Exception {
+			release.await();
+			return new Value(key + executions.incrementAndGet());
+		}
+	}
+
+	public interface ReturnType {
+		String getValue();
+	}
+
+	public static class Value implements ReturnType {
+		private String value;
+
+		public Value() {
+		}
+
+		public Value(String aValue) {
+			value = aValue;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+public class CancellationTokenTest {
+
+	private ExecutorService executorService;
+	private PromissoryService promissory;
+	private CountDownLatch started;
+	private CountDownLatch stopped;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newSingleThreadExecutor();
+		promissory = new GeneratedProxyPromissoryService(executorService);
+		started = new CountDownLatch(1);
+		stopped = new CountDownLatch(1);
+	}
+
+	@After
+	public void teardown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void cancelsTheTokenOfFulfilmentsWhoseSLAIsBreached() throws Exception {
+		ReturnType _result = promissory.attempt(new Spinning(null), 
+			ResponseTimeSLA.nanosFromNow(Nanoseconds.fromMilliseconds(20)));
+
+		Assert.assertEquals("default", _result.getValue());
+		Assert.assertTrue(stopped.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void cancelsTheTokenOfFulfilmentsWhoseResultIsAbandoned() throws Exception {
+		ReturnType _result = promissory.promise(new Spinning(null));
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		Promises.abandon(_result);
+
+		Assert.assertTrue(stopped.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals("default", _result.getValue());
+	}
+
+	@Test
+	public void cancelsTheTokensOfFulfilmentsWhenTheirScopeIsClosed() throws Exception {
+		ReturnType _result;
+		try (CancellationToken _scope = new CancellationToken()) {
+			_result = promissory.promise(new Spinning(_scope));
+			Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		}
+
+		Assert.assertTrue(stopped.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals("default", _result.getValue());
+	}
+
+	@Test
+	public void runsListenersOnceWhenCancelledOrStraightAwayIfAlreadyCancelled() {
+		final AtomicInteger _calls = new AtomicInteger();
+		Runnable _listener = new Runnable() {
+			public void run() {
+				_calls.incrementAndGet();
+			}
+		};
+
+		CancellationToken _parent = new CancellationToken();
+		CancellationToken _child = new CancellationToken(_parent);
+		_child.onCancel(_listener);
+
+		_parent.cancel();
+		_parent.cancel();
+		Assert.assertTrue(_child.isCancelled());
+		Assert.assertEquals(1, _calls.get());
+
+		_child.onCancel(_listener);
+		Assert.assertEquals(2, _calls.get());
+	}
+
+	@Test(expected=CancellationException.class)
+	public void throwsIfCancelled() {
+		CancellationToken _token = new CancellationToken();
+		_token.throwIfCancelled();
+		_token.cancel();
+		_token.throwIfCancelled();
+	}
+
+	/**
+	 * Busy, so only stops when told to through its token, not when interrupted.
+	 */
+	class Spinning extends CancellableFulfilmentAdapter<ReturnType> {
+		Spinning(CancellationToken aScope) {
+			super(ReturnType.class, new Value("default"), aScope);
+		}
+
+		public ReturnType execute(CancellationToken aToken) {
+			started.countDown();
+			while (!aToken.isCancelled())
+				Thread.onSpinWait();
+			stopped.countDown();
+			return new Value("late");
+		}
+	}
+
+	public interface ReturnType {
+		String getValue();
+	}
+
+	public static class Value implements ReturnType {
+		private String value;
+
+		public Value() {
+		}
+
+		public Value(String aValue) {
+			value = aValue;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+public class CircuitBreakingPromissoryServiceTest {
+
+	private ExecutorService executorService;
+	private AtomicInteger executions;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newFixedThreadPool(2);
+		executions = new AtomicInteger();
+	}
+
+	@After
+	public void teardown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void shortCircuitsToTheDefaultResultOnceTheBreakerOpens() throws Exception {
+		CircuitBreakingPromissoryService _promissory = newPromissory(Nanoseconds.fromMinutes(1));
+
+		Assert.assertEquals("default", _promissory.promise(new Counting(true)).getValue());
+		Assert.assertEquals("default", _promissory.promise(new Counting(true)).getValue());
+		awaitState(_promissory, CircuitBreaker.State.OPEN);
+
+		Assert.assertEquals("default", _promissory.promise(new Counting(false)).getValue());
+		Assert.assertEquals(2, executions.get());
+		Assert.assertEquals(1, _promissory.getShortCircuited());
+	}
+
+	@Test
+	public void opensOnBreachesOfSLA() throws Exception {
+		CircuitBreakingPromissoryService _promissory = newPromissory(Nanoseconds.fromMinutes(1));
+		final CountDownLatch _never = new CountDownLatch(1);
+
+		for (int i=0; i<2; i++) {
+			ReturnType _result = _promissory.attempt(new Counting(false) {
+				@Override
+				public ReturnType execute() throws Exception {
+					_never.await();
+					return super.execute();
+				}
+			}, ResponseTimeSLA.nanosFromNow(Nanoseconds.fromMilliseconds(10)));
+			Assert.assertEquals("default", _result.getValue());
+		}
+
+		awaitState(_promissory, CircuitBreaker.State.OPEN);
+	}
+
+	@Test
+	public void closesWhenAProbeSucceeds() throws Exception {
+		CircuitBreakingPromissoryService _promissory = newPromissory(Nanoseconds.fromMilliseconds(50));
+
+		_promissory.promise(new Counting(true)).getValue();
+		_promissory.promise(new Counting(true)).getValue();
+		awaitState(_promissory, CircuitBreaker.State.OPEN);
+		Thread.sleep(100);
+
+		Assert.assertEquals("ok", _promissory.promise(new Counting(false)).getValue());
+		awaitState(_promissory, CircuitBreaker.State.CLOSED);
+	}
+
+	@Test
+	public void reopensWhenAProbeFails() throws Exception {
+		CircuitBreakingPromissoryService _promissory = newPromissory(Nanoseconds.fromMilliseconds(50));
+
+		_promissory.promise(new Counting(true)).getValue();
+		_promissory.promise(new Counting(true)).getValue();
+		awaitState(_promissory, CircuitBreaker.State.OPEN);
+		Thread.sleep(100);
+
+		_promissory.promise(new Counting(true)).getValue();
+		awaitState(_promissory, CircuitBreaker.State.OPEN);
+		Assert.assertEquals(3, executions.get());
+	}
+
+	@Test
+	public void letsAnotherProbeThroughWhenAProbeNeverCompletes() throws Exception {
+		CircuitBreakingPromissoryService _promissory = newPromissory(Nanoseconds.fromMilliseconds(50));
+		final CountDownLatch _never = new CountDownLatch(1);
+
+		_promissory.promise(new Counting(true)).getValue();
+		_promissory.promise(new Counting(true)).getValue();
+		awaitState(_promissory, CircuitBreaker.State.OPEN);
+		Thread.sleep(100);
+
+		// a probe with no SLA which hangs, so its outcome is never recorded
+		_promissory.promise(new Counting(false) {
+			@Override
+			public ReturnType execute() throws Exception {
+				_never.await();
+				return super.execute();
+			}
+		});
+		awaitState(_promissory, CircuitBreaker.State.HALF_OPEN);
+		Assert.assertEquals("default", _promissory.promise(new Counting(false)).getValue());
+
+		Thread.sleep(100);
+		Assert.assertEquals("ok", _promissory.promise(new Counting(false)).getValue());
+		awaitState(_promissory, CircuitBreaker.State.CLOSED);
+		_never.countDown();
+	}
+
+	@Test
+	public void keepsABreakerPerName() throws Exception {
+		CircuitBreakingPromissoryService _promissory = newPromissory(Nanoseconds.fromMinutes(1));
+
+		_promissory.promise(new Counting(true)).getValue();
+		_promissory.promise(new Counting(true)).getValue();
+		awaitState(_promissory, CircuitBreaker.State.OPEN);
+
+		CharSequence _other = _promissory.promise(new FulfilmentAdapter<CharSequence>(CharSequence.class) {
+			public CharSequence execute() {
+				return "other";
+			}
+		});
+		Assert.assertEquals("other", _other.toString());
+	}
+
+	private CircuitBreakingPromissoryService newPromissory(long anOpenNanos) {
+		return new CircuitBreakingPromissoryService(
+			new GeneratedProxyPromissoryService(executorService), 4, 0.5, anOpenNanos);
+	}
+
+	private void awaitState(CircuitBreakingPromissoryService aPromissory, CircuitBreaker.State aState) 
+	throws InterruptedException {
+		// outcomes are recorded by the thread which completes the fulfilment, just after the caller sees them
+		CircuitBreaker _breaker = aPromissory.getBreaker(ReturnType.class.getName());
+		long _deadline = System.nanoTime() + Nanoseconds.fromSeconds(5);
+		while (_breaker.getState() != aState && System.nanoTime() < _deadline)
+			Thread.sleep(5);
+
+		Assert.assertEquals(aState, _breaker.getState());
+	}
+
+	class Counting extends FulfilmentAdapter<ReturnType> {
+		private boolean fails;
+
+		Counting(boolean aFails) {
+			super(ReturnType.class, new Value("default"));
+			fails = aFails;
+		}
+
+		public ReturnType execute() throws Exception {
+			executions.incrementAndGet();
+			if (fails)
+				throw new Exception();
+			return new Value("ok");
+		}
+	}
+
+	public interface ReturnType {
+		String getValue();
+	}
+
+	public static class Value implements ReturnType {
+		private String value;
+
+		public Value() {
+		}
+
+		public Value(String aValue) {
+			value = aValue;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
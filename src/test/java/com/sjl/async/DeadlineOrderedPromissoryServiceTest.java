@@ -0,0 +1,139 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+public class DeadlineOrderedPromissoryServiceTest {
+
+	private DeadlineOrderedPromissoryService promissory;
+	private CountDownLatch release;
+	private List<String> executed;
+
+	@Before
+	public void setup() {
+		promissory = new DeadlineOrderedPromissoryService(1);
+		release = new CountDownLatch(1);
+		executed = new CopyOnWriteArrayList<String>();
+	}
+
+	@After
+	public void teardown() {
+		release.countDown();
+		promissory.close();
+	}
+
+	@Test
+	public void runsQueuedAttemptsEarliestDeadlineFirstAndPromisesLast() throws Exception {
+		ReturnType _blocker = promissory.promise(new Recording("blocker"));
+		ReturnType _promise = promissory.promise(new Recording("promise"));
+		ReturnType _later = promissory.attempt(new Recording("later"), ResponseTimeSLA.nanosFromNow(Nanoseconds.fromSeconds(20)));
+		ReturnType _sooner = promissory.attempt(new Recording("sooner"), ResponseTimeSLA.nanosFromNow(Nanoseconds.fromSeconds(10)));
+		
+		Assert.assertEquals(3, promissory.getQueued());
+		release.countDown();
+
+		Assert.assertEquals("promise", _promise.getValue());
+		Assert.assertEquals("later", _later.getValue());
+		Assert.assertEquals("sooner", _sooner.getValue());
+		Assert.assertEquals("blocker", _blocker.getValue());
+		Assert.assertEquals(Arrays.asList("blocker", "sooner", "later", "promise"), executed);
+	}
+
+	@Test
+	public void defaultsExpiredAttemptsWithoutExecutingThem() throws Exception {
+		final CountDownLatch _breached = new CountDownLatch(1);
+		final boolean[] _exceeded = new boolean[1];
+		ServiceLevelAgreement _sla = new ServiceLevelAgreement() {
+			public boolean isExceeded() {
+				return _exceeded[0];
+			}
+
+			public <T> T get(Future<T> aFuture) throws InterruptedException, ExecutionException, TimeoutException {
+				return aFuture.get(5, TimeUnit.SECONDS);
+			}
+		};
+
+		promissory.promise(new Recording("blocker"));
+		ReturnType _expired = promissory.attempt(new Recording("expired") {
+			@Override
+			public void onBreachSLA(ServiceLevelAgreement anSLA) {
+				_breached.countDown();
+			}
+		}, _sla);
+
+		_exceeded[0] = true;
+		release.countDown();
+
+		Assert.assertTrue(_breached.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals("default", _expired.getValue());
+		Assert.assertEquals(Arrays.asList("blocker"), executed);
+	}
+
+	@Test
+	public void doesNotBreachAnAttemptItsExecutorRejects() throws Exception {
+		final AtomicInteger _breaches = new AtomicInteger();
+		promissory.close();
+		try {
+			promissory.attempt(new Recording("rejected") {
+				@Override
+				public void onBreachSLA(ServiceLevelAgreement anSLA) {
+					_breaches.incrementAndGet();
+				}
+			}, ResponseTimeSLA.nanosFromNow(Nanoseconds.fromMilliseconds(1)));
+			Assert.fail("expected the attempt to be rejected");
+		} catch (RejectedExecutionException anExc) {
+			// expected
+		}
+
+		awaitDeadlinesDue(Nanoseconds.fromMilliseconds(50));
+		Assert.assertEquals(0, _breaches.get());
+	}
+
+	private void awaitDeadlinesDue(long aNanosFromNow) throws InterruptedException {
+		// the shared wheel expires deadlines in order, so this one passing means earlier ones have
+		final CountDownLatch _passed = new CountDownLatch(1);
+		DeadlineWheel.SHARED.schedule(System.nanoTime() + aNanosFromNow, new Runnable() {
+			public void run() {
+				_passed.countDown();
+			}
+		});
+		Assert.assertTrue(_passed.await(5, TimeUnit.SECONDS));
+	}
+
+	class Recording extends FulfilmentAdapter<ReturnType> {
+		private String value;
+
+		Recording(String aValue) {
+			super(ReturnType.class, new Value("default"));
+			value = aValue;
+		}
+
+		public ReturnType execute() throws Exception {
+			release.await();
+			executed.add(value);
+			return new Value(value);
+		}
+	}
+
+	public interface ReturnType {
+		String getValue();
+	}
+
+	public static class Value implements ReturnType {
+		private String value;
+
+		public Value() {
+		}
+
+		public Value(String aValue) {
+			value = aValue;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
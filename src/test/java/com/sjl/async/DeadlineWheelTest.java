@@ -0,0 +1,209 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+import org.junit.*;
+
+public class DeadlineWheelTest {
+
+	private DeadlineWheel wheel;
+
+	@Before
+	public void setup() {
+		wheel = new DeadlineWheel(Nanoseconds.fromMilliseconds(1), 8);
+	}
+
+	@Test
+	public void runsTasksNoSoonerThanTheirDeadline() throws Exception {
+		final long _deadline = System.nanoTime() + Nanoseconds.fromMilliseconds(30);
+		final BlockingQueue<Long> _ran = new LinkedBlockingQueue<Long>();
+
+		wheel.schedule(_deadline, new Runnable() {
+			public void run() {
+				_ran.add(System.nanoTime());
+			}
+		});
+
+		Long _at = _ran.poll(5, TimeUnit.SECONDS);
+		Assert.assertNotNull(_at);
+		Assert.assertTrue(_at >= _deadline);
+	}
+
+	@Test
+	public void runsTasksWhoseDeadlineIsManyRotationsAway() throws Exception {
+		// 8 buckets of 1ms, so 50ms is several rotations
+		final long _deadline = System.nanoTime() + Nanoseconds.fromMilliseconds(50);
+		final BlockingQueue<Long> _ran = new LinkedBlockingQueue<Long>();
+
+		wheel.schedule(_deadline, new Runnable() {
+			public void run() {
+				_ran.add(System.nanoTime());
+			}
+		});
+
+		Long _at = _ran.poll(5, TimeUnit.SECONDS);
+		Assert.assertNotNull(_at);
+		Assert.assertTrue(_at >= _deadline);
+	}
+
+	@Test
+	public void doesNotRunCancelledTasks() throws Exception {
+		final AtomicInteger _ran = new AtomicInteger();
+		final CountDownLatch _later = new CountDownLatch(1);
+
+		wheel.schedule(System.nanoTime() + Nanoseconds.fromMilliseconds(10), new Runnable() {
+			public void run() {
+				_ran.incrementAndGet();
+			}
+		}).cancel();
+		wheel.schedule(System.nanoTime() + Nanoseconds.fromMilliseconds(20), new Runnable() {
+			public void run() {
+				_later.countDown();
+			}
+		});
+
+		Assert.assertTrue(_later.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(0, _ran.get());
+	}
+
+	@Test
+	public void runsManyOutstandingTasks() throws Exception {
+		final int _count = 100000;
+		final CountDownLatch _ran = new CountDownLatch(_count);
+		long _now = System.nanoTime();
+
+		for (int i=0; i<_count; i++) {
+			wheel.schedule(_now + Nanoseconds.fromMicroseconds(i % 50000), new Runnable() {
+				public void run() {
+					_ran.countDown();
+				}
+			});
+		}
+
+		Assert.assertTrue(_ran.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void aSlowTaskDoesNotHoldUpOtherDeadlines() throws Exception {
+		final CountDownLatch _release = new CountDownLatch(1);
+		final CountDownLatch _ran = new CountDownLatch(1);
+		long _now = System.nanoTime();
+
+		wheel.schedule(_now + Nanoseconds.fromMilliseconds(5), new Runnable() {
+			public void run() {
+				try {
+					_release.await();
+				} catch (InterruptedException anExc) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		wheel.schedule(_now + Nanoseconds.fromMilliseconds(20), new Runnable() {
+			public void run() {
+				_ran.countDown();
+			}
+		});
+
+		try {
+			Assert.assertTrue(_ran.await(5, TimeUnit.SECONDS));
+		} finally {
+			_release.countDown();
+		}
+	}
+
+	@Test
+	public void aBurstOfExpiriesRunsOnABoundedNumberOfThreads() throws Exception {
+		final int _count = DeadlineWheel.EXPIRY_QUEUE * 2;
+		final CountDownLatch _ran = new CountDownLatch(_count);
+		final AtomicInteger _running = new AtomicInteger();
+		final AtomicInteger _most = new AtomicInteger();
+		long _now = System.nanoTime() + Nanoseconds.fromMilliseconds(5);
+
+		for (int i=0; i<_count; i++) {
+			wheel.schedule(_now, new Runnable() {
+				public void run() {
+					int _concurrent = _running.incrementAndGet();
+					int _seen;
+					while ((_seen = _most.get()) < _concurrent && !_most.compareAndSet(_seen, _concurrent))
+						;
+					LockSupport.parkNanos(Nanoseconds.fromMicroseconds(50));
+					_running.decrementAndGet();
+					_ran.countDown();
+				}
+			});
+		}
+
+		// the pool's threads, plus the wheel's thread once the queue overflows
+		Assert.assertTrue(_ran.await(10, TimeUnit.SECONDS));
+		Assert.assertTrue(_most.get() <= DeadlineWheel.EXPIRY_THREADS + 1);
+	}
+
+	@Test
+	public void keepsTurningAfterAnError() throws Exception {
+		final AtomicBoolean _failed = new AtomicBoolean();
+		final CountDownLatch _ran = new CountDownLatch(1);
+		DeadlineWheel _wheel = new DeadlineWheel(Nanoseconds.fromMilliseconds(1), 8, new Executor() {
+			public void execute(Runnable aTask) {
+				if (_failed.compareAndSet(false, true))
+					throw new AssertionError("expected");
+				aTask.run();
+			}
+		});
+
+		Thread.UncaughtExceptionHandler _handler = Thread.getDefaultUncaughtExceptionHandler();
+		Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+			public void uncaughtException(Thread aThread, Throwable anExc) {
+				// quietly
+			}
+		});
+		try {
+			long _now = System.nanoTime();
+			_wheel.schedule(_now + Nanoseconds.fromMilliseconds(5), new Runnable() {
+				public void run() {
+				}
+			});
+			_wheel.schedule(_now + Nanoseconds.fromMilliseconds(20), new Runnable() {
+				public void run() {
+					_ran.countDown();
+				}
+			});
+
+			Assert.assertTrue(_ran.await(5, TimeUnit.SECONDS));
+			Assert.assertTrue(_failed.get());
+		} finally {
+			Thread.setDefaultUncaughtExceptionHandler(_handler);
+		}
+	}
+
+	@Test
+	public void parksWhileThereAreNoDeadlines() throws Exception {
+		final CountDownLatch _ran = new CountDownLatch(2);
+		Runnable _task = new Runnable() {
+			public void run() {
+				_ran.countDown();
+			}
+		};
+
+		wheel.schedule(System.nanoTime() + Nanoseconds.fromMilliseconds(5), _task);
+		awaitIdle();
+
+		// and wakes when there is one again
+		wheel.schedule(System.nanoTime() + Nanoseconds.fromMilliseconds(5), _task);
+		Assert.assertTrue(_ran.await(5, TimeUnit.SECONDS));
+		awaitIdle();
+
+		// a cancelled deadline is nothing to wait for
+		wheel.schedule(System.nanoTime() + Nanoseconds.fromMinutes(1), _task).cancel();
+		awaitIdle();
+	}
+
+	private void awaitIdle() throws InterruptedException {
+		long _deadline = System.nanoTime() + Nanoseconds.fromSeconds(5);
+		while (!wheel.isIdle() && System.nanoTime() < _deadline)
+			Thread.sleep(1);
+
+		Assert.assertTrue(wheel.isIdle());
+	}
+}
@@ -1,5 +1,8 @@
 package com.sjl.async;
 
+import java.lang.reflect.Proxy;
+import java.util.concurrent.*;
+
 import org.jmock.*;
 import org.junit.*;
 
@@ -66,6 +69,119 @@ public class DynamicProxyAsyncificationServiceTest {
 		Assert.assertEquals("third", _r3.getValue3());
 	}
 	
+	@Test
+	public void promisesTheDeclaredReturnTypeOfTheMethod() {
+		ExecutorService _executor = Executors.newSingleThreadExecutor();
+		try {
+			Calculator _async = new DynamicProxyAsyncificationService(
+				new DynamicProxyPromissoryService(_executor)).makeAsync(new Adder());
+			
+			Sum _sum = _async.add(2, 3);
+			Assert.assertTrue(Proxy.isProxyClass(_sum.getClass()));
+			Assert.assertEquals(5, _sum.getTotal());
+		} finally {
+			_executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void propagatesExceptionsFromUnmarkedMethodsUnchanged() {
+		Calculator _async = new DynamicProxyAsyncificationService(promissory).makeAsync(new Adder());
+		
+		try {
+			_async.fail();
+			Assert.fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException anExc) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void returnsObjectsWhichAreAlreadyAsyncUnchanged() {
+		Calculator _async = async.makeAsync(new Adder());
+		
+		Assert.assertSame(_async, async.makeAsync(_async));
+	}
+	
+	@Test
+	public void collapsesImplicitFuturesReturnedByAsyncMethods() {
+		ExecutorService _executor = Executors.newFixedThreadPool(2);
+		try {
+			AsyncificationService _async = new DynamicProxyAsyncificationService(
+				new DynamicProxyPromissoryService(_executor));
+			Calculator _delegating = _async.makeAsync(new DelegatingCalculator(_async.makeAsync(new Adder())));
+			
+			Sum _sum = _delegating.add(2, 3);
+			Assert.assertEquals(5, _sum.getTotal());
+			Assert.assertTrue(ImplicitFutures.isRealised(_sum));
+			Assert.assertFalse(ImplicitFutures.isImplicit(Promises.futureOf(_sum).get()));
+		} finally {
+			_executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void isolatesMethodsInTheirOwnBulkheads() throws Exception {
+		Bulkheads _bulkheads = new Bulkheads();
+		CountDownLatch _release = new CountDownLatch(1);
+		try {
+			Dependencies _async = new DynamicProxyAsyncificationService(promissory, _bulkheads)
+				.makeAsync(new BlockingDependencies(_release));
+			
+			Sum _slow = _async.slow();
+			try {
+				_async.slow();
+				Assert.fail("expected RejectedExecutionException");
+			} catch (RejectedExecutionException anExc) {
+				// expected, the slow bulkhead is full
+			}
+			
+			Assert.assertEquals(1, _async.fast().getTotal());
+			_release.countDown();
+			Assert.assertEquals(2, _slow.getTotal());
+		} finally {
+			_release.countDown();
+			_bulkheads.shutdown();
+		}
+	}
+	
+	@Test
+	public void failsCallsWhichExceedTheirSLA() {
+		Bulkheads _bulkheads = new Bulkheads();
+		CountDownLatch _release = new CountDownLatch(1);
+		try {
+			Dependencies _async = new DynamicProxyAsyncificationService(promissory, _bulkheads)
+				.makeAsync(new BlockingDependencies(_release));
+			
+			try {
+				_async.bounded().getTotal();
+				Assert.fail("expected timeout");
+			} catch (RuntimeException anExc) {
+				Assert.assertTrue(anExc.getCause() instanceof TimeoutException);
+			}
+		} finally {
+			_release.countDown();
+			_bulkheads.shutdown();
+		}
+	}
+	
+	@Test
+	public void defersLazyMethodsUntilTheirResultIsUsed() {
+		Bulkheads _bulkheads = new Bulkheads();
+		try {
+			CountingCalculator _counting = new CountingCalculator();
+			LazyCalculator _async = new DynamicProxyAsyncificationService(promissory, _bulkheads)
+				.makeAsync(_counting);
+			
+			Sum _sum = _async.add(2, 3);
+			Assert.assertEquals(0, _counting.calls);
+			Assert.assertEquals(5, _sum.getTotal());
+			Assert.assertEquals(1, _counting.calls);
+		} finally {
+			_bulkheads.shutdown();
+		}
+	}
+	
 	@Test
 	public void createsFulfilmentsThatCaptureExceptionsForDelayedPropagation() {
 		// capture the fulfilment, invoke onException
@@ -86,6 +202,101 @@ public class DynamicProxyAsyncificationServiceTest {
 		public String getValue3();
 	}
 	
+	interface Sum {
+		public int getTotal();
+	}
+	
+	interface Calculator {
+		@ComputationallyIntensive
+		public Sum add(int aLeft, int aRight);
+		
+		public void fail();
+	}
+	
+	static class Adder implements Calculator {
+		public Sum add(final int aLeft, final int aRight) {
+			return new Sum() {
+				public int getTotal() {
+					return aLeft + aRight;
+				}
+			};
+		}
+		
+		public void fail() {
+			throw new IllegalArgumentException();
+		}
+	}
+	
+	static class DelegatingCalculator implements Calculator {
+		private Calculator delegate;
+		
+		DelegatingCalculator(Calculator aDelegate) {
+			delegate = aDelegate;
+		}
+		
+		public Sum add(int aLeft, int aRight) {
+			return delegate.add(aLeft, aRight);
+		}
+		
+		public void fail() {
+			delegate.fail();
+		}
+	}
+	
+	interface LazyCalculator {
+		@ComputationallyIntensive(pool="lazy", lazy=true)
+		public Sum add(int aLeft, int aRight);
+	}
+	
+	static class CountingCalculator implements LazyCalculator {
+		volatile int calls;
+		
+		public Sum add(int aLeft, int aRight) {
+			calls++;
+			return new Adder().add(aLeft, aRight);
+		}
+	}
+	
+	interface Dependencies {
+		@ComputationallyIntensive(pool="slow", concurrency=1, queueDepth=0)
+		public Sum slow();
+		
+		@ComputationallyIntensive(pool="fast")
+		public Sum fast();
+		
+		@ComputationallyIntensive(pool="bounded", slaMillis=20)
+		public Sum bounded();
+	}
+	
+	static class BlockingDependencies implements Dependencies {
+		private CountDownLatch release;
+		
+		BlockingDependencies(CountDownLatch aRelease) {
+			release = aRelease;
+		}
+		
+		public Sum slow() {
+			return new Adder().add(1, await());
+		}
+		
+		public Sum fast() {
+			return new Adder().add(1, 0);
+		}
+		
+		public Sum bounded() {
+			return new Adder().add(2, await());
+		}
+		
+		private int await() {
+			try {
+				release.await();
+				return 1;
+			} catch (InterruptedException anExc) {
+				throw new RuntimeException(anExc);
+			}
+		}
+	}
+	
 	interface Service {
 		@ComputationallyIntensive
 		public ReturnType1 first();
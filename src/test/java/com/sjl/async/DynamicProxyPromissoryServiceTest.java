@@ -1,6 +1,8 @@
 package com.sjl.async;
 
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import org.jmock.*;
 import org.junit.*;
@@ -31,6 +33,7 @@ public class DynamicProxyPromissoryServiceTest {
 	@After
 	public void teardown(){
 		ctx.assertIsSatisfied();
+		executorService.shutdownNow();
 	}
 	
 	@Test
@@ -50,6 +53,226 @@ public class DynamicProxyPromissoryServiceTest {
 		_result.getValue1();
 	}
 	
+	@Test
+	public void doesNotBreachAnAttemptItsExecutorRejects() throws Exception {
+		final AtomicInteger _breaches = new AtomicInteger();
+		executorService.shutdown();
+		try {
+			promissory.attempt(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+				public ReturnType execute() {
+					return new Value("a");
+				}
+
+				@Override
+				public void onBreachSLA(ServiceLevelAgreement anSLA) {
+					_breaches.incrementAndGet();
+				}
+			}, ResponseTimeSLA.nanosFromNow(Nanoseconds.fromMilliseconds(1)));
+			Assert.fail("expected the attempt to be rejected");
+		} catch (RejectedExecutionException anExc) {
+			// expected
+		}
+
+		awaitDeadlinesDue(Nanoseconds.fromMilliseconds(50));
+		Assert.assertEquals(0, _breaches.get());
+	}
+
+	@Test
+	public void callerRunsFulfilmentThatHasNotStartedWhenHelpingOut() throws Exception {
+		final CountDownLatch _release = new CountDownLatch(1);
+		executorService.execute(new Runnable() {
+			public void run() {
+				try {
+					_release.await();
+				} catch (InterruptedException anExc) {
+					// ignore
+				}
+			}
+		});
+
+		promissory = new DynamicProxyPromissoryService(executorService, ExecutionMode.HELP_OUT);
+		ReturnType _result = promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return new Value(Thread.currentThread().getName());
+			}
+		});
+
+		try {
+			Assert.assertEquals(Thread.currentThread().getName(), _result.getValue1());
+		} finally {
+			_release.countDown();
+		}
+	}
+
+	@Test
+	public void nestedPromisesDoNotDeadlockASingleThreadPoolWhenHelpingOut() throws Exception {
+		promissory = new DynamicProxyPromissoryService(executorService, ExecutionMode.HELP_OUT);
+		ReturnType _outer = promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				ReturnType _inner = promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+					public ReturnType execute() {
+						return new Value("inner");
+					}
+				});
+				return new Value("outer:" + _inner.getValue1());
+			}
+		});
+
+		Assert.assertEquals("outer:inner", _outer.getValue1());
+	}
+
+	@Test
+	public void attemptAllWaitsOnceAndDefaultsStragglers() {
+		executorService = Executors.newFixedThreadPool(3);
+		promissory = new DynamicProxyPromissoryService(executorService);
+
+		final CountDownLatch _never = new CountDownLatch(1);
+		Fulfilment<ReturnType> _fast = new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return new Value("fast");
+			}
+		};
+		Fulfilment<ReturnType> _alsoFast = new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return new Value("also fast");
+			}
+		};
+		Fulfilment<ReturnType> _slow = new FulfilmentAdapter<ReturnType>(ReturnType.class, new Value("default")) {
+			public ReturnType execute() throws Exception {
+				_never.await();
+				return new Value("slow");
+			}
+		};
+
+		long _start = System.nanoTime();
+		Attempts _attempts = promissory.attemptAll(Arrays.asList(_fast, _slow, _alsoFast),
+			ResponseTimeSLA.nanosFromNow(Nanoseconds.fromMilliseconds(100)));
+		long _elapsed = System.nanoTime() - _start;
+
+		Assert.assertEquals("fast", _attempts.get(_fast).getValue1());
+		Assert.assertEquals("also fast", _attempts.get(_alsoFast).getValue1());
+		Assert.assertEquals("default", _attempts.get(_slow).getValue1());
+		Assert.assertEquals(Collections.singleton(_slow), _attempts.getBreached());
+		Assert.assertEquals(3, _attempts.getResults().size());
+		Assert.assertTrue(_elapsed >= Nanoseconds.fromMilliseconds(100));
+	}
+
+	@Test
+	public void attemptAllReturnsAsSoonAsEverythingIsRealised() {
+		Fulfilment<ReturnType> _fast = new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return new Value("fast");
+			}
+		};
+
+		long _start = System.nanoTime();
+		Attempts _attempts = promissory.attemptAll(Collections.singleton(_fast),
+			ResponseTimeSLA.nanosFromNow(Nanoseconds.fromSeconds(10)));
+
+		Assert.assertTrue(System.nanoTime() - _start < Nanoseconds.fromSeconds(5));
+		Assert.assertEquals("fast", _attempts.get(_fast).getValue1());
+		Assert.assertTrue(_attempts.getBreached().isEmpty());
+	}
+
+	@Test
+	public void holdsDataflowFulfilmentsBackUntilTheirInputsAreRealised() throws Exception {
+		ExecutorService _other = Executors.newSingleThreadExecutor();
+		try {
+			final CountDownLatch _release = new CountDownLatch(1);
+			final ReturnType _input = new DynamicProxyPromissoryService(_other).promise(
+				new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+					public ReturnType execute() throws Exception {
+						_release.await();
+						return new Value("a");
+					}
+				});
+
+			ReturnType _dependent = promissory.promise(
+				new DataflowFulfilmentAdapter<ReturnType>(ReturnType.class, _input) {
+					public ReturnType execute() {
+						return new Value(_input.getValue1() + "!");
+					}
+				});
+
+			// the only pool thread is not tied up waiting for the input
+			ReturnType _independent = promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+				public ReturnType execute() {
+					return new Value("x");
+				}
+			});
+			Assert.assertEquals("x", _independent.getValue1());
+
+			_release.countDown();
+			Assert.assertEquals("a!", _dependent.getValue1());
+		} finally {
+			_other.shutdownNow();
+		}
+	}
+
+	@Test
+	public void holdsPrefetchedLazyDataflowFulfilmentsBackUntilTheirInputsAreRealised() throws Exception {
+		ExecutorService _other = Executors.newSingleThreadExecutor();
+		try {
+			promissory = new DynamicProxyPromissoryService(executorService, ExecutionMode.LAZY);
+			final CountDownLatch _release = new CountDownLatch(1);
+			final ReturnType _input = new DynamicProxyPromissoryService(_other).promise(
+				new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+					public ReturnType execute() throws Exception {
+						_release.await();
+						return new Value("a");
+					}
+				});
+
+			ReturnType _dependent = promissory.promise(
+				new DataflowFulfilmentAdapter<ReturnType>(ReturnType.class, _input) {
+					public ReturnType execute() {
+						return new Value(_input.getValue1() + "!");
+					}
+				});
+			Promises.prefetch(_dependent);
+
+			// the only pool thread is not tied up waiting for the input
+			ReturnType _independent = promissory.attempt(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+				public ReturnType execute() {
+					return new Value("x");
+				}
+			}, ResponseTimeSLA.nanosFromNow(Nanoseconds.fromSeconds(5)));
+			Assert.assertEquals("x", _independent.getValue1());
+
+			_release.countDown();
+			Assert.assertEquals("a!", _dependent.getValue1());
+		} finally {
+			_other.shutdownNow();
+		}
+	}
+
+	private void awaitDeadlinesDue(long aNanosFromNow) throws InterruptedException {
+		// the shared wheel expires deadlines in order, so this one passing means earlier ones have
+		final CountDownLatch _passed = new CountDownLatch(1);
+		DeadlineWheel.SHARED.schedule(System.nanoTime() + aNanosFromNow, new Runnable() {
+			public void run() {
+				_passed.countDown();
+			}
+		});
+		Assert.assertTrue(_passed.await(5, TimeUnit.SECONDS));
+	}
+
+	static class Value implements ReturnType {
+		private String value;
+
+		Value(String aValue) {
+			value = aValue;
+		}
+
+		public String getValue1() {
+			return value;
+		}
+
+		public String getValue2() {
+			return value;
+		}
+	}
+
 	interface ReturnType {
 		String getValue1();
 		String getValue2();
@@ -1,8 +1,15 @@
 package com.sjl.async;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hamcrest.Description;
 import org.jmock.Expectations;
@@ -131,9 +138,6 @@ public class FutureWithSLATest {
 			oneOf(future).get(1000L, TimeUnit.MILLISECONDS);
 			will(throwException(new TimeoutException()));
 			oneOf(future).cancel(true);
-
-			oneOf(future).isCancelled();
-			will(returnValue(true));
 		}});
 
 		FutureWithSLA<String> _fws = new FutureWithSLA<String>(future, sla);
@@ -152,7 +156,7 @@ public class FutureWithSLATest {
 			oneOf(sla).get(future); will(invokeGet(future));
 
 			oneOf(future).get(1000L, TimeUnit.MILLISECONDS);
-			will(throwException(new Exception()));
+			will(throwException(new ExecutionException(new Exception())));
 			oneOf(_pokeable).poke();
 		}});
 
@@ -188,6 +192,155 @@ public class FutureWithSLATest {
 		Assert.assertEquals("hello", _fws.get());
 	}
 
+	@Test
+	public void nullResultIsDefaultedOnceAndNotReWaited() throws Exception {
+		ctx.checking(new Expectations() {{
+			oneOf(future).isCancelled(); will(returnValue(false));
+			allowing(sla).isExceeded(); will(returnValue(false));
+			oneOf(sla).get(future); will(returnValue(null));
+		}});
+
+		FutureWithSLA<String> _fws = new FutureWithSLA<String>(future, sla);
+
+		Assert.assertEquals(null, _fws.get());
+		Assert.assertEquals(null, _fws.get());
+		Assert.assertEquals(FutureWithSLA.State.DEFAULTED, _fws.getState());
+	}
+
+	@Test
+	public void realisedValueIsReturnedWithoutTouchingTheFutureAgain() throws Exception {
+		ctx.checking(new Expectations() {{
+			oneOf(future).isCancelled(); will(returnValue(false));
+			oneOf(sla).isExceeded(); will(returnValue(false));
+			oneOf(sla).get(future); will(returnValue("hello"));
+		}});
+
+		FutureWithSLA<String> _fws = new FutureWithSLA<String>(future, sla);
+
+		Assert.assertEquals(FutureWithSLA.State.PENDING, _fws.getState());
+		Assert.assertEquals("hello", _fws.get());
+		Assert.assertEquals("hello", _fws.get());
+		Assert.assertEquals(FutureWithSLA.State.REALISED, _fws.getState());
+	}
+
+	@Test
+	public void exceptionFromDefaultResultIsRethrownWithoutReRunningCallbacks() throws Exception {
+		final RuntimeException _exc = new RuntimeException();
+		final AtomicInteger _calls = new AtomicInteger();
+
+		ctx.checking(new Expectations() {{
+			oneOf(future).isCancelled(); will(returnValue(false));
+			allowing(sla).isExceeded(); will(returnValue(false));
+			oneOf(sla).get(future); will(throwException(new ExecutionException(_exc)));
+		}});
+
+		FutureWithSLA<String> _fws = new FutureWithSLA<String>(future, sla) {
+			@Override
+			protected String createDefaultResult() {
+				_calls.incrementAndGet();
+				throw _exc;
+			}
+		};
+
+		for (int i=0; i<2; i++) {
+			try {
+				_fws.get();
+				Assert.fail("expected exception");
+			} catch (RuntimeException anExc) {
+				Assert.assertSame(_exc, anExc);
+			}
+		}
+		Assert.assertEquals(1, _calls.get());
+		Assert.assertEquals(FutureWithSLA.State.FAILED, _fws.getState());
+	}
+
+	@Test
+	public void concurrentCallersRunCallbacksExactlyOnce() throws Exception {
+		final int _threads = 8;
+		final AtomicInteger _breaches = new AtomicInteger();
+		final AtomicInteger _defaults = new AtomicInteger();
+		final CountDownLatch _start = new CountDownLatch(1);
+
+		final FutureWithSLA<String> _fws = new FutureWithSLA<String>(
+			new FutureTask<String>(new Callable<String>() {
+				public String call() {
+					return "never";
+				}
+			}),
+			new ServiceLevelAgreement() {
+				public boolean isExceeded() {
+					return false;
+				}
+
+				public <T> T get(Future<T> aFuture) throws TimeoutException {
+					throw new TimeoutException();
+				}
+			}) {
+			@Override
+			protected void whenSLAExceeded() {
+				_breaches.incrementAndGet();
+			}
+
+			@Override
+			protected String createDefaultResult() {
+				_defaults.incrementAndGet();
+				return "default";
+			}
+		};
+
+		ExecutorService _pool = Executors.newFixedThreadPool(_threads);
+		try {
+			Future<?>[] _results = new Future<?>[_threads];
+			for (int i=0; i<_threads; i++) {
+				_results[i] = _pool.submit(new Callable<String>() {
+					public String call() throws Exception {
+						_start.await();
+						return _fws.get();
+					}
+				});
+			}
+			_start.countDown();
+
+			for (Future<?> _result : _results)
+				Assert.assertEquals("default", _result.get());
+		} finally {
+			_pool.shutdownNow();
+		}
+
+		Assert.assertEquals(1, _breaches.get());
+		Assert.assertEquals(1, _defaults.get());
+	}
+
+	@Test
+	public void cancelsAndDefaultsWhenDeadlinePassesWithoutAnyoneCallingGet() throws Exception {
+		final CountDownLatch _breached = new CountDownLatch(1);
+		final CountDownLatch _never = new CountDownLatch(1);
+		FutureTask<String> _task = new FutureTask<String>(new Callable<String>() {
+			public String call() throws Exception {
+				_never.await();
+				return "late";
+			}
+		});
+
+		FutureWithSLA<String> _fws = new FutureWithSLA<String>(
+			_task, ResponseTimeSLA.nanosFromNow(Nanoseconds.fromMilliseconds(20))) {
+			@Override
+			protected void whenSLAExceeded() {
+				_breached.countDown();
+			}
+
+			@Override
+			protected String createDefaultResult() {
+				return "default";
+			}
+		}.start();
+
+		Assert.assertTrue(_breached.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(_task.isCancelled());
+		Assert.assertEquals(FutureWithSLA.State.DEFAULTED, _fws.getState());
+		Assert.assertEquals("default", _fws.get());
+	}
+
 	private <T> Action invokeGet(final Future<T> aFuture) {
 		return new Action() {
 			@Override
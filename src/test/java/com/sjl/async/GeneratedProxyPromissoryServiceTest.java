@@ -0,0 +1,332 @@
+package com.sjl.async;
+
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+
+import org.jmock.*;
+import org.junit.*;
+
+public class GeneratedProxyPromissoryServiceTest {
+
+	private Mockery ctx;
+
+	private ExecutorService executorService;
+	private ReturnType syncResult;
+	private Fulfilment<ReturnType> fulfilment;
+
+	private PromissoryService promissory;
+	private PromissoryService reference;
+
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setup() {
+		ctx = new Mockery();
+
+		executorService = Executors.newSingleThreadExecutor();
+
+		fulfilment = ctx.mock(Fulfilment.class, "fulfilment");
+		syncResult = ctx.mock(ReturnType.class, "sync");
+
+		promissory = new GeneratedProxyPromissoryService(executorService);
+		reference = new DynamicProxyPromissoryService(executorService);
+	}
+
+	@After
+	public void teardown(){
+		ctx.assertIsSatisfied();
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void defaultValueReturnedWhenExecutionException() throws Exception {
+		final Exception exception = new Exception();
+
+		ctx.checking(new Expectations() {{
+			allowing(fulfilment).getResultType(); will(returnValue(ReturnType.class));
+			oneOf(fulfilment).execute(); will(throwException(exception));
+			oneOf(fulfilment).onException(with(exception));
+
+			oneOf(fulfilment).createDefaultResult(); will(returnValue(syncResult));
+			oneOf(syncResult).getValue1(); will(returnValue("hello"));
+		}});
+
+		ReturnType _result = promissory.promise(fulfilment);
+		Assert.assertEquals("hello", _result.getValue1());
+	}
+
+	@Test
+	public void delegatesToRealisedInterfaceLikeDynamicProxies() {
+		ReturnType _generated = promissory.promise(new Realised<ReturnType>(ReturnType.class, new Value("a", "b")));
+		ReturnType _dynamic = reference.promise(new Realised<ReturnType>(ReturnType.class, new Value("a", "b")));
+
+		Assert.assertEquals(_dynamic.getValue1(), _generated.getValue1());
+		Assert.assertEquals(_dynamic.getValue2(), _generated.getValue2());
+		Assert.assertEquals(_dynamic.toString(), _generated.toString());
+		Assert.assertEquals(_dynamic.hashCode(), _generated.hashCode());
+	}
+
+	@Test
+	public void defaultsOnBreachOfSLALikeDynamicProxies() {
+		ServiceLevelAgreement _sla = new ServiceLevelAgreement() {
+			@Override
+			public boolean isExceeded() {
+				return true;
+			}
+
+			@Override
+			public <T> T get(Future<T> aFuture) throws TimeoutException {
+				throw new TimeoutException();
+			}
+		};
+
+		ReturnType _generated = promissory.attempt(new Realised<ReturnType>(ReturnType.class, new Value("a", "b"), new Value("x", "y")), _sla);
+		ReturnType _dynamic = reference.attempt(new Realised<ReturnType>(ReturnType.class, new Value("a", "b"), new Value("x", "y")), _sla);
+
+		Assert.assertEquals("x", _generated.getValue1());
+		Assert.assertEquals(_dynamic.getValue1(), _generated.getValue1());
+	}
+
+	@Test
+	public void promisesNonFinalConcreteClasses() {
+		Value _result = promissory.promise(new Realised<Value>(Value.class, new Value("a", "b")));
+
+		Assert.assertTrue(_result.getClass() != Value.class);
+		Assert.assertEquals("a", _result.getValue1());
+		Assert.assertEquals("b", _result.getValue2());
+	}
+
+	@Test
+	public void promisesInterfacesFromTheBootstrapClassLoader() {
+		CharSequence _result = promissory.promise(new Realised<CharSequence>(CharSequence.class, "hello"));
+
+		Assert.assertEquals(5, _result.length());
+		Assert.assertEquals("hello", _result.toString());
+	}
+
+	@Test
+	public void reusesOneGeneratedClassPerResultType() {
+		ReturnType _first = promissory.promise(new Realised<ReturnType>(ReturnType.class, new Value("a", "b")));
+		ReturnType _second = promissory.promise(new Realised<ReturnType>(ReturnType.class, new Value("c", "d")));
+
+		Assert.assertSame(_first.getClass(), _second.getClass());
+		Assert.assertEquals("c", _second.getValue1());
+	}
+
+	@Test
+	public void doesNotKeepTheTypesItHasProxiedFromBeingUnloaded() throws Exception {
+		WeakReference<Class<?>> _type = proxyATypeFromItsOwnClassLoader();
+
+		long _deadline = System.nanoTime() + Nanoseconds.fromSeconds(10);
+		while (_type.get() != null && System.nanoTime() < _deadline) {
+			System.gc();
+			Thread.sleep(10);
+		}
+
+		Assert.assertNull(_type.get());
+	}
+
+	@SuppressWarnings("unchecked")
+	private WeakReference<Class<?>> proxyATypeFromItsOwnClassLoader() {
+		Class<Object> _type = (Class<Object>) new ByteBuddy()
+			.makeInterface()
+			.name("com.sjl.async.Unloadable")
+			.make()
+			.load(getClass().getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+			.getLoaded();
+
+		FutureTask<Object> _never = new FutureTask<Object>(new Runnable() {
+			public void run() {
+			}
+		}, null);
+		Object _proxy = new GeneratedProxyFactory().create(
+			new FutureWithSLA<Object>(_never, ServiceLevelAgreement.NULL_OBJECT), _type);
+
+		Assert.assertTrue(_type.isInstance(_proxy));
+		Assert.assertNotNull(Promises.futureOf(_proxy));
+		return new WeakReference<Class<?>>(_type);
+	}
+
+	@Test
+	public void propagatesExceptionsThrownByTheRealisedValueUnwrapped() {
+		ReturnType _result = promissory.promise(new Realised<ReturnType>(ReturnType.class, new Value(null, "b") {
+			@Override
+			public String getValue1() {
+				throw new IllegalStateException();
+			}
+		}));
+
+		try {
+			_result.getValue1();
+			Assert.fail("expected IllegalStateException");
+		} catch (IllegalStateException anExc) {
+			// expected
+		}
+	}
+
+	@Test
+	public void lazyPromisesRunOnTheCallerWhenFirstUsed() {
+		PromissoryService _lazy = new GeneratedProxyPromissoryService(executorService, ExecutionMode.LAZY);
+		final AtomicReference<Thread> _ranOn = new AtomicReference<Thread>();
+
+		ReturnType _result = _lazy.promise(new Realised<ReturnType>(ReturnType.class, new Value("a", "b")) {
+			@Override
+			public ReturnType execute() {
+				_ranOn.set(Thread.currentThread());
+				return super.execute();
+			}
+		});
+
+		Assert.assertNull(_ranOn.get());
+		Assert.assertEquals("a", _result.getValue1());
+		Assert.assertSame(Thread.currentThread(), _ranOn.get());
+	}
+
+	@Test
+	public void prefetchedLazyPromisesRunInTheBackground() throws Exception {
+		PromissoryService _lazy = new GeneratedProxyPromissoryService(executorService, ExecutionMode.LAZY);
+		final CountDownLatch _ran = new CountDownLatch(1);
+
+		ReturnType _result = _lazy.promise(new Realised<ReturnType>(ReturnType.class, new Value("a", "b")) {
+			@Override
+			public ReturnType execute() {
+				_ran.countDown();
+				return super.execute();
+			}
+		});
+
+		Assert.assertFalse(_ran.await(50, TimeUnit.MILLISECONDS));
+		Promises.prefetch(_result);
+		Assert.assertTrue(_ran.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals("a", _result.getValue1());
+	}
+
+	@Test
+	public void lazyAttemptsAreQueuedWhenFirstUsedAndStillHonourTheirSLA() {
+		PromissoryService _lazy = new GeneratedProxyPromissoryService(executorService, ExecutionMode.LAZY);
+		final AtomicReference<Thread> _ranOn = new AtomicReference<Thread>();
+
+		ReturnType _result = _lazy.attempt(new Realised<ReturnType>(ReturnType.class, new Value("a", "b")) {
+			@Override
+			public ReturnType execute() {
+				_ranOn.set(Thread.currentThread());
+				return super.execute();
+			}
+		}, ResponseTimeSLA.nanosFromNow(Nanoseconds.fromSeconds(5)));
+
+		Assert.assertNull(_ranOn.get());
+		Assert.assertEquals("a", _result.getValue1());
+		Assert.assertNotSame(Thread.currentThread(), _ranOn.get());
+	}
+
+	@Test
+	public void attemptAllStartsLazyAttempts() {
+		PromissoryService _lazy = new GeneratedProxyPromissoryService(executorService, ExecutionMode.LAZY);
+		Fulfilment<ReturnType> _a = new Realised<ReturnType>(ReturnType.class, new Value("a", "b"));
+		Fulfilment<ReturnType> _b = new Realised<ReturnType>(ReturnType.class, new Value("c", "d"));
+
+		Attempts _results = _lazy.attemptAll(Arrays.asList(_a, _b), ResponseTimeSLA.nanosFromNow(Nanoseconds.fromSeconds(5)));
+
+		Assert.assertFalse(_results.isBreached(_a));
+		Assert.assertEquals("c", _results.get(_b).getValue1());
+	}
+
+	@Test
+	public void holdsDataflowFulfilmentsBackUntilTheirInputsAreRealised() throws Exception {
+		ExecutorService _other = Executors.newSingleThreadExecutor();
+		try {
+			final CountDownLatch _release = new CountDownLatch(1);
+			final ReturnType _input = new GeneratedProxyPromissoryService(_other).promise(
+				new Realised<ReturnType>(ReturnType.class, new Value("a", "b")) {
+					@Override
+					public ReturnType execute() {
+						try {
+							_release.await();
+						} catch (InterruptedException anExc) {
+							throw new RuntimeException(anExc);
+						}
+						return super.execute();
+					}
+				});
+
+			ReturnType _dependent = promissory.promise(
+				new DataflowFulfilmentAdapter<ReturnType>(ReturnType.class, _input) {
+					public ReturnType execute() {
+						return new Value(_input.getValue1() + "!", _input.getValue2());
+					}
+				});
+
+			// the only pool thread is not tied up waiting for the input
+			ReturnType _independent = promissory.promise(new Realised<ReturnType>(ReturnType.class, new Value("x", "y")));
+			Assert.assertEquals("x", _independent.getValue1());
+
+			_release.countDown();
+			Assert.assertEquals("a!", _dependent.getValue1());
+		} finally {
+			_other.shutdownNow();
+		}
+	}
+
+	@Test(expected=RejectedExecutionException.class)
+	public void rejectsFinalClasses() {
+		promissory.promise(new Realised<String>(String.class, "hello"));
+	}
+
+	interface ReturnType {
+		String getValue1();
+		String getValue2();
+	}
+
+	public static class Value implements ReturnType {
+		private String value1;
+		private String value2;
+
+		public Value() {
+		}
+
+		public Value(String aValue1, String aValue2) {
+			value1 = aValue1;
+			value2 = aValue2;
+		}
+
+		public String getValue1() {
+			return value1;
+		}
+
+		public String getValue2() {
+			return value2;
+		}
+
+		@Override
+		public String toString() {
+			return value1 + value2;
+		}
+
+		@Override
+		public int hashCode() {
+			return toString().hashCode();
+		}
+	}
+
+	static class Realised<T> extends FulfilmentAdapter<T> {
+		private T result;
+
+		public Realised(Class<T> aResultType, T aResult) {
+			this(aResultType, aResult, null);
+		}
+
+		public Realised(Class<T> aResultType, T aResult, T aDefault) {
+			super(aResultType, aDefault);
+			result = aResult;
+		}
+
+		@Override
+		public T execute() {
+			return result;
+		}
+	}
+}
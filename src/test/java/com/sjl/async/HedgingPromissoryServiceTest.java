@@ -0,0 +1,241 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+public class HedgingPromissoryServiceTest {
+
+	private ExecutorService executorService;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void teardown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void hedgesSlowExecutionAndCancelsTheLoser() throws Exception {
+		final AtomicInteger _executions = new AtomicInteger();
+		final CountDownLatch _loserInterrupted = new CountDownLatch(1);
+
+		PromissoryService _promissory = new HedgingPromissoryService(
+			executorService, new FixedHedgePolicy(Nanoseconds.fromMilliseconds(10)));
+
+		ReturnType _result = _promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() throws Exception {
+				if (_executions.incrementAndGet() == 1) {
+					try {
+						// the first copy is hopelessly slow
+						new CountDownLatch(1).await();
+					} catch (InterruptedException anExc) {
+						_loserInterrupted.countDown();
+						throw anExc;
+					}
+				}
+				return new Value("hedged");
+			}
+		});
+
+		Assert.assertEquals("hedged", _result.getValue());
+		Assert.assertEquals(2, _executions.get());
+		Assert.assertTrue(_loserInterrupted.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void doesNotHedgeExecutionsThatCompleteInTime() throws Exception {
+		final AtomicInteger _executions = new AtomicInteger();
+
+		PromissoryService _promissory = new HedgingPromissoryService(
+			executorService, new FixedHedgePolicy(Nanoseconds.fromMilliseconds(50)));
+
+		ReturnType _result = _promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				_executions.incrementAndGet();
+				return new Value("quick");
+			}
+		});
+
+		Assert.assertEquals("quick", _result.getValue());
+		awaitDeadlinesDue(Nanoseconds.fromMilliseconds(100));
+		Assert.assertEquals(1, _executions.get());
+	}
+
+	@Test
+	public void forgetsTheHedgeOfATaskThatCompletesInTime() throws Exception {
+		HedgedTask<ReturnType> _task = new HedgedTask<ReturnType>(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return new Value("quick");
+			}
+		}, new FixedHedgePolicy(Nanoseconds.fromMinutes(1)), new HedgeBudget(0.1, 10), executorService);
+
+		_task.start();
+
+		Assert.assertEquals("quick", _task.get(5, TimeUnit.SECONDS).getValue());
+		Assert.assertFalse(_task.isHedgePending());
+	}
+
+	@Test
+	public void realisesDefaultOnlyIfEveryCopyFails() throws Exception {
+		final AtomicInteger _executions = new AtomicInteger();
+
+		PromissoryService _promissory = new HedgingPromissoryService(
+			executorService, new FixedHedgePolicy(Nanoseconds.fromMilliseconds(10)));
+
+		ReturnType _result = _promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class, new Value("default")) {
+			public ReturnType execute() throws Exception {
+				if (_executions.incrementAndGet() == 1) {
+					Thread.sleep(50);
+					throw new Exception("first copy fails late");
+				}
+				return new Value("second");
+			}
+		});
+
+		Assert.assertEquals("second", _result.getValue());
+	}
+
+	@Test
+	public void hedgesNoMoreThanTheBudgetAllows() throws Exception {
+		final AtomicInteger _executions = new AtomicInteger();
+		final CountDownLatch _hedged = new CountDownLatch(2);
+		final CountDownLatch _release = new CountDownLatch(1);
+
+		// one hedge saved up, and none earned
+		PromissoryService _promissory = new HedgingPromissoryService(
+			executorService, new FixedHedgePolicy(Nanoseconds.fromMilliseconds(10)), 0.0, 1);
+
+		Fulfilment<ReturnType> _slow = new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() throws Exception {
+				_executions.incrementAndGet();
+				_hedged.countDown();
+				_release.await();
+				return new Value("slow");
+			}
+		};
+
+		ReturnType _first = _promissory.promise(_slow);
+		Assert.assertTrue(_hedged.await(5, TimeUnit.SECONDS));
+
+		// the second is past its hedge delay before anything completes, but the budget is spent
+		ReturnType _second = _promissory.promise(_slow);
+		awaitDeadlinesDue(Nanoseconds.fromMilliseconds(50));
+		_release.countDown();
+
+		Assert.assertEquals("slow", _first.getValue());
+		Assert.assertEquals("slow", _second.getValue());
+		Assert.assertEquals(3, _executions.get());
+	}
+
+	@Test
+	public void failsWhenTheFirstCopyFailsAndTheHedgeIsRejected() throws Exception {
+		final CountDownLatch _rejected = new CountDownLatch(1);
+		ExecutorService _oneCopy = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>()) {
+			@Override
+			public void execute(Runnable aTask) {
+				try {
+					super.execute(aTask);
+				} catch (RejectedExecutionException anExc) {
+					_rejected.countDown();
+					throw anExc;
+				}
+			}
+		};
+		try {
+			PromissoryService _promissory = new HedgingPromissoryService(
+				_oneCopy, new FixedHedgePolicy(Nanoseconds.fromMilliseconds(10)));
+
+			ReturnType _result = _promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class, new Value("default")) {
+				public ReturnType execute() throws Exception {
+					// the hedge is rejected, as the only thread is busy with this copy
+					_rejected.await();
+					throw new Exception("first copy fails");
+				}
+			});
+
+			Assert.assertEquals("default", _result.getValue());
+		} finally {
+			_oneCopy.shutdownNow();
+		}
+	}
+
+	@Test
+	public void doesNotBreachAnAttemptItsExecutorRejects() throws Exception {
+		final AtomicInteger _breaches = new AtomicInteger();
+		PromissoryService _promissory = new HedgingPromissoryService(
+			executorService, new FixedHedgePolicy(Nanoseconds.fromMilliseconds(1)));
+		executorService.shutdown();
+		try {
+			_promissory.attempt(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+				public ReturnType execute() {
+					return new Value("a");
+				}
+
+				@Override
+				public void onBreachSLA(ServiceLevelAgreement anSLA) {
+					_breaches.incrementAndGet();
+				}
+			}, ResponseTimeSLA.nanosFromNow(Nanoseconds.fromMilliseconds(1)));
+			Assert.fail("expected the attempt to be rejected");
+		} catch (RejectedExecutionException anExc) {
+			// expected
+		}
+
+		awaitDeadlinesDue(Nanoseconds.fromMilliseconds(50));
+		Assert.assertEquals(0, _breaches.get());
+	}
+
+	@Test
+	public void learnsTheHedgeDelayFromObservedLatencies() {
+		PercentileHedgePolicy _policy = new PercentileHedgePolicy(0.9, Nanoseconds.fromSeconds(1), 10);
+		Fulfilment<ReturnType> _fulfilment = new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return null;
+			}
+		};
+
+		Assert.assertEquals(Nanoseconds.fromSeconds(1), _policy.getHedgeDelay(_fulfilment));
+
+		for (int i=1; i<=100; i++)
+			_policy.record(_fulfilment, Nanoseconds.fromMilliseconds(i));
+
+		long _delay = _policy.getHedgeDelay(_fulfilment);
+		Assert.assertTrue(_delay >= Nanoseconds.fromMilliseconds(90));
+		Assert.assertTrue(_delay <= Nanoseconds.fromMilliseconds(90) * 5 / 4);
+	}
+
+	private void awaitDeadlinesDue(long aNanosFromNow) throws InterruptedException {
+		// the shared wheel expires deadlines in order, so this one passing means earlier ones have
+		final CountDownLatch _passed = new CountDownLatch(1);
+		DeadlineWheel.SHARED.schedule(System.nanoTime() + aNanosFromNow, new Runnable() {
+			public void run() {
+				_passed.countDown();
+			}
+		});
+		Assert.assertTrue(_passed.await(5, TimeUnit.SECONDS));
+	}
+
+	public interface ReturnType {
+		String getValue();
+	}
+
+	public static class Value implements ReturnType {
+		private String value;
+
+		public Value() {
+		}
+
+		public Value(String aValue) {
+			value = aValue;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.sjl.async;
+
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+public class ImplicitFuturesTest {
+
+	private ExecutorService executorService;
+	private PromissoryService promissory;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newFixedThreadPool(2);
+		promissory = new DynamicProxyPromissoryService(executorService);
+	}
+
+	@After
+	public void teardown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void recognisesImplicitFutures() {
+		ReturnType _promised = promissory.promise(realised(new Value("a")));
+		ReturnType _generated = new GeneratedProxyPromissoryService(executorService).promise(realised(new Value("a")));
+		ReturnType _created = ImplicitFuture.create(new FutureTask<ReturnType>(new Callable<ReturnType>() {
+			public ReturnType call() {
+				return new Value("a");
+			}
+		}), ReturnType.class);
+
+		Assert.assertTrue(ImplicitFutures.isImplicit(_promised));
+		Assert.assertTrue(ImplicitFutures.isImplicit(_generated));
+		Assert.assertTrue(ImplicitFutures.isImplicit(_created));
+		Assert.assertFalse(ImplicitFutures.isImplicit(new Value("a")));
+		Assert.assertFalse(ImplicitFutures.isImplicit(null));
+	}
+
+	@Test
+	public void isRealisedDoesNotWait() throws Exception {
+		final CountDownLatch _release = new CountDownLatch(1);
+		ReturnType _result = promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() throws Exception {
+				_release.await();
+				return new Value("a");
+			}
+		});
+
+		Assert.assertFalse(ImplicitFutures.isRealised(_result));
+		_release.countDown();
+		Assert.assertEquals("a", ImplicitFutures.unwrap(_result).getValue());
+		Assert.assertTrue(ImplicitFutures.isRealised(_result));
+		Assert.assertTrue(ImplicitFutures.isRealised(new Value("b")));
+	}
+
+	@Test
+	public void unwrapsNestedImplicitFuturesToTheRealisedValue() {
+		final ReturnType _inner = promissory.promise(realised(new Value("a")));
+		ReturnType _outer = promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return _inner;
+			}
+		});
+
+		ReturnType _value = ImplicitFutures.unwrap(_outer);
+		Assert.assertFalse(ImplicitFutures.isImplicit(_value));
+		Assert.assertEquals("a", _value.getValue());
+	}
+
+	@Test
+	public void collapsesNestedImplicitFuturesToOneLevelOnceRealised() {
+		final ReturnType _inner = promissory.promise(realised(new Value("a")));
+		ReturnType _outer = promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return _inner;
+			}
+		});
+
+		Assert.assertEquals("a", _outer.getValue());
+		Assert.assertFalse(ImplicitFutures.isImplicit(Promises.futureOf(_outer).get()));
+	}
+
+	@Test
+	public void returnsTheNestedImplicitFutureUntilItIsRealised() throws Exception {
+		final CountDownLatch _release = new CountDownLatch(1);
+		final ReturnType _inner = promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() throws Exception {
+				_release.await();
+				return new Value("a");
+			}
+		});
+		ReturnType _outer = promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return _inner;
+			}
+		});
+
+		Assert.assertSame(_inner, Promises.futureOf(_outer).get());
+		Assert.assertFalse(ImplicitFutures.isRealised(_outer));
+
+		_release.countDown();
+		Assert.assertEquals("a", _outer.getValue());
+		Assert.assertTrue(ImplicitFutures.isRealised(_outer));
+	}
+
+	private Fulfilment<ReturnType> realised(final ReturnType aValue) {
+		return new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return aValue;
+			}
+		};
+	}
+
+	public interface ReturnType {
+		String getValue();
+	}
+
+	public static class Value implements ReturnType {
+		private String value;
+
+		public Value() {
+		}
+
+		public Value(String aValue) {
+			value = aValue;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+public class LastKnownGoodPromissoryServiceTest {
+
+	private ExecutorService executorService;
+	private AtomicInteger executions;
+	private AtomicInteger failures;
+	private CountDownLatch slow;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newFixedThreadPool(4);
+		executions = new AtomicInteger();
+		failures = new AtomicInteger();
+		slow = new CountDownLatch(1);
+	}
+
+	@After
+	public void teardown() {
+		slow.countDown();
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void fallsBackToTheLastKnownGoodValueOnBreachOfSLA() {
+		LastKnownGoodPromissoryService _promissory = newPromissory(Nanoseconds.fromMinutes(1));
+
+		Assert.assertEquals("a1", _promissory.promise(new Lookup("a", false)).getValue());
+		Assert.assertEquals("a1", _promissory.attempt(new Lookup("a", true), 
+			ResponseTimeSLA.nanosFromNow(Nanoseconds.fromMilliseconds(20))).getValue());
+
+		Assert.assertEquals(1, _promissory.getFallbacks());
+	}
+
+	@Test
+	public void fallsBackToTheLastKnownGoodValueWhenExecutionFails() {
+		LastKnownGoodPromissoryService _promissory = newPromissory(Nanoseconds.fromMinutes(1));
+
+		Assert.assertEquals("a1", _promissory.promise(new Lookup("a", false)).getValue());
+		failures.set(1);
+		Assert.assertEquals("a1", _promissory.promise(new Lookup("a", false)).getValue());
+	}
+
+	@Test
+	public void usesTheDefaultResultWhenThereIsNoLastKnownGoodValue() {
+		LastKnownGoodPromissoryService _promissory = newPromissory(Nanoseconds.fromMinutes(1));
+
+		failures.set(1);
+		Assert.assertEquals("default", _promissory.promise(new Lookup("a", false)).getValue());
+		Assert.assertEquals(0, _promissory.getFallbacks());
+	}
+
+	@Test
+	public void usesTheDefaultResultWhenTheLastKnownGoodValueIsTooStale() throws Exception {
+		LastKnownGoodPromissoryService _promissory = newPromissory(Nanoseconds.fromMilliseconds(20));
+
+		Assert.assertEquals("a1", _promissory.promise(new Lookup("a", false)).getValue());
+		Thread.sleep(50);
+		failures.set(1);
+		Assert.assertEquals("default", _promissory.promise(new Lookup("a", false)).getValue());
+		Assert.assertEquals(0, _promissory.size());
+	}
+
+	@Test
+	public void refreshesTheLastKnownGoodValueInTheBackground() throws Exception {
+		LastKnownGoodPromissoryService _promissory = newPromissory(Nanoseconds.fromMinutes(1));
+
+		Assert.assertEquals("a1", _promissory.promise(new Lookup("a", false)).getValue());
+		failures.set(1);
+		Assert.assertEquals("a1", _promissory.promise(new Lookup("a", false)).getValue());
+
+		// the refresh runs the fulfilment again, and later failures fall back to what it realised
+		long _deadline = System.nanoTime() + Nanoseconds.fromSeconds(5);
+		String _value;
+		do {
+			Thread.sleep(10);
+			failures.set(1);
+			_value = _promissory.promise(new Lookup("a", false)).getValue();
+		} while ("a1".equals(_value) && System.nanoTime() < _deadline);
+
+		Assert.assertFalse("a1".equals(_value));
+		Assert.assertTrue(_value.startsWith("a"));
+	}
+
+	@Test
+	public void passesOtherFulfilmentsStraightThrough() {
+		LastKnownGoodPromissoryService _promissory = newPromissory(Nanoseconds.fromMinutes(1));
+
+		ReturnType _result = _promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return new Value("x");
+			}
+		});
+
+		Assert.assertEquals("x", _result.getValue());
+		Assert.assertEquals(0, _promissory.size());
+	}
+
+	@Test
+	public void startsRefreshesOnTheRefresher() throws Exception {
+		final BlockingQueue<Runnable> _refreshes = new LinkedBlockingQueue<Runnable>();
+		LastKnownGoodPromissoryService _promissory = new LastKnownGoodPromissoryService(
+			new GeneratedProxyPromissoryService(executorService), 10, Nanoseconds.fromMinutes(1), new Executor() {
+				public void execute(Runnable aTask) {
+					_refreshes.add(aTask);
+				}
+			});
+
+		Assert.assertEquals("a1", _promissory.promise(new Lookup("a", false)).getValue());
+		failures.set(1);
+		Assert.assertEquals("a1", _promissory.promise(new Lookup("a", false)).getValue());
+		Assert.assertEquals(2, executions.get());
+
+		// nothing is refreshed until the refresher runs it
+		Runnable _refresh = _refreshes.poll(5, TimeUnit.SECONDS);
+		Assert.assertEquals(2, executions.get());
+		_refresh.run();
+
+		long _deadline = System.nanoTime() + Nanoseconds.fromSeconds(5);
+		while (executions.get() < 3 && System.nanoTime() < _deadline)
+			Thread.sleep(1);
+		Assert.assertEquals(3, executions.get());
+	}
+
+	@Test
+	public void passesOnOnlyTheInterfacesTheFulfilmentHas() {
+		final List<Fulfilment<?>> _promised = new ArrayList<Fulfilment<?>>();
+		final PromissoryService _recording = new GeneratedProxyPromissoryService(executorService) {
+			@Override
+			public <T> T promise(Fulfilment<T> aPromise) {
+				_promised.add(aPromise);
+				return super.promise(aPromise);
+			}
+		};
+		LastKnownGoodPromissoryService _promissory = new LastKnownGoodPromissoryService(
+			_recording, 10, Nanoseconds.fromMinutes(1));
+
+		_promissory.promise(new Lookup("a", false)).getValue();
+		_promissory.promise(new BatchLookup("b", new Loader())).getValue();
+
+		Assert.assertTrue(_promised.get(0) instanceof CacheableFulfilment<?>);
+		Assert.assertFalse(_promised.get(0) instanceof CancellableFulfilment<?>);
+		Assert.assertFalse(_promised.get(0) instanceof DataflowFulfilment<?>);
+		Assert.assertTrue(_promised.get(1) instanceof BatchFulfilment<?, ?>);
+	}
+
+	@Test
+	public void fallsBackToTheLastKnownGoodValueOfABatch() throws Exception {
+		ScheduledExecutorService _scheduler = Executors.newScheduledThreadPool(2);
+		try {
+			Loader _loader = new Loader();
+			LastKnownGoodPromissoryService _promissory = new LastKnownGoodPromissoryService(
+				new BatchingPromissoryService(_scheduler, Nanoseconds.fromMilliseconds(5), 10), 10, Nanoseconds.fromMinutes(1));
+
+			Assert.assertEquals("b1", _promissory.promise(new BatchLookup("b", _loader)).getValue());
+			failures.set(1);
+			Assert.assertEquals("b1", _promissory.promise(new BatchLookup("b", _loader)).getValue());
+			Assert.assertEquals(1, _promissory.getFallbacks());
+		} finally {
+			_scheduler.shutdownNow();
+		}
+	}
+
+	@Test
+	public void keepsNoMoreThanItsMaximumNumberOfValues() {
+		LastKnownGoodPromissoryService _promissory = newPromissory(Nanoseconds.fromMinutes(1));
+
+		for (int i=0; i<100; i++)
+			_promissory.promise(new Lookup("k" + i, false)).getValue();
+
+		Assert.assertEquals(10, _promissory.size());
+	}
+
+	private LastKnownGoodPromissoryService newPromissory(long aMaxStaleness) {
+		return new LastKnownGoodPromissoryService(
+			new GeneratedProxyPromissoryService(executorService), 10, aMaxStaleness);
+	}
+
+	class Lookup extends FulfilmentAdapter<ReturnType> implements CacheableFulfilment<ReturnType> {
+		private String key;
+		private boolean slow;
+
+		Lookup(String aKey, boolean aSlow) {
+			super(ReturnType.class, new Value("default"));
+			key = aKey;
+			slow = aSlow;
+		}
+
+		public ReturnType execute() throws Exception {
+			int _execution = executions.incrementAndGet();
+			if (slow)
+				LastKnownGoodPromissoryServiceTest.this.slow.await();
+			if (failures.getAndDecrement() > 0)
+				throw new Exception();
+			return new Value(key + _execution);
+		}
+
+		public Object getCacheKey() {
+			return key;
+		}
+	}
+
+	class BatchLookup extends BatchFulfilmentAdapter<String, ReturnType> implements CacheableFulfilment<ReturnType> {
+		BatchLookup(String aKey, Loader aLoader) {
+			super(ReturnType.class, aKey, aLoader, new Value("default"));
+		}
+
+		public Object getCacheKey() {
+			return getBatchKey();
+		}
+	}
+
+	class Loader implements BatchLoader<String, ReturnType> {
+		public Map<String, ReturnType> load(List<String> aKeys) throws Exception {
+			int _execution = executions.incrementAndGet();
+			if (failures.getAndDecrement() > 0)
+				throw new Exception();
+
+			Map<String, ReturnType> _result = new HashMap<String, ReturnType>();
+			for (String _key : aKeys)
+				_result.put(_key, new Value(_key + _execution));
+			return _result;
+		}
+	}
+
+	public interface ReturnType {
+		String getValue();
+	}
+
+	public static class Value implements ReturnType {
+		private String value;
+
+		public Value() {
+		}
+
+		public Value(String aValue) {
+			value = aValue;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
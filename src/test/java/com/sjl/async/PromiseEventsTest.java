@@ -0,0 +1,260 @@
+package com.sjl.async;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import jdk.jfr.*;
+import jdk.jfr.consumer.*;
+
+import org.junit.*;
+
+public class PromiseEventsTest {
+
+	private ExecutorService executorService;
+	private PromissoryService promissory;
+	private Recording recording;
+	private CountDownLatch release;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newCachedThreadPool();
+		promissory = new DynamicProxyPromissoryService(executorService);
+		recording = new Recording();
+		release = new CountDownLatch(1);
+	}
+
+	@After
+	public void teardown() {
+		release.countDown();
+		recording.close();
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void recordsATimelineForEachPromise() throws Exception {
+		recording.enable("com.sjl.async.Promise");
+		recording.start();
+
+		ReturnType _result = promissory.promise(new Named("lookup", new Value("a")));
+		Assert.assertEquals("a", _result.getValue());
+
+		RecordedEvent _event = only(stop(), "com.sjl.async.Promise");
+		Assert.assertEquals("lookup", _event.getString("name"));
+		Assert.assertEquals(idOf(_result), _event.getLong("promiseId"));
+		Assert.assertEquals("SUCCESS", _event.getString("outcome"));
+		Assert.assertEquals("SUBMIT", _event.getString("mode"));
+		Assert.assertTrue(_event.getDuration("untilQueued").compareTo(_event.getDuration("untilStarted")) <= 0);
+		Assert.assertEquals(_event.getDuration("untilStarted").minus(_event.getDuration("untilQueued")), _event.getDuration("queueWait"));
+		Assert.assertFalse(_event.getThread("executingThread").getJavaThreadId() == Thread.currentThread().threadId());
+	}
+
+	@Test
+	public void givesEachPromiseItsOwnId() throws Exception {
+		recording.enable("com.sjl.async.Promise");
+		recording.start();
+
+		ReturnType _first = promissory.promise(new Named("lookup", new Value("a")));
+		ReturnType _second = promissory.promise(new Named("lookup", new Value("b")));
+		Assert.assertEquals("a", _first.getValue());
+		Assert.assertEquals("b", _second.getValue());
+
+		Set<Long> _ids = new HashSet<Long>();
+		for (RecordedEvent _event : stop())
+			if (_event.getEventType().getName().equals("com.sjl.async.Promise"))
+				_ids.add(_event.getLong("promiseId"));
+
+		Assert.assertEquals(new HashSet<Long>(Arrays.asList(idOf(_first), idOf(_second))), _ids);
+		Assert.assertFalse(_ids.contains(0L));
+	}
+
+	@Test
+	public void recordsPromisesTheExecutorRejects() throws Exception {
+		recording.enable("com.sjl.async.Promise");
+		recording.start();
+
+		executorService.shutdown();
+		try {
+			promissory.promise(new Named("rejected", new Value("a")));
+			Assert.fail("expected the promise to be rejected");
+		} catch (RejectedExecutionException anExc) {
+			// expected
+		}
+
+		RecordedEvent _event = only(stop(), "com.sjl.async.Promise");
+		Assert.assertEquals("rejected", _event.getString("name"));
+		Assert.assertEquals("REJECTED", _event.getString("outcome"));
+	}
+
+	@Test
+	public void recordsLazyPromisesWhichAreNeverUsed() throws Exception {
+		recording.enable("com.sjl.async.Promise");
+		recording.start();
+
+		new DynamicProxyPromissoryService(executorService, ExecutionMode.LAZY).promise(new Named("unused", new Value("a")));
+
+		List<RecordedEvent> _events = new ArrayList<RecordedEvent>();
+		long _deadline = System.currentTimeMillis() + 5000;
+		while (_events.isEmpty() && System.currentTimeMillis() < _deadline) {
+			System.gc();
+			Thread.sleep(10);
+			for (RecordedEvent _event : dump())
+				if (_event.getEventType().getName().equals("com.sjl.async.Promise"))
+					_events.add(_event);
+		}
+
+		RecordedEvent _event = only(_events, "com.sjl.async.Promise");
+		Assert.assertEquals("unused", _event.getString("name"));
+		Assert.assertEquals("UNUSED", _event.getString("outcome"));
+		Assert.assertEquals(-1, _event.getLong("untilStarted"));
+		Assert.assertEquals(-1, _event.getLong("queueWait"));
+	}
+
+	@Test
+	public void recordsCallersBlockedWaitingForAResult() throws Exception {
+		recording.enable("com.sjl.async.PromiseBlocked");
+		recording.start();
+
+		ReturnType _result = promissory.promise(new Named("slow", new Value("a")) {
+			@Override
+			public ReturnType execute() throws Exception {
+				Thread.sleep(50);
+				return super.execute();
+			}
+		});
+		Assert.assertEquals("a", _result.getValue());
+
+		RecordedEvent _event = only(stop(), "com.sjl.async.PromiseBlocked");
+		Assert.assertEquals("slow", _event.getString("name"));
+		Assert.assertEquals(idOf(_result), _event.getLong("promiseId"));
+		Assert.assertEquals(Thread.currentThread().threadId(), _event.getThread().getJavaThreadId());
+		Assert.assertTrue(_event.getDuration().toMillis() > 0);
+	}
+
+	@Test
+	public void recordsBreachesOfTheSLA() throws Exception {
+		recording.enable("com.sjl.async.PromiseSLABreached");
+		recording.start();
+
+		ReturnType _result = promissory.attempt(new Named("stuck", new Value("a"), new Value("default")) {
+			@Override
+			public ReturnType execute() throws Exception {
+				release.await();
+				return super.execute();
+			}
+		}, ResponseTimeSLA.nanosFromNow(Nanoseconds.fromMilliseconds(20)));
+		Assert.assertEquals("default", _result.getValue());
+
+		RecordedEvent _event = only(stop(), "com.sjl.async.PromiseSLABreached");
+		Assert.assertEquals("stuck", _event.getString("name"));
+		Assert.assertEquals(idOf(_result), _event.getLong("promiseId"));
+		Assert.assertEquals(ResponseTimeSLA.class.getName(), _event.getClass("sla").getName());
+	}
+
+	@Test
+	public void recordsCallsToAsyncifiedMethods() throws Exception {
+		recording.enable("com.sjl.async.Asyncified");
+		recording.start();
+
+		Greeter _greeter = new DynamicProxyAsyncificationService(promissory).makeAsync(new SimpleGreeter());
+		ReturnType _result = _greeter.greet("bob");
+		Assert.assertEquals("hello bob", _result.getValue());
+
+		RecordedEvent _event = only(stop(), "com.sjl.async.Asyncified");
+		Assert.assertEquals(Greeter.class.getName() + ".greet", _event.getString("method"));
+		Assert.assertEquals(idOf(_result), _event.getLong("promiseId"));
+	}
+
+	@Test
+	public void recordsNothingUnlessEnabled() throws Exception {
+		recording.start();
+
+		ReturnType _result = promissory.promise(new Named("lookup", new Value("a")));
+		Assert.assertEquals("a", _result.getValue());
+
+		for (RecordedEvent _event : stop())
+			Assert.assertFalse(_event.getEventType().getName().startsWith("com.sjl.async."));
+	}
+
+	private List<RecordedEvent> stop() throws IOException {
+		recording.stop();
+		return dump();
+	}
+
+	private List<RecordedEvent> dump() throws IOException {
+		File _file = File.createTempFile("promises", ".jfr");
+		try {
+			recording.dump(_file.toPath());
+			return RecordingFile.readAllEvents(_file.toPath());
+		} finally {
+			_file.delete();
+		}
+	}
+
+	private RecordedEvent only(List<RecordedEvent> anEvents, String aName) {
+		List<RecordedEvent> _matching = new ArrayList<RecordedEvent>();
+		for (RecordedEvent _event : anEvents)
+			if (_event.getEventType().getName().equals(aName))
+				_matching.add(_event);
+
+		Assert.assertEquals(1, _matching.size());
+		return _matching.get(0);
+	}
+
+	private long idOf(Object anImplicit) {
+		return Promises.futureOf(anImplicit).getPromiseId();
+	}
+
+	public interface ReturnType {
+		String getValue();
+	}
+
+	public static class Value implements ReturnType {
+		private String value;
+
+		public Value() {
+		}
+
+		public Value(String aValue) {
+			value = aValue;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+
+	public interface Greeter {
+		@ComputationallyIntensive
+		ReturnType greet(String aName);
+	}
+
+	public static class SimpleGreeter implements Greeter {
+		public ReturnType greet(String aName) {
+			return new Value("hello " + aName);
+		}
+	}
+
+	static class Named extends FulfilmentAdapter<ReturnType> implements NamedFulfilment<ReturnType> {
+		private String name;
+		private ReturnType result;
+
+		Named(String aName, ReturnType aResult) {
+			this(aName, aResult, null);
+		}
+
+		Named(String aName, ReturnType aResult, ReturnType aDefault) {
+			super(ReturnType.class, aDefault);
+			name = aName;
+			result = aResult;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public ReturnType execute() throws Exception {
+			return result;
+		}
+	}
+}
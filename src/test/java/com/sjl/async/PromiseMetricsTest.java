@@ -0,0 +1,160 @@
+package com.sjl.async;
+
+import java.lang.management.*;
+import java.util.concurrent.*;
+
+import javax.management.*;
+
+import org.junit.*;
+
+public class PromiseMetricsTest {
+
+	private ExecutorService executorService;
+	private MBeanServer server;
+	private PromiseMetrics metrics;
+	private PromissoryService promissory;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newSingleThreadExecutor();
+		server = ManagementFactory.getPlatformMBeanServer();
+		metrics = new PromiseMetrics(server, "test");
+		promissory = new DynamicProxyPromissoryService(executorService, ExecutionMode.SUBMIT, metrics);
+	}
+
+	@After
+	public void teardown() {
+		metrics.unregister();
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void recordsQueueWaitExecutionAndBlockedTime() {
+		Assert.assertEquals("a", promissory.promise(new Sleeping("a", 20)).getValue());
+
+		PromiseStatistics _stats = metrics.get(ReturnType.class.getName());
+		Assert.assertEquals(1, _stats.getExecutions());
+		Assert.assertTrue(_stats.getQueueWaitMedian() >= 0);
+		Assert.assertTrue(_stats.getExecutionTimeMedian() >= Nanoseconds.fromMilliseconds(20));
+		Assert.assertEquals(1, _stats.getBlocked());
+		Assert.assertTrue(_stats.getBlockedTimeMedian() > 0);
+	}
+
+	@Test
+	public void measuresQueueWaitFromWhenATaskIsQueued() throws Exception {
+		PromissoryService _lazy = new DynamicProxyPromissoryService(executorService, ExecutionMode.LAZY, metrics);
+
+		ReturnType _result = _lazy.promise(new Sleeping("a", 0));
+		Thread.sleep(100);
+		Promises.prefetch(_result);
+		Assert.assertEquals("a", _result.getValue());
+
+		PromiseStatistics _stats = metrics.get(ReturnType.class.getName());
+		Assert.assertTrue(_stats.getQueueWaitMedian() >= 0);
+		Assert.assertTrue(_stats.getQueueWaitMedian() < Nanoseconds.fromMilliseconds(100));
+	}
+
+	@Test
+	public void recordsNoQueueWaitForATaskItsCallerRunsUnqueued() {
+		PromissoryService _lazy = new DynamicProxyPromissoryService(executorService, ExecutionMode.LAZY, metrics);
+
+		Assert.assertEquals("a", _lazy.promise(new Sleeping("a", 0)).getValue());
+
+		PromiseStatistics _stats = metrics.get(ReturnType.class.getName());
+		Assert.assertEquals(1, _stats.getExecutions());
+		Assert.assertEquals(-1, _stats.getQueueWaitMedian());
+	}
+
+	@Test
+	public void countsExceptionsBreachesAndDefaults() {
+		promissory.promise(new Sleeping("a", 0) {
+			@Override
+			public ReturnType execute() throws Exception {
+				throw new Exception();
+			}
+		}).getValue();
+		promissory.attempt(new Sleeping("b", 1000), ResponseTimeSLA.nanosFromNow(Nanoseconds.fromMilliseconds(10))).getValue();
+
+		PromiseStatistics _stats = metrics.get(ReturnType.class.getName());
+		Assert.assertEquals(1, _stats.getExceptions());
+		Assert.assertEquals(1, _stats.getSLABreaches());
+		Assert.assertEquals(2, _stats.getDefaults());
+	}
+
+	@Test
+	public void nullObjectRecordsNothing() {
+		PromissoryService _unmeasured = new DynamicProxyPromissoryService(executorService);
+		_unmeasured.promise(new Sleeping("a", 0) {
+			@Override
+			public ReturnType execute() throws Exception {
+				throw new Exception();
+			}
+		}).getValue();
+		Assert.assertEquals("b", _unmeasured.promise(new Sleeping("b", 20)).getValue());
+
+		PromiseStatistics _stats = PromiseMetrics.NULL_OBJECT.of(new Sleeping("c", 0));
+		Assert.assertSame(PromiseStatistics.NULL_OBJECT, _stats);
+		Assert.assertEquals(0, _stats.getBlocked());
+		Assert.assertEquals(0, _stats.getExceptions());
+		Assert.assertEquals(0, _stats.getDefaults());
+	}
+
+	@Test
+	public void exposesStatisticsAsMBeans() throws Exception {
+		promissory.promise(new Sleeping("a", 0)).getValue();
+
+		ObjectName _name = new ObjectName("com.sjl.async:type=PromiseStatistics,scope=\"test\",name=" + 
+			ObjectName.quote(ReturnType.class.getName()));
+		Assert.assertEquals(1L, server.getAttribute(_name, "Executions"));
+
+		metrics.unregister();
+		Assert.assertFalse(server.isRegistered(_name));
+	}
+
+	@Test
+	public void namesAsyncifiedMethodsByTheirMethod() {
+		PromiseStatistics _stats = metrics.of(new NamedFulfilment<ReturnType>() {
+			public String getName() { return "Service.method"; }
+			public Class<ReturnType> getResultType() { return ReturnType.class; }
+			public ReturnType execute() { return null; }
+			public ReturnType createDefaultResult() { return null; }
+			public void onException(Throwable anExc) { }
+			public void onBreachSLA(ServiceLevelAgreement anSLA) { }
+		});
+
+		Assert.assertEquals("Service.method", _stats.getName());
+		Assert.assertSame(_stats, metrics.get("Service.method"));
+	}
+
+	class Sleeping extends FulfilmentAdapter<ReturnType> {
+		private String value;
+		private long millis;
+
+		Sleeping(String aValue, long aMillis) {
+			super(ReturnType.class, new Value("default"));
+			value = aValue;
+			millis = aMillis;
+		}
+
+		public ReturnType execute() throws Exception {
+			Thread.sleep(millis);
+			return new Value(value);
+		}
+	}
+
+	public interface ReturnType {
+		String getValue();
+	}
+
+	public static class Value implements ReturnType {
+		private String value;
+
+		public Value(String aValue) {
+			value = aValue;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package com.sjl.async;
+
+import java.lang.management.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+public class PromiseTaskTest {
+
+	private ExecutorService executorService;
+	private Fulfilment<ReturnType> fulfilment;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newSingleThreadExecutor();
+		fulfilment = new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return new Value("a");
+			}
+		};
+	}
+
+	@After
+	public void teardown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void runsTheFulfilmentAndDefaultsOnFailure() {
+		ReturnType _result = FutureWithSLAInvocationHandler.newProxy(PromiseTask.create(
+			fulfilment, ServiceLevelAgreement.NULL_OBJECT, executorService, ExecutionMode.SUBMIT, PromiseMetrics.NULL_OBJECT), ReturnType.class);
+		ReturnType _failed = FutureWithSLAInvocationHandler.newProxy(PromiseTask.create(
+			new FulfilmentAdapter<ReturnType>(ReturnType.class, new Value("default")) {
+				public ReturnType execute() {
+					throw new IllegalStateException();
+				}
+			}, ServiceLevelAgreement.NULL_OBJECT, executorService, ExecutionMode.SUBMIT, PromiseMetrics.NULL_OBJECT), ReturnType.class);
+
+		Assert.assertEquals("a", _result.getValue());
+		Assert.assertEquals("default", _failed.getValue());
+		Assert.assertTrue(ImplicitFutures.isRealised(_result));
+	}
+
+	@Test
+	public void lazyTasksRunOnTheCallerOnlyOnce() throws Exception {
+		PromiseTask<ReturnType> _task = PromiseTask.create(
+			fulfilment, ServiceLevelAgreement.NULL_OBJECT, executorService, ExecutionMode.LAZY, PromiseMetrics.NULL_OBJECT);
+
+		Assert.assertFalse(_task.isReady());
+		ReturnType _first = _task.get();
+		Assert.assertSame(_first, _task.get());
+		Assert.assertTrue(_task.isReady());
+	}
+
+	@Test
+	public void isTheTaskTheFutureAndTheHandler() throws Exception {
+		final BlockingQueue<Runnable> _executed = new LinkedBlockingQueue<Runnable>();
+		ExecutorService _recording = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()) {
+			@Override
+			protected void beforeExecute(Thread aThread, Runnable aTask) {
+				_executed.add(aTask);
+			}
+		};
+		try {
+			ReturnType _result = FutureWithSLAInvocationHandler.newProxy(PromiseTask.create(
+				fulfilment, ServiceLevelAgreement.NULL_OBJECT, _recording, ExecutionMode.SUBMIT, PromiseMetrics.NULL_OBJECT), ReturnType.class);
+			Assert.assertEquals("a", _result.getValue());
+
+			// one object is the proxy's handler, the FutureWithSLA and what the executor runs
+			FutureWithSLA<?> _future = Promises.futureOf(_result);
+			Assert.assertSame(_future, Proxy.getInvocationHandler(_result));
+			Assert.assertSame(_future, _executed.poll(5, TimeUnit.SECONDS));
+		} finally {
+			_recording.shutdownNow();
+		}
+	}
+
+	@Test
+	public void allocatesNothingButItselfToRunAPromise() throws Exception {
+		ThreadMXBean _threads = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(_threads instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean _allocations = (com.sun.management.ThreadMXBean) _threads;
+		Assume.assumeTrue(_allocations.isThreadAllocatedMemorySupported() && _allocations.isThreadAllocatedMemoryEnabled());
+		Assume.assumeTrue("true".equals(ManagementFactory.getPlatformMXBean(
+			com.sun.management.HotSpotDiagnosticMXBean.class).getVMOption("UseCompressedOops").getValue()));
+
+		Executor _direct = new Executor() {
+			public void execute(Runnable aTask) {
+				aTask.run();
+			}
+		};
+		Fulfilment<ReturnType> _fulfilment = new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return null;
+			}
+		};
+
+		// the least of several rounds, once the code is warm
+		int _promises = 10000;
+		Object[] _results = new Object[_promises];
+		long _thread = Thread.currentThread().threadId();
+		long _least = Long.MAX_VALUE;
+		for (int _round=0; _round<20; _round++) {
+			long _before = _allocations.getThreadAllocatedBytes(_thread);
+			for (int i=0; i<_promises; i++)
+				_results[i] = PromiseTask.create(
+					_fulfilment, ServiceLevelAgreement.NULL_OBJECT, _direct, ExecutionMode.SUBMIT, PromiseMetrics.NULL_OBJECT);
+			_least = Math.min(_least, (_allocations.getThreadAllocatedBytes(_thread) - _before) / _promises);
+		}
+
+		// the task is 128 bytes, where running it on a FutureTask would take another 40
+		Assert.assertTrue(_least + " bytes per promise", _least <= 144);
+	}
+
+	@Test
+	public void failsADataflowTaskItsExecutorRejects() throws Exception {
+		final BlockingQueue<Throwable> _reported = new LinkedBlockingQueue<Throwable>();
+		ExecutorService _shutdown = Executors.newSingleThreadExecutor();
+		_shutdown.shutdown();
+
+		ReturnType _result = FutureWithSLAInvocationHandler.newProxy(PromiseTask.create(
+			new DataflowFulfilmentAdapter<ReturnType>(ReturnType.class, new Value("default"), Collections.emptyList()) {
+				public ReturnType execute() {
+					return new Value("a");
+				}
+
+				@Override
+				public void onException(Throwable anExc) {
+					_reported.add(anExc);
+				}
+			}, ServiceLevelAgreement.NULL_OBJECT, _shutdown, ExecutionMode.SUBMIT, PromiseMetrics.NULL_OBJECT), ReturnType.class);
+
+		Assert.assertEquals("default", _result.getValue());
+		Assert.assertTrue(_reported.poll(5, TimeUnit.SECONDS) instanceof RejectedExecutionException);
+		Assert.assertEquals(FutureWithSLA.State.FAILED, Promises.futureOf(_result).getState());
+	}
+
+	interface ReturnType {
+		String getValue();
+	}
+
+	public static class Value implements ReturnType {
+		private String value;
+
+		public Value() {
+		}
+
+		public Value(String aValue) {
+			value = aValue;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import org.junit.*;
+
+public class PromisesTest {
+
+	private ExecutorService executorService;
+	private CountDownLatch release;
+	private PromissoryService promissory;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newFixedThreadPool(2);
+		release = new CountDownLatch(1);
+		promissory = new DynamicProxyPromissoryService(executorService);
+	}
+
+	@After
+	public void teardown() {
+		release.countDown();
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void mapsWithoutBlockingTheCaller() throws Exception {
+		ReturnType _source = promissory.promise(blocked("hello"));
+
+		ReturnType _mapped = Promises.map(_source, new Function<ReturnType, ReturnType>() {
+			public ReturnType apply(ReturnType aValue) {
+				return new Value(aValue.getValue() + " world");
+			}
+		}, ReturnType.class);
+
+		// we got here without waiting for the source to be realised
+		release.countDown();
+		Assert.assertEquals("hello world", _mapped.getValue());
+	}
+
+	@Test
+	public void appliesTheFunctionOnTheThreadThatRealisesTheSource() throws Exception {
+		final BlockingQueue<String> _threads = new LinkedBlockingQueue<String>();
+		ReturnType _source = promissory.promise(blocked("hello"));
+
+		Promises.map(_source, new Function<ReturnType, ReturnType>() {
+			public ReturnType apply(ReturnType aValue) {
+				_threads.add(Thread.currentThread().getName());
+				return aValue;
+			}
+		}, ReturnType.class);
+
+		release.countDown();
+		String _thread = _threads.poll(5, TimeUnit.SECONDS);
+		Assert.assertNotNull(_thread);
+		Assert.assertFalse(Thread.currentThread().getName().equals(_thread));
+	}
+
+	@Test
+	public void flatMapsToTheRealisedValueOfTheInnerImplicitFuture() throws Exception {
+		ReturnType _source = promissory.promise(blocked("hello"));
+
+		ReturnType _flat = Promises.flatMap(_source, new Function<ReturnType, ReturnType>() {
+			public ReturnType apply(final ReturnType aValue) {
+				return promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+					public ReturnType execute() {
+						return new Value(aValue.getValue() + " again");
+					}
+				});
+			}
+		}, ReturnType.class);
+
+		release.countDown();
+		Assert.assertEquals("hello again", _flat.getValue());
+	}
+
+	@Test
+	public void notifiesCallbackWhenRealised() throws Exception {
+		final BlockingQueue<String> _values = new LinkedBlockingQueue<String>();
+		ReturnType _source = promissory.promise(blocked("hello"));
+
+		Promises.onRealised(_source, new Consumer<ReturnType>() {
+			public void accept(ReturnType aValue) {
+				_values.add(aValue.getValue());
+			}
+		});
+
+		Assert.assertTrue(_values.isEmpty());
+		release.countDown();
+		Assert.assertEquals("hello", _values.poll(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void treatsValuesThatAreNotImplicitFuturesAsRealised() {
+		final List<String> _values = new ArrayList<String>();
+
+		Promises.onRealised(new Value("plain"), new Consumer<ReturnType>() {
+			public void accept(ReturnType aValue) {
+				_values.add(aValue.getValue());
+			}
+		});
+
+		Assert.assertEquals(Arrays.asList("plain"), _values);
+	}
+
+	@Test
+	public void rethrowsExceptionsFromTheFunctionWhenTheResultIsUsed() {
+		final IllegalStateException _exc = new IllegalStateException();
+		ReturnType _source = promissory.promise(blocked("hello"));
+
+		ReturnType _mapped = Promises.map(_source, new Function<ReturnType, ReturnType>() {
+			public ReturnType apply(ReturnType aValue) {
+				throw _exc;
+			}
+		}, ReturnType.class);
+
+		release.countDown();
+		try {
+			_mapped.getValue();
+			Assert.fail("expected exception");
+		} catch (IllegalStateException anExc) {
+			Assert.assertSame(_exc, anExc);
+		}
+	}
+
+	@Test
+	public void mapsGeneratedProxiesToConcreteClasses() {
+		promissory = new GeneratedProxyPromissoryService(executorService);
+		ReturnType _source = promissory.promise(blocked("hello"));
+
+		Value _mapped = Promises.map(_source, new Function<ReturnType, Value>() {
+			public Value apply(ReturnType aValue) {
+				return new Value(aValue.getValue().toUpperCase());
+			}
+		}, Value.class);
+
+		release.countDown();
+		Assert.assertEquals("HELLO", _mapped.getValue());
+	}
+
+	@Test
+	public void whenAllReadyRunsOnceEveryImplicitIsRealised() throws Exception {
+		final CountDownLatch _ready = new CountDownLatch(1);
+		ReturnType _a = promissory.promise(blocked("a"));
+		ReturnType _b = promissory.promise(blocked("b"));
+
+		Promises.whenAllReady(Arrays.asList(_a, _b, "not implicit"), new Runnable() {
+			public void run() {
+				_ready.countDown();
+			}
+		});
+
+		Assert.assertEquals(1, _ready.getCount());
+		release.countDown();
+		Assert.assertTrue(_ready.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void whenAllReadyPrefetchesLazyImplicits() throws Exception {
+		final CountDownLatch _ready = new CountDownLatch(1);
+		promissory = new DynamicProxyPromissoryService(executorService, ExecutionMode.LAZY);
+		release.countDown();
+		ReturnType _a = promissory.promise(blocked("a"));
+
+		Promises.whenAllReady(Collections.singleton(_a), new Runnable() {
+			public void run() {
+				_ready.countDown();
+			}
+		});
+
+		Assert.assertTrue(_ready.await(5, TimeUnit.SECONDS));
+	}
+
+	private Fulfilment<ReturnType> blocked(final String aValue) {
+		return new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() throws Exception {
+				release.await();
+				return new Value(aValue);
+			}
+		};
+	}
+
+	public interface ReturnType {
+		String getValue();
+	}
+
+	public static class Value implements ReturnType {
+		private String value;
+
+		public Value() {
+		}
+
+		public Value(String aValue) {
+			value = aValue;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+public class StreamingPromissoryServiceTest {
+
+	private ExecutorService executorService;
+	private StreamingPromissoryService streaming;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newSingleThreadExecutor();
+		streaming = new StreamingPromissoryService(executorService, 2);
+	}
+
+	@After
+	public void teardown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void yieldsEveryElementInOrder() {
+		List<String> _result = new ArrayList<String>();
+		for (String _s : streaming.promise(counting(5, null)))
+			_result.add(_s);
+
+		Assert.assertEquals(Arrays.asList("0", "1", "2", "3", "4"), _result);
+	}
+
+	@Test
+	public void yieldsEachElementAsSoonAsItArrives() throws Exception {
+		final CountDownLatch _release = new CountDownLatch(1);
+		Iterator<String> _iterator = streaming.promise(counting(2, _release)).iterator();
+
+		// the first element is usable before the second has been fetched
+		Assert.assertEquals("0", _iterator.next());
+		_release.countDown();
+		Assert.assertEquals("1", _iterator.next());
+		Assert.assertFalse(_iterator.hasNext());
+	}
+
+	@Test
+	public void endsWithWhateverArrivedWithinTheSLA() throws Exception {
+		final CountDownLatch _never = new CountDownLatch(1);
+		final BlockingQueue<ServiceLevelAgreement> _breaches = new LinkedBlockingQueue<ServiceLevelAgreement>();
+		ImplicitIterable<String> _stream = streaming.attempt(new StreamingFulfilmentAdapter<String>() {
+			public void execute(Sink<String> aSink) throws Exception {
+				aSink.put("0");
+				_never.await();
+			}
+
+			@Override
+			public void onBreachSLA(ServiceLevelAgreement anSLA) {
+				_breaches.add(anSLA);
+			}
+		}, ResponseTimeSLA.nanosFromNow(Nanoseconds.fromMilliseconds(50)));
+
+		List<String> _result = new ArrayList<String>();
+		for (String _s : _stream)
+			_result.add(_s);
+
+		Assert.assertEquals(Arrays.asList("0"), _result);
+		Assert.assertTrue(_stream.isSLABreached());
+		Assert.assertNotNull(_breaches.poll(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void doesNotBreachAnAttemptTheExecutorRejects() throws Exception {
+		final BlockingQueue<ServiceLevelAgreement> _breaches = new LinkedBlockingQueue<ServiceLevelAgreement>();
+		executorService.shutdown();
+		try {
+			streaming.attempt(new StreamingFulfilmentAdapter<String>() {
+				public void execute(Sink<String> aSink) throws Exception {
+					aSink.put("0");
+				}
+
+				@Override
+				public void onBreachSLA(ServiceLevelAgreement anSLA) {
+					_breaches.add(anSLA);
+				}
+			}, ResponseTimeSLA.nanosFromNow(Nanoseconds.fromMilliseconds(10)));
+			Assert.fail("expected the attempt to be rejected");
+		} catch (RejectedExecutionException anExc) {
+			// expected
+		}
+
+		Assert.assertNull(_breaches.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void endsCleanlyWhenTheFulfilmentFails() {
+		final Exception _exc = new Exception();
+		final List<Throwable> _reported = new CopyOnWriteArrayList<Throwable>();
+		List<String> _result = new ArrayList<String>();
+		for (String _s : streaming.promise(new StreamingFulfilmentAdapter<String>() {
+			public void execute(Sink<String> aSink) throws Exception {
+				aSink.put("0");
+				throw _exc;
+			}
+
+			@Override
+			public void onException(Throwable anExc) {
+				_reported.add(anExc);
+			}
+		}))
+			_result.add(_s);
+
+		Assert.assertEquals(Arrays.asList("0"), _result);
+		Assert.assertEquals(Arrays.asList(_exc), _reported);
+	}
+
+	@Test
+	public void closingStopsTheFulfilment() throws Exception {
+		final CountDownLatch _stopped = new CountDownLatch(1);
+		ImplicitIterable<String> _stream = streaming.promise(new StreamingFulfilmentAdapter<String>() {
+			public void execute(Sink<String> aSink) {
+				while (aSink.put("x"))
+					;
+				_stopped.countDown();
+			}
+		});
+
+		Assert.assertEquals("x", _stream.iterator().next());
+		_stream.close();
+
+		Assert.assertTrue(_stopped.await(5, TimeUnit.SECONDS));
+		Assert.assertFalse(_stream.isSLABreached());
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void canOnlyBeIteratedOnce() {
+		ImplicitIterable<String> _stream = streaming.promise(counting(1, null));
+		_stream.iterator();
+		_stream.iterator();
+	}
+
+	private StreamingFulfilment<String> counting(final int aCount, final CountDownLatch aRelease) {
+		return new StreamingFulfilmentAdapter<String>() {
+			public void execute(Sink<String> aSink) throws Exception {
+				for (int i=0; i<aCount; i++) {
+					if (i == 1 && aRelease != null)
+						aRelease.await();
+					aSink.put(String.valueOf(i));
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,72 @@
+package com.sjl.async;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+public class VirtualThreadPromissoryServiceTest {
+
+	private VirtualThreadPromissoryService promissory;
+
+	@Before
+	public void setup() {
+		promissory = new VirtualThreadPromissoryService();
+	}
+
+	@After
+	public void teardown() {
+		promissory.close();
+	}
+
+	@Test
+	public void fulfilsPromisesOnVirtualThreads() {
+		ReturnType _result = promissory.promise(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+			public ReturnType execute() {
+				return new Value(Thread.currentThread().isVirtual());
+			}
+		});
+
+		Assert.assertTrue(_result.isVirtual());
+	}
+
+	@Test
+	public void keepsManyBlockingPromisesOutstandingAtOnce() {
+		final int _count = 10000;
+		final CountDownLatch _started = new CountDownLatch(_count);
+
+		List<ReturnType> _results = new ArrayList<ReturnType>();
+		for (int i=0; i<_count; i++) {
+			_results.add(promissory.attempt(new FulfilmentAdapter<ReturnType>(ReturnType.class) {
+				public ReturnType execute() throws Exception {
+					// every fulfilment blocks until all of them are running
+					_started.countDown();
+					_started.await();
+					return new Value(true);
+				}
+			}, ResponseTimeSLA.nanosFromNow(Nanoseconds.fromSeconds(30))));
+		}
+
+		for (ReturnType _result : _results)
+			Assert.assertTrue(_result.isVirtual());
+	}
+
+	public interface ReturnType {
+		boolean isVirtual();
+	}
+
+	public static class Value implements ReturnType {
+		private boolean virtual;
+
+		public Value() {
+		}
+
+		public Value(boolean aVirtual) {
+			virtual = aVirtual;
+		}
+
+		public boolean isVirtual() {
+			return virtual;
+		}
+	}
+}